@@ -0,0 +1,126 @@
+package se.rosenbaum.bitcoiniblt.benchmark;
+
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import se.rosenbaum.bitcoiniblt.IBLTTransactionMap;
+import se.rosenbaum.bitcoiniblt.ResidualTransactions;
+import se.rosenbaum.bitcoiniblt.bytearraydata.ByteArrayDataTransactionCoder;
+import se.rosenbaum.bitcoiniblt.bytearraydata.IBLTUtils;
+import se.rosenbaum.bitcoiniblt.util.SyntheticTransactionGenerator;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.data.ByteArrayData;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a block, subtracting the mempool and peeling the difference. Each invocation works
+ * on a freshly prepared IBLT, so only the measured step is timed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IBLTTransactionMapBenchmark {
+    private static final int BLOCK_SIZE = 1000;
+    private static final int KEY_SIZE = 8;
+    private static final int HASH_SUM_SIZE = 4;
+
+    @State(Scope.Benchmark)
+    public static class Input {
+        @Param({"6000", "60000"})
+        int cellCount;
+        @Param({"8", "64"})
+        int valueSize;
+        @Param({"3", "4"})
+        int hashFunctionCount;
+        // Transactions that are in the block only plus transactions that are in the mempool only
+        @Param({"10", "100"})
+        int diffSize;
+
+        NetworkParameters params = MainNetParams.get();
+        byte[] salt = new byte[32];
+        List<Transaction> block;
+        List<Transaction> mempool;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            int blockOnly = diffSize / 2;
+            List<Transaction> transactions = new SyntheticTransactionGenerator(params, 1).createTransactions(BLOCK_SIZE + diffSize - blockOnly);
+            block = transactions.subList(0, BLOCK_SIZE);
+            mempool = transactions.subList(blockOnly, transactions.size());
+        }
+
+        IBLTTransactionMap<ByteArrayData, ByteArrayData> createMap(IBLT<ByteArrayData, ByteArrayData> iblt) {
+            return new IBLTTransactionMap<ByteArrayData, ByteArrayData>(iblt,
+                    new ByteArrayDataTransactionCoder(params, salt, KEY_SIZE, valueSize));
+        }
+
+        IBLT<ByteArrayData, ByteArrayData> createIblt() {
+            return new IBLTUtils().createIblt(cellCount, hashFunctionCount, KEY_SIZE, valueSize, HASH_SUM_SIZE);
+        }
+
+        IBLTTransactionMap<ByteArrayData, ByteArrayData> createReceiverMap() {
+            IBLTTransactionMap<ByteArrayData, ByteArrayData> sender = createMap(createIblt());
+            sender.putTransactions(block);
+            // The receiver has its own coder, which only knows the mempool transactions
+            return createMap(sender.getIBLT());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class EmptyMap {
+        IBLTTransactionMap<ByteArrayData, ByteArrayData> map;
+
+        @Setup(Level.Invocation)
+        public void setup(Input input) {
+            map = input.createMap(input.createIblt());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class EncodedMap {
+        IBLTTransactionMap<ByteArrayData, ByteArrayData> map;
+
+        @Setup(Level.Invocation)
+        public void setup(Input input) {
+            map = input.createReceiverMap();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SubtractedMap {
+        IBLTTransactionMap<ByteArrayData, ByteArrayData> map;
+
+        @Setup(Level.Invocation)
+        public void setup(Input input) {
+            map = input.createReceiverMap();
+            map.deleteTransactions(input.mempool);
+        }
+    }
+
+    @Benchmark
+    public IBLT<ByteArrayData, ByteArrayData> putTransactions(Input input, EmptyMap state) {
+        state.map.putTransactions(input.block);
+        return state.map.getIBLT();
+    }
+
+    @Benchmark
+    public IBLT<ByteArrayData, ByteArrayData> deleteTransactions(Input input, EncodedMap state) {
+        state.map.deleteTransactions(input.mempool);
+        return state.map.getIBLT();
+    }
+
+    @Benchmark
+    public ResidualTransactions decodeRemaining(SubtractedMap state) {
+        return state.map.decodeRemaining();
+    }
+}
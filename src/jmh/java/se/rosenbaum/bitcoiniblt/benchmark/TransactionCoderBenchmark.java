@@ -0,0 +1,77 @@
+package se.rosenbaum.bitcoiniblt.benchmark;
+
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import se.rosenbaum.bitcoiniblt.SliceWriter;
+import se.rosenbaum.bitcoiniblt.bytearraydata.ByteArrayDataTransactionCoder;
+import se.rosenbaum.bitcoiniblt.util.SyntheticTransactionGenerator;
+import se.rosenbaum.iblt.data.ByteArrayData;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Slicing transactions into key/value pairs and assembling them again, for 100 transactions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransactionCoderBenchmark {
+    private static final int TRANSACTION_COUNT = 100;
+
+    @Param({"8", "64", "256"})
+    int valueSize;
+
+    ByteArrayDataTransactionCoder coder;
+    List<Transaction> transactions;
+    Map<ByteArrayData, ByteArrayData> entries;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        NetworkParameters params = MainNetParams.get();
+        coder = new ByteArrayDataTransactionCoder(params, new byte[32], 8, valueSize);
+        transactions = new SyntheticTransactionGenerator(params, 1).createTransactions(TRANSACTION_COUNT);
+        entries = new HashMap<ByteArrayData, ByteArrayData>();
+        for (Transaction transaction : transactions) {
+            entries.putAll(coder.encodeTransaction(transaction));
+        }
+    }
+
+    @Benchmark
+    public void encodeTransaction(Blackhole blackhole) {
+        for (Transaction transaction : transactions) {
+            blackhole.consume(coder.encodeTransaction(transaction));
+        }
+    }
+
+    @Benchmark
+    public void encodeTransactionStreaming(final Blackhole blackhole) {
+        SliceWriter<ByteArrayData, ByteArrayData> writer = new SliceWriter<ByteArrayData, ByteArrayData>() {
+            public void writeSlice(ByteArrayData key, ByteArrayData value) {
+                blackhole.consume(key);
+                blackhole.consume(value);
+            }
+        };
+        for (Transaction transaction : transactions) {
+            coder.encodeTransaction(transaction, writer);
+        }
+    }
+
+    @Benchmark
+    public List<Transaction> decodeTransactions() {
+        return coder.decodeTransactions(entries);
+    }
+}
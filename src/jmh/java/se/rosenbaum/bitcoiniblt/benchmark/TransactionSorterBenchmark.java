@@ -0,0 +1,63 @@
+package se.rosenbaum.bitcoiniblt.benchmark;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import se.rosenbaum.bitcoiniblt.CanonicalOrderTransactionSorter;
+import se.rosenbaum.bitcoiniblt.SameAsBlockTransactionSorter;
+import se.rosenbaum.bitcoiniblt.util.SyntheticTransactionGenerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Putting a shuffled block back in order, as the last step of decoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransactionSorterBenchmark {
+    @Param({"1000", "5000"})
+    int blockSize;
+
+    List<Transaction> shuffled;
+    CanonicalOrderTransactionSorter canonicalSorter;
+    SameAsBlockTransactionSorter sameAsBlockSorter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Transaction> block = new SyntheticTransactionGenerator(MainNetParams.get(), 1).createTransactions(blockSize);
+        Map<Sha256Hash, Integer> positions = new HashMap<Sha256Hash, Integer>();
+        for (int i = 0; i < block.size(); i++) {
+            positions.put(block.get(i).getHash(), i);
+        }
+        shuffled = new ArrayList<Transaction>(block);
+        Collections.shuffle(shuffled, new Random(1));
+        canonicalSorter = new CanonicalOrderTransactionSorter();
+        sameAsBlockSorter = new SameAsBlockTransactionSorter(positions);
+    }
+
+    @Benchmark
+    public List<Transaction> canonicalOrder() {
+        return canonicalSorter.sort(shuffled);
+    }
+
+    @Benchmark
+    public List<Transaction> sameAsBlock() {
+        return sameAsBlockSorter.sort(shuffled);
+    }
+}
@@ -6,6 +6,7 @@ import se.rosenbaum.iblt.ListEntriesListener;
 import se.rosenbaum.iblt.data.ByteArrayData;
 import se.rosenbaum.iblt.data.Data;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -21,7 +22,7 @@ public class AbsentTxAddingListEntriesListener<V extends Data> implements ListEn
 
 
     public boolean absentKeyDetected(ByteArrayData key, V value) {
-        ByteArrayKeyData keyData = new ByteArrayKeyData(key.getValue());
+        ByteArrayKeyData keyData = new ByteArrayKeyData(Arrays.copyOf(key.getValue(), key.getValue().length));
         keyData.setIndex((char)0);
         Map<ByteArrayData, ByteArrayData> fractions = encodedTransactions.get(new ByteArrayData(keyData.getBytes()));
         if (fractions == null) {
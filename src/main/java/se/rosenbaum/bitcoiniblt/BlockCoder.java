@@ -7,6 +7,7 @@ import se.rosenbaum.iblt.data.Data;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 public class BlockCoder<K extends Data, V extends Data> {
     private TransactionSorter sorter;
@@ -24,20 +25,63 @@ public class BlockCoder<K extends Data, V extends Data> {
         return transactionMap.getIBLT();
     }
 
+    /**
+     * Encodes the block using several threads. See
+     * {@link IBLTTransactionMap#putTransactions(List, IBLTFactory, ExecutorService, int)}.
+     */
+    public IBLT<K, V> encode(Block block, IBLTFactory<K, V> partialIbltFactory, ExecutorService executor, int partitionCount) {
+        List<Transaction> transactions = block.getTransactions();
+        transactionMap.putTransactions(transactions, partialIbltFactory, executor, partitionCount);
+        return transactionMap.getIBLT();
+    }
+
     public Block decode(Block header, List<Transaction> myTransactions) {
-        List<Transaction> mutableList = new ArrayList<Transaction>();
         // Gavin suggests that we build our own IBLT and then
         // do the IBLT_new - IBLT_us operation. I don't see
         // why that's necessary. I just remove the transactions
         // from IBLT_new one by one instead. Removing a transaction
         // from IBLT_new is the same cost as adding it to IBLT_us.
+        // If IBLT_us can be built before the block arrives, use
+        // decode(Block, MempoolIBLT) instead.
         transactionMap.deleteTransactions(myTransactions);
-        mutableList.addAll(myTransactions);
+        return decodeRemaining(header, myTransactions);
+    }
 
+    /**
+     * Decodes the block by subtracting the mempool IBLT from IBLT_new cell by cell. The mempool
+     * must use the same transaction coder as this BlockCoder, since the coder remembers the slices
+     * of the mempool transactions.
+     */
+    public Block decode(Block header, MempoolIBLT<K, V> mempool) {
+        if (mempool.getTransactionCoder() != transactionMap.getTransactionCoder()) {
+            // A coder with another salt or key size would silently fail to decode
+            throw new RuntimeException("The mempool IBLT must use the transaction coder of this BlockCoder");
+        }
+        mempool.subtractFrom(transactionMap.getIBLT());
+        return decodeRemaining(header, mempool.getTransactions());
+    }
+
+    /**
+     * Builds the block from residual transactions that were decoded elsewhere, for example by a
+     * {@link se.rosenbaum.bitcoiniblt.bytearraydata.StreamingIBLTDecoder}. The IBLT of this BlockCoder is not used.
+     */
+    public Block decode(Block header, List<Transaction> myTransactions, ResidualTransactions residualTransactions) {
+        this.residualTransactions = residualTransactions;
+        return assemble(header, myTransactions);
+    }
+
+    private Block decodeRemaining(Block header, List<Transaction> myTransactions) {
         residualTransactions = transactionMap.decodeRemaining();
+        return assemble(header, myTransactions);
+    }
+
+    private Block assemble(Block header, List<Transaction> myTransactions) {
         if (residualTransactions == null) {
             return null;
         }
+        List<Transaction> mutableList = new ArrayList<Transaction>();
+        mutableList.addAll(myTransactions);
+
         mutableList.removeAll(residualTransactions.getAbsentTransactions());
         mutableList.addAll(residualTransactions.getExtraTransactions());
         List<Transaction> sortedTransactions = sorter.sort(mutableList);
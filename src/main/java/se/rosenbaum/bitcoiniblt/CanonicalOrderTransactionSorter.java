@@ -4,17 +4,70 @@ import org.bitcoinj.core.Transaction;
 import org.bitcoinj.core.TransactionInput;
 import org.bitcoinj.core.TransactionOutPoint;
 
-import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class CanonicalOrderTransactionSorter implements TransactionSorter, Comparator<Transaction> {
+    private ExecutorService executor;
+    private int partitionCount;
+    int minParallelSize = 1000;
 
-    private class SortKey {
-        BigInteger hash = null;
+    public CanonicalOrderTransactionSorter() {
+        this(null, 1);
+    }
+
+    /**
+     * Computes the sort keys of big lists in partitionCount parts using executor.
+     */
+    public CanonicalOrderTransactionSorter(ExecutorService executor, int partitionCount) {
+        if (partitionCount < 1) {
+            throw new RuntimeException("Partition count must be at least 1, but was " + partitionCount);
+        }
+        this.executor = executor;
+        this.partitionCount = partitionCount;
+    }
+
+    /**
+     * The smallest outpoint hash of a transaction and the index of that outpoint. The hash is kept as
+     * four big endian longs with the sign bit flipped, so that signed comparison gives unsigned order.
+     */
+    static class SortKey implements Comparable<SortKey> {
+        long hash0;
+        long hash1;
+        long hash2;
+        long hash3;
         long index = -1;
+        Transaction transaction;
+
+        int compareHash(long otherHash0, long otherHash1, long otherHash2, long otherHash3) {
+            if (hash0 != otherHash0) {
+                return hash0 < otherHash0 ? -1 : 1;
+            }
+            if (hash1 != otherHash1) {
+                return hash1 < otherHash1 ? -1 : 1;
+            }
+            if (hash2 != otherHash2) {
+                return hash2 < otherHash2 ? -1 : 1;
+            }
+            if (hash3 != otherHash3) {
+                return hash3 < otherHash3 ? -1 : 1;
+            }
+            return 0;
+        }
+
+        public int compareTo(SortKey other) {
+            int comparison = compareHash(other.hash0, other.hash1, other.hash2, other.hash3);
+            if (comparison == 0 && index != other.index) {
+                return index < other.index ? -1 : 1;
+            }
+            return comparison;
+        }
     }
 
     @Override
@@ -25,41 +78,98 @@ public class CanonicalOrderTransactionSorter implements TransactionSorter, Compa
         if (transaction == transaction2) {
             return 0;
         }
-        SortKey key = sortKey(transaction);
-        SortKey key2 = sortKey(transaction2);
-        int comparison = key.hash.compareTo(key2.hash);
         // negative if transaction is less than transaction2
-        if (comparison == 0 && key.index != key2.index) {
-            return key.index-key2.index < 0L ? -1 : 1;
-        }
-        return comparison;
+        return sortKey(transaction).compareTo(sortKey(transaction2));
     }
 
     SortKey sortKey(Transaction transaction) {
-        SortKey sortKey = new SortKey();
+        SortKey sortKey = null;
         List<TransactionInput> inputs = transaction.getInputs();
         for (int i = 0; i < inputs.size(); i++) {
             TransactionOutPoint outpoint = inputs.get(i).getOutpoint();
-            BigInteger hash = outpoint.getHash().toBigInteger();
-            if (sortKey.hash == null) {
-                sortKey.hash = hash;
-                sortKey.index = outpoint.getIndex();
-            } else if (sortKey.hash.compareTo(hash) > 0) {
-                sortKey.hash = hash;
+            byte[] hash = outpoint.getHash().getBytes();
+            long hash0 = readLong(hash, 0);
+            long hash1 = readLong(hash, 8);
+            long hash2 = readLong(hash, 16);
+            long hash3 = readLong(hash, 24);
+            if (sortKey == null || sortKey.compareHash(hash0, hash1, hash2, hash3) > 0) {
+                if (sortKey == null) {
+                    sortKey = new SortKey();
+                }
+                sortKey.hash0 = hash0;
+                sortKey.hash1 = hash1;
+                sortKey.hash2 = hash2;
+                sortKey.hash3 = hash3;
                 sortKey.index = outpoint.getIndex();
             }
         }
-        if (sortKey.hash == null) {
+        if (sortKey == null) {
             throw new RuntimeException("No inputs found for transaction " + transaction.getHash() + " Cant create sort key");
         }
+        sortKey.transaction = transaction;
         return sortKey;
     }
 
+    private static long readLong(byte[] bytes, int offset) {
+        long result = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            result = (result << 8) | (bytes[i] & 0xff);
+        }
+        return result ^ Long.MIN_VALUE;
+    }
 
     public List<Transaction> sort(List<Transaction> list) {
-        ArrayList<Transaction> sortedList = new ArrayList<Transaction>(list);
-        Collections.sort(sortedList, this);
+        // Each sort key is computed once, instead of twice per comparison
+        SortKey[] sortKeys = new SortKey[list.size()];
+        if (executor != null && partitionCount > 1 && list.size() >= minParallelSize) {
+            computeSortKeys(list, sortKeys);
+        } else {
+            computeSortKeys(list, sortKeys, 0, sortKeys.length);
+        }
+        Arrays.sort(sortKeys);
+        ArrayList<Transaction> sortedList = new ArrayList<Transaction>(sortKeys.length);
+        for (SortKey sortKey : sortKeys) {
+            sortedList.add(sortKey.transaction);
+        }
         return sortedList;
     }
 
+    private void computeSortKeys(List<Transaction> list, SortKey[] sortKeys, int from, int to) {
+        for (int i = from; i < to; i++) {
+            sortKeys[i] = sortKey(list.get(i));
+        }
+    }
+
+    private void computeSortKeys(final List<Transaction> list, final SortKey[] sortKeys) {
+        List<Future<Object>> futures = new ArrayList<Future<Object>>(partitionCount);
+        int partitionSize = (list.size() + partitionCount - 1) / partitionCount;
+        for (int from = 0; from < list.size(); from += partitionSize) {
+            final int start = from;
+            final int end = Math.min(from + partitionSize, list.size());
+            futures.add(executor.submit(new Callable<Object>() {
+                public Object call() {
+                    computeSortKeys(list, sortKeys, start, end);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            cancel(futures);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void cancel(List<Future<Object>> futures) {
+        for (Future<Object> future : futures) {
+            future.cancel(true);
+        }
+    }
 }
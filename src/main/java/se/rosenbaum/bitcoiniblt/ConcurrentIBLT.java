@@ -0,0 +1,58 @@
+package se.rosenbaum.bitcoiniblt;
+
+import se.rosenbaum.iblt.Cell;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.data.Data;
+import se.rosenbaum.iblt.hash.HashFunctions;
+
+/**
+ * An IBLT that any number of threads can insert into and delete from at the same time, for
+ * values too wide to be updated atomically, like ByteArrayData. Each cell is guarded by one of
+ * stripeCount locks, and an insert or delete holds the lock of one cell at a time only.
+ * <p/>
+ * Adding and xoring commute, so once all threads are done the cells are the same as if
+ * everything was inserted and deleted by one thread. Entries must not be listed until then.
+ * The hash functions, and the key hash function of the cells, must be safe to use from
+ * several threads at once. The long backed equivalent without locks is
+ * {@link se.rosenbaum.bitcoiniblt.longdata.ConcurrentLongIBLT}.
+ */
+public class ConcurrentIBLT<K extends Data, V extends Data> extends IBLT<K, V> {
+    private Cell<K, V>[] cells;
+    private HashFunctions<K, V> hashFunctions;
+    private Object[] locks;
+
+    public ConcurrentIBLT(Cell<K, V>[] cells, HashFunctions<K, V> hashFunctions, int stripeCount) {
+        super(cells, hashFunctions);
+        if (stripeCount < 1) {
+            throw new RuntimeException("Stripe count must be at least 1, but was " + stripeCount);
+        }
+        this.cells = cells;
+        this.hashFunctions = hashFunctions;
+        this.locks = new Object[Math.min(stripeCount, Math.max(cells.length, 1))];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public void insert(K key, V value) {
+        for (int index : hashFunctions.hashes(key)) {
+            synchronized (locks[index % locks.length]) {
+                cells[index].add(key, value);
+            }
+        }
+    }
+
+    @Override
+    public void delete(K key, V value) {
+        for (int index : hashFunctions.hashes(key)) {
+            synchronized (locks[index % locks.length]) {
+                cells[index].subtract(key, value);
+            }
+        }
+    }
+
+    public HashFunctions<K, V> getHashFunctions() {
+        return hashFunctions;
+    }
+}
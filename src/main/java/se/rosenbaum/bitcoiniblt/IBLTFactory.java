@@ -0,0 +1,24 @@
+package se.rosenbaum.bitcoiniblt;
+
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.data.Data;
+
+/**
+ * Creates empty IBLTs that all share the same cell count, hash functions and data sizes,
+ * and does cell by cell arithmetic on such IBLTs. Since insertion into an IBLT is just XOR
+ * and addition on cells, inserting two sets into two separate IBLTs and then adding them
+ * together gives the same IBLT as inserting both sets into a single IBLT.
+ */
+public interface IBLTFactory<K extends Data, V extends Data> {
+    IBLT<K, V> createIblt();
+
+    /**
+     * Adds all cells of source to the corresponding cells of target. source is left untouched.
+     */
+    void add(IBLT<K, V> target, IBLT<K, V> source);
+
+    /**
+     * Subtracts all cells of source from the corresponding cells of target. source is left untouched.
+     */
+    void subtract(IBLT<K, V> target, IBLT<K, V> source);
+}
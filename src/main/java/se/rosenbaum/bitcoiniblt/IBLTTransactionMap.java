@@ -5,29 +5,112 @@ import se.rosenbaum.iblt.IBLT;
 import se.rosenbaum.iblt.data.Data;
 import se.rosenbaum.iblt.util.ResidualData;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class IBLTTransactionMap<K extends Data, V extends Data> {
     private IBLT<K, V> iblt;
     private TransactionCoder transactionCoder;
     private int residualEntriesCount = 0;
-    private int encodedEntriesCount = 0;
+    private AtomicInteger encodedEntriesCount = new AtomicInteger();
 
     public IBLTTransactionMap(IBLT<K, V> iblt, TransactionCoder transactionCoder) {
         this.iblt = iblt;
         this.transactionCoder = transactionCoder;
     }
 
+    /**
+     * May be called from several threads at once if the IBLT is a {@link ConcurrentIBLT} and the
+     * transaction coder is safe to use for encoding from several threads.
+     */
     public void putTransactions(List<Transaction> transactions) {
+        encodedEntriesCount.addAndGet(insertTransactions(iblt, transactions));
+    }
+
+    /**
+     * Same as {@link #putTransactions(List)}, but splits the transactions into partitionCount
+     * partitions that are encoded concurrently on the executor. Each partition is inserted into
+     * its own partial IBLT, and the partial IBLTs are then added to this map's IBLT cell by cell.
+     * The transaction coder must be safe to use for encoding from several threads at once.
+     */
+    public void putTransactions(List<Transaction> transactions, IBLTFactory<K, V> partialIbltFactory,
+                                ExecutorService executor, int partitionCount) {
+        if (partitionCount < 1) {
+            throw new RuntimeException("Partition count must be at least 1, but was " + partitionCount);
+        }
+        int partitionSize = (transactions.size() + partitionCount - 1) / partitionCount;
+        List<IBLT<K, V>> partialIblts = new ArrayList<IBLT<K, V>>(partitionCount);
+        List<Future<Integer>> sliceCounts = new ArrayList<Future<Integer>>(partitionCount);
+        for (int start = 0; start < transactions.size(); start += partitionSize) {
+            List<Transaction> partition = transactions.subList(start, Math.min(start + partitionSize, transactions.size()));
+            IBLT<K, V> target;
+            if (start == 0) {
+                // No need for a partial IBLT for the first partition, nobody else touches ours until all are done.
+                target = iblt;
+            } else {
+                target = partialIbltFactory.createIblt();
+                partialIblts.add(target);
+            }
+            sliceCounts.add(executor.submit(new PartitionEncoder(target, partition)));
+        }
+        try {
+            for (Future<Integer> sliceCount : sliceCounts) {
+                encodedEntriesCount.addAndGet(sliceCount.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while encoding transactions", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to encode transactions", e.getCause());
+        }
+        for (IBLT<K, V> partialIblt : partialIblts) {
+            partialIbltFactory.add(iblt, partialIblt);
+        }
+    }
+
+    private int insertTransactions(final IBLT<K, V> target, List<Transaction> transactions) {
+        int sliceCount = 0;
+        if (transactionCoder instanceof StreamingTransactionCoder) {
+            StreamingTransactionCoder<K, V> coder = (StreamingTransactionCoder<K, V>) transactionCoder;
+            SliceWriter<K, V> inserter = new SliceWriter<K, V>() {
+                public void writeSlice(K key, V value) {
+                    target.insert(key, value);
+                }
+            };
+            for (Transaction transaction : transactions) {
+                sliceCount += coder.encodeTransaction(transaction, inserter);
+            }
+            return sliceCount;
+        }
         for (Transaction transaction : transactions) {
             Map<K, V> data = transactionCoder.encodeTransaction(transaction);
-            encodedEntriesCount += data.size();
+            sliceCount += data.size();
             for (Map.Entry<K, V> entry : data.entrySet()) {
-                iblt.insert(entry.getKey(), entry.getValue());
+                target.insert(entry.getKey(), entry.getValue());
             }
         }
+        return sliceCount;
+    }
+
+    private class PartitionEncoder implements Callable<Integer> {
+        private IBLT<K, V> target;
+        private List<Transaction> transactions;
+
+        private PartitionEncoder(IBLT<K, V> target, List<Transaction> transactions) {
+            this.target = target;
+            this.transactions = transactions;
+        }
+
+        public Integer call() {
+            return insertTransactions(target, transactions);
+        }
     }
 
     public void deleteTransactions(List<Transaction> transactions) {
@@ -45,12 +128,23 @@ public class IBLTTransactionMap<K extends Data, V extends Data> {
         if (encodedTransactions != null) {
             listener = new AbsentTxAddingListEntriesListener(iblt, encodedTransactions);
         }
-        ResidualData<K, V> residualData = iblt.listEntries(listener);
+        ResidualData<K, V> residualData = new PeelingDecoder<K, V>(iblt).listEntries(listener);
         if (residualData == null) {
             return null;
         }
         Map<K, V> extraEntries = residualData.getExtraEntries();
         residualEntriesCount = residualData.getAbsentEntries().size() + extraEntries.size();
+        Map<K, V> absentEntries = listener == null ? residualData.getAbsentEntries() : listener.getAbsentEntries();
+        return decodeResidualEntries(transactionCoder, extraEntries, absentEntries);
+    }
+
+    /**
+     * Assembles the transactions from entries listed from an IBLT.
+     *
+     * @return the transactions, or null if the entries are not trustworthy.
+     */
+    public static <K extends Data, V extends Data> ResidualTransactions decodeResidualEntries(TransactionCoder<K, V> transactionCoder,
+                                                                                         Map<K, V> extraEntries, Map<K, V> absentEntries) {
         Collection<Transaction> extraTransactions = transactionCoder.decodeTransactions(extraEntries);
 
         if (extraTransactions == null) {
@@ -73,12 +167,7 @@ public class IBLTTransactionMap<K extends Data, V extends Data> {
             }
         }
 
-        Collection<Transaction> absentTransactions;
-        if (listener == null) {
-            absentTransactions = transactionCoder.decodeTransactions(residualData.getAbsentEntries());
-        } else {
-            absentTransactions = transactionCoder.decodeTransactions(listener.getAbsentEntries());
-        }
+        Collection<Transaction> absentTransactions = transactionCoder.decodeTransactions(absentEntries);
         if (absentTransactions == null) {
             // See comment in null check for extraTransactions above
             return null;
@@ -91,11 +180,15 @@ public class IBLTTransactionMap<K extends Data, V extends Data> {
         return iblt;
     }
 
+    public TransactionCoder getTransactionCoder() {
+        return transactionCoder;
+    }
+
     public int getResidualEntriesCount() {
         return residualEntriesCount;
     }
 
     public int getEncodedEntriesCount() {
-        return encodedEntriesCount;
+        return encodedEntriesCount.get();
     }
 }
@@ -0,0 +1,139 @@
+package se.rosenbaum.bitcoiniblt;
+
+import org.bitcoinj.core.Sha256Hash;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the first prefixSize bytes of SHA256(txid || salt) for the most recently used
+ * transactions and salts, so that a mempool transaction is hashed once per salt instead of every
+ * time it is encoded, looked up or removed. Entries are evicted in least recently used order
+ * when more than maxSize are cached.
+ * <p/>
+ * One cache can be shared by several transaction coders and threads, also if they use different
+ * salts, for example a block under one salt and a sketch under another.
+ */
+public class KeyDerivationCache {
+    /**
+     * Enough for the LongData coders, and for ByteArrayData coders with keys of up to 10 bytes.
+     */
+    public static final int DEFAULT_PREFIX_SIZE = 8;
+
+    private static class SaltedId {
+        byte[] salt;
+        Sha256Hash transactionId;
+        int hashCode;
+
+        SaltedId(byte[] salt, Sha256Hash transactionId) {
+            this.salt = salt;
+            this.transactionId = transactionId;
+            this.hashCode = 31 * transactionId.hashCode() + Arrays.hashCode(salt);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SaltedId)) {
+                return false;
+            }
+            SaltedId other = (SaltedId) o;
+            return transactionId.equals(other.transactionId) && (salt == other.salt || Arrays.equals(salt, other.salt));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private final Map<SaltedId, byte[]> entries;
+    private final int prefixSize;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    public KeyDerivationCache(int maxSize) {
+        this(maxSize, DEFAULT_PREFIX_SIZE);
+    }
+
+    /**
+     * @param prefixSize the number of key bytes kept per transaction, at most 32.
+     */
+    public KeyDerivationCache(final int maxSize, int prefixSize) {
+        if (maxSize < 1) {
+            throw new RuntimeException("Max size must be at least 1, but was " + maxSize);
+        }
+        if (prefixSize < 1 || prefixSize > 32) {
+            throw new RuntimeException("Prefix size must be between 1 and 32, but was " + prefixSize);
+        }
+        this.prefixSize = prefixSize;
+        entries = new LinkedHashMap<SaltedId, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SaltedId, byte[]> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the first {@link #getPrefixSize()} bytes of SHA256(transactionId || salt). The returned
+     * array must not be modified.
+     */
+    public byte[] getKey(Sha256Hash transactionId, byte[] salt) {
+        SaltedId saltedId = new SaltedId(salt, transactionId);
+        synchronized (this) {
+            byte[] key = entries.get(saltedId);
+            if (key != null) {
+                hitCount++;
+                return key;
+            }
+            missCount++;
+        }
+        // Hash outside the lock. Two threads may derive the same key, which is harmless.
+        byte[] key = Arrays.copyOf(deriveKey(transactionId, salt), prefixSize);
+        synchronized (this) {
+            entries.put(saltedId, key);
+        }
+        return key;
+    }
+
+    /**
+     * @param cache may be null, in which case the full key is always derived
+     * @return at least the first length bytes of SHA256(transactionId || salt).
+     */
+    public static byte[] getKey(KeyDerivationCache cache, Sha256Hash transactionId, byte[] salt, int length) {
+        if (cache == null || length > cache.prefixSize) {
+            return deriveKey(transactionId, salt);
+        }
+        return cache.getKey(transactionId, salt);
+    }
+
+    public static byte[] deriveKey(Sha256Hash transactionId, byte[] salt) {
+        byte[] idBytes = transactionId.getBytes();
+        byte[] key = Arrays.copyOf(idBytes, idBytes.length + salt.length);
+        System.arraycopy(salt, 0, key, idBytes.length, salt.length);
+        return Sha256Hash.create(key).getBytes();
+    }
+
+    public int getPrefixSize() {
+        return prefixSize;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        hitCount = 0;
+        missCount = 0;
+    }
+}
@@ -0,0 +1,88 @@
+package se.rosenbaum.bitcoiniblt;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.data.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An IBLT containing our own mempool, kept up to date as transactions enter and leave
+ * the mempool. When an IBLT for a new block arrives, {@link BlockCoder#decode(org.bitcoinj.core.Block, MempoolIBLT)}
+ * subtracts this IBLT from it cell by cell, which costs the same no matter how big the
+ * mempool is.
+ * <p/>
+ * The IBLT must be created with the same parameters as the IBLTs it will be subtracted
+ * from, and its transaction coder must use the same salt as the sender. If the salt
+ * changes, the whole mempool must be added to a new MempoolIBLT.
+ */
+public class MempoolIBLT<K extends Data, V extends Data> {
+    private IBLT<K, V> iblt;
+    private IBLTFactory<K, V> ibltFactory;
+    private TransactionCoder<K, V> transactionCoder;
+    private Map<Sha256Hash, Transaction> transactions = new LinkedHashMap<Sha256Hash, Transaction>();
+
+    public MempoolIBLT(IBLTFactory<K, V> ibltFactory, TransactionCoder<K, V> transactionCoder) {
+        this.ibltFactory = ibltFactory;
+        this.transactionCoder = transactionCoder;
+        this.iblt = ibltFactory.createIblt();
+    }
+
+    public boolean addTransaction(Transaction transaction) {
+        Sha256Hash hash = transaction.getHash();
+        if (transactions.containsKey(hash)) {
+            return false;
+        }
+        Map<K, V> data = transactionCoder.encodeTransaction(transaction);
+        for (Map.Entry<K, V> entry : data.entrySet()) {
+            iblt.insert(entry.getKey(), entry.getValue());
+        }
+        transactions.put(hash, transaction);
+        return true;
+    }
+
+    public boolean removeTransaction(Sha256Hash hash) {
+        Transaction transaction = transactions.remove(hash);
+        if (transaction == null) {
+            return false;
+        }
+        // The slices are encoded again rather than kept from addTransaction, since a mempool
+        // has millions of them. Derived keys are cached if the coder has a KeyDerivationCache.
+        Map<K, V> data = transactionCoder.encodeTransaction(transaction);
+        for (Map.Entry<K, V> entry : data.entrySet()) {
+            iblt.delete(entry.getKey(), entry.getValue());
+        }
+        transactionCoder.removeEncoded(transaction);
+        return true;
+    }
+
+    /**
+     * Subtracts this IBLT from target, cell by cell. This IBLT is left untouched.
+     */
+    public void subtractFrom(IBLT<K, V> target) {
+        ibltFactory.subtract(target, iblt);
+    }
+
+    /**
+     * The IBLT of the mempool. It must not be modified by the caller.
+     */
+    public IBLT<K, V> getIBLT() {
+        return iblt;
+    }
+
+    public List<Transaction> getTransactions() {
+        return new ArrayList<Transaction>(transactions.values());
+    }
+
+    public TransactionCoder<K, V> getTransactionCoder() {
+        return transactionCoder;
+    }
+
+    public int size() {
+        return transactions.size();
+    }
+}
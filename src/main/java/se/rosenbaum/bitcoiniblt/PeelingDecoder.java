@@ -0,0 +1,160 @@
+package se.rosenbaum.bitcoiniblt;
+
+import se.rosenbaum.iblt.Cell;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.ListEntriesListener;
+import se.rosenbaum.iblt.data.Data;
+import se.rosenbaum.iblt.util.ResidualData;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lists the entries of an IBLT like {@link IBLT#listEntries(ListEntriesListener)} does, but
+ * without rescanning the whole table until nothing changes. The table is scanned for pure cells
+ * once, and after that only the cells touched by an insert or delete are checked again. The
+ * work is linear in the cell count plus the number of entries peeled.
+ * <p/>
+ * While listing, each cell of the IBLT is replaced by a view that notes when it is changed, so
+ * the IBLT's own hash functions decide which cells are checked again. This also covers a
+ * {@link ListEntriesListener} that changes the IBLT, like {@link AbsentTxAddingListEntriesListener}.
+ * The original cells are put back when done.
+ */
+public class PeelingDecoder<K extends Data, V extends Data> {
+    private IBLT<K, V> iblt;
+    private int[] candidates;
+    private int candidateCount = 0;
+    private int checkedCellCount = 0;
+
+    public PeelingDecoder(IBLT<K, V> iblt) {
+        this.iblt = iblt;
+    }
+
+    private class TrackingCell extends Cell<K, V> {
+        private Cell<K, V> cell;
+        private int index;
+
+        TrackingCell(Cell<K, V> cell, int index) {
+            // All state lives in the wrapped cell
+            super(null, null, null, null, 0);
+            this.cell = cell;
+            this.index = index;
+        }
+
+        @Override
+        public void add(K key, V value) {
+            cell.add(key, value);
+            push(index);
+        }
+
+        @Override
+        public void subtract(K key, V value) {
+            cell.subtract(key, value);
+            push(index);
+        }
+
+        @Override
+        public boolean isPure() {
+            return cell.isPure();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return cell.isEmpty();
+        }
+
+        @Override
+        public K getKeySum() {
+            return cell.getKeySum();
+        }
+
+        @Override
+        public V getValueSum() {
+            return cell.getValueSum();
+        }
+
+        @Override
+        public K getHashKeySum() {
+            return cell.getHashKeySum();
+        }
+
+        @Override
+        public int getCount() {
+            return cell.getCount();
+        }
+    }
+
+    private void push(int index) {
+        if (candidateCount == candidates.length) {
+            int[] newCandidates = new int[candidates.length * 2];
+            System.arraycopy(candidates, 0, newCandidates, 0, candidateCount);
+            candidates = newCandidates;
+        }
+        candidates[candidateCount++] = index;
+    }
+
+    /**
+     * @return the IBLT being decoded.
+     */
+    public IBLT<K, V> getIBLT() {
+        return iblt;
+    }
+
+    /**
+     * @param listener may be null
+     * @return the peeled entries, or null if the IBLT could not be fully decoded.
+     */
+    @SuppressWarnings("unchecked")
+    public ResidualData<K, V> listEntries(ListEntriesListener<K, V> listener) {
+        // The IBLT's own array, so that its inserts and deletes go through the tracking cells
+        Cell<K, V>[] cells = iblt.getCells();
+        Cell<K, V>[] originalCells = cells.clone();
+        candidates = new int[Math.max(16, cells.length)];
+        candidateCount = 0;
+        try {
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = new TrackingCell(originalCells[i], i);
+                if (originalCells[i].isPure()) {
+                    push(i);
+                }
+            }
+            Map<K, V> extraEntries = new HashMap<K, V>();
+            Map<K, V> absentEntries = new HashMap<K, V>();
+            while (candidateCount > 0) {
+                Cell<K, V> cell = originalCells[candidates[--candidateCount]];
+                checkedCellCount++;
+                if (!cell.isPure()) {
+                    continue;
+                }
+                K key = (K) cell.getKeySum().copy();
+                V value = (V) cell.getValueSum().copy();
+                if (cell.getCount() == 1) {
+                    extraEntries.put(key, value);
+                    iblt.delete(key, value);
+                } else {
+                    absentEntries.put(key, value);
+                    iblt.insert(key, value);
+                    if (listener != null) {
+                        listener.absentKeyDetected(key, value);
+                    }
+                }
+            }
+            for (Cell<K, V> cell : originalCells) {
+                if (!cell.isEmpty()) {
+                    return null;
+                }
+            }
+            return new ResidualData<K, V>(extraEntries, absentEntries);
+        } finally {
+            System.arraycopy(originalCells, 0, cells, 0, cells.length);
+            candidates = null;
+        }
+    }
+
+    /**
+     * @return the number of times a cell was checked for purity, for measuring.
+     */
+    public int getCheckedCellCount() {
+        return checkedCellCount;
+    }
+}
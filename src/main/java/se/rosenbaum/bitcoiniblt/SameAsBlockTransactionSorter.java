@@ -1,25 +1,61 @@
 package se.rosenbaum.bitcoiniblt;
 
 import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class SameAsBlockTransactionSorter implements TransactionSorter {
     Block blockToImitate;
+    private Map<Sha256Hash, Integer> positions;
 
     public SameAsBlockTransactionSorter(Block blockToImitate) {
         this.blockToImitate = blockToImitate;
     }
 
+    /**
+     * @param positions the position of each transaction in the block to imitate, from 0 to positions.size() - 1.
+     *                  Can be shared between sorters, it is never modified.
+     */
+    public SameAsBlockTransactionSorter(Map<Sha256Hash, Integer> positions) {
+        this.positions = positions;
+    }
+
+    public static Map<Sha256Hash, Integer> createPositions(Block block) {
+        List<Transaction> transactions = block.getTransactions();
+        Map<Sha256Hash, Integer> positions = new HashMap<Sha256Hash, Integer>(transactions.size() * 2);
+        for (int i = 0; i < transactions.size(); i++) {
+            positions.put(transactions.get(i).getHash(), i);
+        }
+        return positions;
+    }
+
+    /**
+     * Returns the transactions of list that are in the block, in block order. list is not modified.
+     */
     @Override
     public List<Transaction> sort(List<Transaction> list) {
-        List<Transaction> result = new ArrayList<Transaction>(list.size());
-        for (Transaction transaction : blockToImitate.getTransactions()) {
-            int index = list.indexOf(transaction);
-            if (index !=  -1) {
-                result.add(list.remove(index));
+        if (positions == null) {
+            // Indexed once, later sorts against the same block reuse it
+            positions = createPositions(blockToImitate);
+        }
+        Transaction[] slots = new Transaction[positions.size()];
+        int found = 0;
+        for (Transaction transaction : list) {
+            Integer position = positions.get(transaction.getHash());
+            if (position != null && slots[position] == null) {
+                slots[position] = transaction;
+                found++;
+            }
+        }
+        List<Transaction> result = new ArrayList<Transaction>(found);
+        for (Transaction transaction : slots) {
+            if (transaction != null) {
+                result.add(transaction);
             }
         }
         return result;
@@ -0,0 +1,11 @@
+package se.rosenbaum.bitcoiniblt;
+
+/**
+ * Receives the slices of a transaction from a {@link StreamingTransactionCoder}, one
+ * slice at a time. The coder reuses the same key and value objects for every slice
+ * it writes, so an implementation must not keep references to them after
+ * {@link #writeSlice(Object, Object)} returns.
+ */
+public interface SliceWriter<K, V> {
+    void writeSlice(K key, V value);
+}
@@ -0,0 +1,19 @@
+package se.rosenbaum.bitcoiniblt;
+
+import org.bitcoinj.core.Transaction;
+
+/**
+ * A {@link TransactionCoder} that can write the slices of a transaction straight to
+ * a {@link SliceWriter} instead of collecting them in a map. No objects are created per
+ * slice, which matters when encoding blocks with thousands of transactions.
+ */
+public interface StreamingTransactionCoder<K, V> extends TransactionCoder<K, V> {
+    /**
+     * Writes all slices of the transaction to the writer. Unlike
+     * {@link #encodeTransaction(Transaction)} the slices are not remembered by the
+     * coder, so the transaction will not be reported by {@link #isEncoded(Transaction)}.
+     *
+     * @return the number of slices written
+     */
+    int encodeTransaction(Transaction transaction, SliceWriter<K, V> writer);
+}
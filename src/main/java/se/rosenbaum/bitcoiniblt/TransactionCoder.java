@@ -13,4 +13,6 @@ public interface TransactionCoder<K, V> {
     Map<K, Map<K, V>> getEncodedTransactions();
 
     boolean isEncoded(Transaction transaction);
+
+    void removeEncoded(Transaction transaction);
 }
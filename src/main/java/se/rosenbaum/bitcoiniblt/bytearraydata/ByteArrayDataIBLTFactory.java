@@ -0,0 +1,78 @@
+package se.rosenbaum.bitcoiniblt.bytearraydata;
+
+import se.rosenbaum.bitcoiniblt.IBLTFactory;
+import se.rosenbaum.iblt.Cell;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.data.ByteArrayData;
+import se.rosenbaum.iblt.hash.ByteArrayDataHashFunction;
+import se.rosenbaum.iblt.hash.HashFunction;
+
+public class ByteArrayDataIBLTFactory implements IBLTFactory<ByteArrayData, ByteArrayData> {
+    private int cellCount;
+    private int hashFunctionCount;
+    private int keySize;
+    private int valueSize;
+    private int hashSumSize;
+    private boolean offHeap;
+    private HashFunction<ByteArrayData, ByteArrayData> hashFunction;
+
+    public ByteArrayDataIBLTFactory(int cellCount, int hashFunctionCount, int keySize, int valueSize, int hashSumSize) {
+        this(cellCount, hashFunctionCount, keySize, valueSize, hashSumSize, false);
+    }
+
+    public ByteArrayDataIBLTFactory(int cellCount, int hashFunctionCount, int keySize, int valueSize, int hashSumSize, boolean offHeap) {
+        this.cellCount = cellCount;
+        this.hashFunctionCount = hashFunctionCount;
+        this.keySize = keySize;
+        this.valueSize = valueSize;
+        this.hashSumSize = hashSumSize;
+        this.offHeap = offHeap;
+        this.hashFunction = new ByteArrayDataHashFunction(hashSumSize);
+    }
+
+    public IBLT<ByteArrayData, ByteArrayData> createIblt() {
+        return new IBLTUtils().createIblt(cellCount, hashFunctionCount, keySize, valueSize, hashSumSize, offHeap);
+    }
+
+    public void add(IBLT<ByteArrayData, ByteArrayData> target, IBLT<ByteArrayData, ByteArrayData> source) {
+        combine(target, source, 1);
+    }
+
+    public void subtract(IBLT<ByteArrayData, ByteArrayData> target, IBLT<ByteArrayData, ByteArrayData> source) {
+        combine(target, source, -1);
+    }
+
+    private void combine(IBLT<ByteArrayData, ByteArrayData> target, IBLT<ByteArrayData, ByteArrayData> source, int sign) {
+        Cell<ByteArrayData, ByteArrayData>[] targetCells = target.getCells();
+        Cell<ByteArrayData, ByteArrayData>[] sourceCells = source.getCells();
+        if (targetCells.length != sourceCells.length) {
+            throw new RuntimeException("Cell count mismatch: " + targetCells.length + " != " + sourceCells.length);
+        }
+        for (int i = 0; i < targetCells.length; i++) {
+            Cell<ByteArrayData, ByteArrayData> sourceCell = sourceCells[i];
+            if (sourceCell.isEmpty()) {
+                continue;
+            }
+            Cell<ByteArrayData, ByteArrayData> targetCell = targetCells[i];
+            if (targetCell instanceof OffHeapCell) {
+                ((OffHeapCell) targetCell).add(sourceCell, sign);
+                continue;
+            }
+            targetCells[i] = new Cell<ByteArrayData, ByteArrayData>(
+                    xor(targetCell.getKeySum(), sourceCell.getKeySum()),
+                    xor(targetCell.getValueSum(), sourceCell.getValueSum()),
+                    xor(targetCell.getHashKeySum(), sourceCell.getHashKeySum()),
+                    hashFunction, targetCell.getCount() + sign * sourceCell.getCount());
+        }
+    }
+
+    private ByteArrayData xor(ByteArrayData a, ByteArrayData b) {
+        byte[] aBytes = a.getValue();
+        byte[] bBytes = b.getValue();
+        byte[] result = new byte[aBytes.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) (aBytes[i] ^ bBytes[i]);
+        }
+        return new ByteArrayData(result);
+    }
+}
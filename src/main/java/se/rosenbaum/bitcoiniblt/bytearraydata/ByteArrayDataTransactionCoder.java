@@ -1,27 +1,65 @@
 package se.rosenbaum.bitcoiniblt.bytearraydata;
 
-import org.bitcoinj.core.Message;
 import org.bitcoinj.core.NetworkParameters;
-import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
 import org.bitcoinj.core.VerificationException;
-import se.rosenbaum.bitcoiniblt.TransactionCoder;
+import se.rosenbaum.bitcoiniblt.KeyDerivationCache;
+import se.rosenbaum.bitcoiniblt.SliceWriter;
+import se.rosenbaum.bitcoiniblt.StreamingTransactionCoder;
 import se.rosenbaum.iblt.data.ByteArrayData;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+public class ByteArrayDataTransactionCoder implements StreamingTransactionCoder<ByteArrayData, ByteArrayData> {
+    private static final int PARSE_BATCH_SIZE = 16;
+    // Unsigned byte order, so that slices of a transaction end up together and in index order
+    private static final Comparator<Map.Entry<ByteArrayData, ByteArrayData>> KEY_ORDER = new Comparator<Map.Entry<ByteArrayData, ByteArrayData>>() {
+        public int compare(Map.Entry<ByteArrayData, ByteArrayData> entry, Map.Entry<ByteArrayData, ByteArrayData> entry2) {
+            byte[] key = entry.getKey().getValue();
+            byte[] key2 = entry2.getKey().getValue();
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != key2[i]) {
+                    return (key[i] & 0xff) - (key2[i] & 0xff);
+                }
+            }
+            return 0;
+        }
+    };
 
-public class ByteArrayDataTransactionCoder implements TransactionCoder<ByteArrayData, ByteArrayData> {
     NetworkParameters params;
     byte[] salt;
     private int keySize;
     private int valueSize;
-    private Map<ByteArrayData, Map<ByteArrayData, ByteArrayData>> encodedTransactions = new HashMap<ByteArrayData, Map<ByteArrayData, ByteArrayData>>();
+    private KeyDerivationCache keyDerivationCache;
+    private ExecutorService decodeExecutor;
+    // Keeps the transactions rather than their slices, which are many small objects
+    private MempoolSliceIndex encodedTransactions = new MempoolSliceIndex(this);
 
     public ByteArrayDataTransactionCoder(NetworkParameters params, byte[] salt, int keySize, int valueSize) {
+        this(params, salt, keySize, valueSize, null);
+    }
+
+    /**
+     * @param keyDerivationCache remembers derived keys, may be shared with other coders. May be null.
+     */
+    public ByteArrayDataTransactionCoder(NetworkParameters params, byte[] salt, int keySize, int valueSize, KeyDerivationCache keyDerivationCache) {
+        this(params, salt, keySize, valueSize, keyDerivationCache, null);
+    }
+
+    /**
+     * @param decodeExecutor parses and verifies decoded transactions in parallel. May be null.
+     */
+    public ByteArrayDataTransactionCoder(NetworkParameters params, byte[] salt, int keySize, int valueSize,
+                                         KeyDerivationCache keyDerivationCache, ExecutorService decodeExecutor) {
         if (salt.length != 256/8) {
             throw new RuntimeException("Bad salt length! Must be 32, but was  " + salt.length);
         }
@@ -30,13 +68,15 @@ public class ByteArrayDataTransactionCoder implements TransactionCoder<ByteArray
         this.salt = salt;
         this.keySize = keySize;
         this.valueSize = valueSize;
+        this.keyDerivationCache = keyDerivationCache;
+        this.decodeExecutor = decodeExecutor;
     }
 
     public Map<ByteArrayData, ByteArrayData> encodeTransaction(Transaction transaction) {
         Map<ByteArrayData, ByteArrayData> map = new HashMap<ByteArrayData, ByteArrayData>();
 
         ByteArrayKeyData key = getKeyData(transaction);
-        encodedTransactions.put(new ByteArrayData(key.getBytes()), map);
+        encodedTransactions.add(transaction, key.getBytes());
         char keyCounter = 0; // char is a 16 bit unsigned integer
 
         byte[] bytes = transaction.bitcoinSerialize();
@@ -50,60 +90,155 @@ public class ByteArrayDataTransactionCoder implements TransactionCoder<ByteArray
         return map;
     }
 
+    public int encodeTransaction(Transaction transaction, SliceWriter<ByteArrayData, ByteArrayData> writer) {
+        // The key and value data wrap scratch arrays that are overwritten for each slice.
+        byte[] keyBytes = getKeyBytes(transaction);
+        byte[] valueBytes = new byte[valueSize];
+        ByteArrayKeyData key = new ByteArrayKeyData(keyBytes);
+        ByteArrayData keyData = new ByteArrayData(keyBytes);
+        ByteArrayData valueData = new ByteArrayData(valueBytes);
+        char keyCounter = 0; // char is a 16 bit unsigned integer
+
+        byte[] bytes = transaction.bitcoinSerialize();
+        for (int i = 0; i < bytes.length; i += valueSize) {
+            key.setIndex(keyCounter++);
+            int length = Math.min(valueSize, bytes.length - i);
+            System.arraycopy(bytes, i, valueBytes, 0, length);
+            if (length < valueSize) {
+                // Last slice is zero padded, just like Arrays.copyOfRange does in encodeTransaction(Transaction)
+                Arrays.fill(valueBytes, length, valueSize, (byte) 0);
+            }
+            writer.writeSlice(keyData, valueData);
+        }
+        return keyCounter;
+    }
+
     public boolean isEncoded(Transaction transaction) {
         ByteArrayKeyData key = getKeyData(transaction);
         return encodedTransactions.containsKey(new ByteArrayData(key.getBytes()));
     }
 
+    public void removeEncoded(Transaction transaction) {
+        ByteArrayKeyData key = getKeyData(transaction);
+        encodedTransactions.remove(new ByteArrayData(key.getBytes()));
+    }
+
     public ByteArrayKeyData getKeyData(Transaction transaction) {
-        byte[] transactionId = transaction.getHash().getBytes();
-        byte[] key = Arrays.copyOf(transactionId, transactionId.length + salt.length);
-        System.arraycopy(salt, 0, key, transactionId.length, salt.length);
-        key = Sha256Hash.create(key).getBytes();
+        return new ByteArrayKeyData(getKeyBytes(transaction));
+    }
+
+    byte[] getKeyBytes(Transaction transaction) {
+        byte[] key = KeyDerivationCache.getKey(keyDerivationCache, transaction.getHash(), salt, keySize - 2);
 
         byte[] data = new byte[keySize];
         // 64 first bits (the last two bytes will be overwritten by counter
         System.arraycopy(key, 0, data, 0, keySize - 2);
-        return new ByteArrayKeyData(data);
+        return data;
     }
 
     public List<Transaction> decodeTransactions(Map<ByteArrayData, ByteArrayData> entries) {
-        Map<ByteArrayData, byte[]> transactionGroups = new HashMap<ByteArrayData, byte[]>();
-        int i = 0;
-        for (Map.Entry<ByteArrayData, ByteArrayData> entry : entries.entrySet()) {
-            ByteArrayKeyData key = new ByteArrayKeyData(entry.getKey().getValue());
-            char keyCounter = key.getIndex();
-
-            ByteArrayKeyData groupKey = new ByteArrayKeyData(key.getBytes());
-            groupKey.setIndex((char)0);
-            ByteArrayData groupData = new ByteArrayData(groupKey.getBytes());
-
-            byte[] value = entry.getValue().getValue();
-
-            byte[] txBytes = transactionGroups.get(groupData);
-            if (txBytes == null) {
-                txBytes = new byte[(keyCounter+1) * valueSize];
-                transactionGroups.put(groupData, txBytes);
-            } else if (txBytes.length < (keyCounter+1) * valueSize) {
-                byte[] newTxBytes = new byte[(keyCounter+1) * valueSize];
-                System.arraycopy(txBytes, 0, newTxBytes, 0, txBytes.length);
-                transactionGroups.put(groupData, newTxBytes);
-                txBytes = newTxBytes;
+        // Sorting on key puts the slices of each transaction next to each other, in index order.
+        Map.Entry<ByteArrayData, ByteArrayData>[] slices = entries.entrySet().toArray(new Map.Entry[entries.size()]);
+        Arrays.sort(slices, KEY_ORDER);
+
+        int[] groupStarts = new int[slices.length + 1];
+        int groupCount = 0;
+        for (int i = 0; i < slices.length; i++) {
+            if (i == 0 || !samePrefix(slices[i - 1].getKey().getValue(), slices[i].getKey().getValue())) {
+                groupStarts[groupCount++] = i;
             }
+        }
+        groupStarts[groupCount] = slices.length;
 
-            System.arraycopy(value, 0, txBytes, keyCounter * valueSize, valueSize);
+        // All transactions go into one buffer, each sized from the highest index of its group
+        int[] offsets = new int[groupCount + 1];
+        for (int group = 0; group < groupCount; group++) {
+            int lastIndex = index(slices[groupStarts[group + 1] - 1].getKey().getValue());
+            offsets[group + 1] = offsets[group] + (lastIndex + 1) * valueSize;
         }
-        List<Transaction> result = new ArrayList<Transaction>(transactionGroups.size());
-        for (byte[] txBytes : transactionGroups.values()) {
-            Transaction transaction = new Transaction(params, txBytes, null, false, false, Message.UNKNOWN_LENGTH);
+        byte[] buffer = new byte[offsets[groupCount]];
+        for (int group = 0; group < groupCount; group++) {
+            for (int i = groupStarts[group]; i < groupStarts[group + 1]; i++) {
+                int index = index(slices[i].getKey().getValue());
+                System.arraycopy(slices[i].getValue().getValue(), 0, buffer, offsets[group] + index * valueSize, valueSize);
+            }
+        }
+
+        Transaction[] transactions = new Transaction[groupCount];
+        if (!parseTransactions(buffer, offsets, transactions)) {
+            return null;
+        }
+        return new ArrayList<Transaction>(Arrays.asList(transactions));
+    }
+
+    private boolean parseTransactions(final byte[] buffer, final int[] offsets, final Transaction[] result) {
+        if (decodeExecutor == null || result.length < 2 * PARSE_BATCH_SIZE) {
+            return parseTransactions(buffer, offsets, result, 0, result.length);
+        }
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for (int from = 0; from < result.length; from += PARSE_BATCH_SIZE) {
+            final int start = from;
+            final int end = Math.min(from + PARSE_BATCH_SIZE, result.length);
+            futures.add(decodeExecutor.submit(new Callable<Boolean>() {
+                public Boolean call() {
+                    return parseTransactions(buffer, offsets, result, start, end);
+                }
+            }));
+        }
+        boolean success = true;
+        try {
+            for (Future<Boolean> future : futures) {
+                success &= future.get();
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            cancel(futures);
+            throw new RuntimeException(e);
+        }
+        return success;
+    }
+
+    private static void cancel(List<Future<Boolean>> futures) {
+        for (Future<Boolean> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private boolean parseTransactions(byte[] buffer, int[] offsets, Transaction[] result, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int length = offsets[i + 1] - offsets[i];
+            Transaction transaction;
             try {
+                // bitcoinj ignores the length, so a corrupt transaction would read into the next one
+                transaction = new Transaction(params, Arrays.copyOfRange(buffer, offsets[i], offsets[i + 1]), 0, null, false, false, length);
                 transaction.verify(); // We might get bad data here.
             } catch (VerificationException e) {
-                return null;
+                // ProtocolException included
+                return false;
+            }
+            // Only the last slice is padded, so a transaction that leaves a whole slice unread is corrupt
+            if (length - transaction.getMessageSize() >= valueSize) {
+                return false;
+            }
+            result[i] = transaction;
+        }
+        return true;
+    }
+
+    private static boolean samePrefix(byte[] key, byte[] otherKey) {
+        for (int i = 0; i < key.length - 2; i++) {
+            if (key[i] != otherKey[i]) {
+                return false;
             }
-            result.add(transaction);
         }
-        return result;
+        return true;
+    }
+
+    private static int index(byte[] key) {
+        return ((key[key.length - 2] & 0xff) << 8) | (key[key.length - 1] & 0xff);
     }
 
     public Map<ByteArrayData, Map<ByteArrayData, ByteArrayData>> getEncodedTransactions() {
@@ -17,9 +17,9 @@ public class ByteArrayKeyData {
 */
 
     public void setIndex(char index) {
-        byte[] keyCounterBytes = ByteBuffer.allocate(2).putChar(index).array();
-        bytes[bytes.length - 2] = keyCounterBytes[0];
-        bytes[bytes.length - 1] = keyCounterBytes[1];
+        // Big endian, same as ByteBuffer.putChar, but without allocating a buffer per slice
+        bytes[bytes.length - 2] = (byte) (index >>> 8);
+        bytes[bytes.length - 1] = (byte) index;
     }
 
     public char getIndex() {
@@ -0,0 +1,69 @@
+package se.rosenbaum.bitcoiniblt.bytearraydata;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Transaction;
+import se.rosenbaum.bitcoiniblt.SliceWriter;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.data.ByteArrayData;
+import se.rosenbaum.iblt.hash.ByteArrayDataHashFunction;
+import se.rosenbaum.iblt.hash.ByteArraySubtablesHashFunctions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes a block into IBLTs of several cell counts at once, for example one per peer the
+ * block is relayed to. Each transaction is serialized and sliced once, each slice is inserted
+ * into all IBLTs right away, and the key hash of each slice is computed once for all IBLTs.
+ * The IBLTs are the same as the ones a BlockCoder would produce with the same coder and sizes.
+ */
+public class FanOutBlockEncoder {
+    private ByteArrayDataTransactionCoder transactionCoder;
+    private int hashFunctionCount;
+    private int keySize;
+    private int valueSize;
+    private int hashSumSize;
+    private int encodedEntriesCount = 0;
+
+    public FanOutBlockEncoder(ByteArrayDataTransactionCoder transactionCoder, int hashFunctionCount, int keySize,
+                              int valueSize, int hashSumSize) {
+        this.transactionCoder = transactionCoder;
+        this.hashFunctionCount = hashFunctionCount;
+        this.keySize = keySize;
+        this.valueSize = valueSize;
+        this.hashSumSize = hashSumSize;
+    }
+
+    /**
+     * @return one IBLT per cell count, in the same order.
+     */
+    public List<IBLT<ByteArrayData, ByteArrayData>> encode(Block block, int... cellCounts) {
+        LastKeyHashFunction keyHashFunction = new LastKeyHashFunction(new ByteArrayDataHashFunction(hashSumSize));
+        IBLTUtils utils = new IBLTUtils();
+        final List<IBLT<ByteArrayData, ByteArrayData>> iblts = new ArrayList<IBLT<ByteArrayData, ByteArrayData>>(cellCounts.length);
+        for (int cellCount : cellCounts) {
+            iblts.add(new IBLT<ByteArrayData, ByteArrayData>(
+                    utils.createCells(cellCount, keySize, valueSize, hashSumSize, keyHashFunction),
+                    new ByteArraySubtablesHashFunctions<ByteArrayData>(cellCount, hashFunctionCount)));
+        }
+        SliceWriter<ByteArrayData, ByteArrayData> inserter = new SliceWriter<ByteArrayData, ByteArrayData>() {
+            public void writeSlice(ByteArrayData key, ByteArrayData value) {
+                for (IBLT<ByteArrayData, ByteArrayData> iblt : iblts) {
+                    iblt.insert(key, value);
+                }
+            }
+        };
+        encodedEntriesCount = 0;
+        for (Transaction transaction : block.getTransactions()) {
+            encodedEntriesCount += transactionCoder.encodeTransaction(transaction, inserter);
+        }
+        return iblts;
+    }
+
+    /**
+     * @return the number of slices of the last encoded block, which were inserted into every IBLT.
+     */
+    public int getEncodedEntriesCount() {
+        return encodedEntriesCount;
+    }
+}
@@ -1,5 +1,6 @@
 package se.rosenbaum.bitcoiniblt.bytearraydata;
 
+import se.rosenbaum.bitcoiniblt.ConcurrentIBLT;
 import se.rosenbaum.iblt.Cell;
 import se.rosenbaum.iblt.IBLT;
 import se.rosenbaum.iblt.data.ByteArrayData;
@@ -10,8 +11,15 @@ import se.rosenbaum.iblt.hash.HashFunction;
 public class IBLTUtils {
 
     public Cell<ByteArrayData, ByteArrayData>[] createCells(int numberOfCells, int keySize, int valueSize, int hashSumSize) {
+        return createCells(numberOfCells, keySize, valueSize, hashSumSize, new ByteArrayDataHashFunction(hashSumSize));
+    }
+
+    /**
+     * @param hashFunction the key hash function of the cells, must produce hashSumSize bytes.
+     */
+    public Cell<ByteArrayData, ByteArrayData>[] createCells(int numberOfCells, int keySize, int valueSize, int hashSumSize,
+                                                             HashFunction<ByteArrayData, ByteArrayData> hashFunction) {
         Cell[] cells = new Cell[numberOfCells];
-        HashFunction hashFunction = new ByteArrayDataHashFunction(hashSumSize);
         for (int i = 0; i < numberOfCells; i++) {
             cells[i] = new Cell(data(keySize), data(valueSize), data(hashSumSize), hashFunction, 0);
         }
@@ -23,8 +31,30 @@ public class IBLTUtils {
     }
 
     public IBLT<ByteArrayData, ByteArrayData> createIblt(int cellCount, int hashFunctionCount, int keySize, int valueSize, int hashSumSize) {
-        Cell<ByteArrayData, ByteArrayData>[] cells = createCells(cellCount, keySize, valueSize, hashSumSize);
+        return createIblt(cellCount, hashFunctionCount, keySize, valueSize, hashSumSize, false);
+    }
+
+    /**
+     * @param offHeap if true, all cells are stored in one {@link OffHeapCellTable} instead of as separate objects.
+     */
+    public IBLT<ByteArrayData, ByteArrayData> createIblt(int cellCount, int hashFunctionCount, int keySize, int valueSize, int hashSumSize, boolean offHeap) {
+        Cell<ByteArrayData, ByteArrayData>[] cells;
+        if (offHeap) {
+            cells = new OffHeapCellTable(cellCount, keySize, valueSize, hashSumSize).createCells();
+        } else {
+            cells = createCells(cellCount, keySize, valueSize, hashSumSize);
+        }
         ByteArraySubtablesHashFunctions<ByteArrayData> hashFunctions = new ByteArraySubtablesHashFunctions<ByteArrayData>(cellCount, hashFunctionCount);
         return new IBLT<ByteArrayData, ByteArrayData>(cells, hashFunctions);
     }
+
+    /**
+     * Same as {@link #createIblt(int, int, int, int, int, boolean)}, but several threads may insert
+     * and delete at the same time.
+     */
+    public ConcurrentIBLT<ByteArrayData, ByteArrayData> createConcurrentIblt(int cellCount, int hashFunctionCount, int keySize, int valueSize, int hashSumSize, boolean offHeap, int stripeCount) {
+        IBLT<ByteArrayData, ByteArrayData> iblt = createIblt(cellCount, hashFunctionCount, keySize, valueSize, hashSumSize, offHeap);
+        ByteArraySubtablesHashFunctions<ByteArrayData> hashFunctions = new ByteArraySubtablesHashFunctions<ByteArrayData>(cellCount, hashFunctionCount);
+        return new ConcurrentIBLT<ByteArrayData, ByteArrayData>(iblt.getCells(), hashFunctions, stripeCount);
+    }
 }
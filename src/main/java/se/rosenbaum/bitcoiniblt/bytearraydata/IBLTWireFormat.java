@@ -0,0 +1,303 @@
+package se.rosenbaum.bitcoiniblt.bytearraydata;
+
+import se.rosenbaum.iblt.Cell;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.data.ByteArrayData;
+import se.rosenbaum.iblt.hash.ByteArraySubtablesHashFunctions;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary format for sending an IBLT to a peer. All numbers are big endian.
+ * <pre>
+ * [1:version] [1:flags] [4:cellCount] [1:hashFunctionCount] [1:keySize] [1:valueSize] [1:hashSumSize] [32:salt]
+ * [ceil(cellCount/8):non-empty cell bitmap]        only if FLAG_SKIP_EMPTY_CELLS
+ * [count] [keySize:keySum] [valueSize:valueSum] [hashSumSize:hashKeySum]   repeated per (non-empty) cell
+ * </pre>
+ * The count is a 4 byte int, or a zigzag encoded varint if FLAG_VARIABLE_LENGTH_COUNTS is set.
+ * <p/>
+ * With no flags set, the cells have the same layout as an {@link OffHeapCellTable}, and
+ * {@link #readIblt(java.nio.ByteBuffer)} returns an IBLT that works directly on the received buffer.
+ * Decoding that IBLT writes to the buffer, so a memory mapped file should be mapped with
+ * MapMode.PRIVATE. Read only buffers are copied.
+ */
+public class IBLTWireFormat {
+    public static final int VERSION = 1;
+    public static final int FLAG_SKIP_EMPTY_CELLS = 1;
+    public static final int FLAG_VARIABLE_LENGTH_COUNTS = 2;
+    private static final int SALT_SIZE = 32;
+    public static final int HEADER_SIZE = 10 + SALT_SIZE;
+
+    private int flags;
+    private int cellCount;
+    private int hashFunctionCount;
+    private int keySize;
+    private int valueSize;
+    private int hashSumSize;
+    private byte[] salt;
+
+    public IBLTWireFormat(int flags, int cellCount, int hashFunctionCount, int keySize, int valueSize, int hashSumSize, byte[] salt) {
+        if ((flags & ~(FLAG_SKIP_EMPTY_CELLS | FLAG_VARIABLE_LENGTH_COUNTS)) != 0) {
+            throw new RuntimeException("Unknown flags " + flags);
+        }
+        if (hashFunctionCount > 255 || keySize > 255 || valueSize > 255 || hashSumSize > 255) {
+            throw new RuntimeException("Hash function count and data sizes must be less than 256");
+        }
+        if (hashFunctionCount < 1 || keySize < 1 || valueSize < 1 || hashSumSize < 1) {
+            throw new RuntimeException("Hash function count and data sizes must be at least 1");
+        }
+        if (cellCount < hashFunctionCount) {
+            throw new RuntimeException("Cell count " + cellCount + " is less than hash function count " + hashFunctionCount);
+        }
+        if ((long) cellCount * OffHeapCellTable.cellSize(keySize, valueSize, hashSumSize) > Integer.MAX_VALUE) {
+            throw new RuntimeException("IBLT of " + cellCount + " cells is too big");
+        }
+        if (salt.length != SALT_SIZE) {
+            throw new RuntimeException("Bad salt length! Must be 32, but was  " + salt.length);
+        }
+        this.flags = flags;
+        this.cellCount = cellCount;
+        this.hashFunctionCount = hashFunctionCount;
+        this.keySize = keySize;
+        this.valueSize = valueSize;
+        this.hashSumSize = hashSumSize;
+        this.salt = salt;
+    }
+
+    /**
+     * Reads the header and leaves buffer positioned at the first cell.
+     */
+    public static IBLTWireFormat readHeader(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new RuntimeException("Truncated IBLT header: " + buffer.remaining() + " bytes");
+        }
+        int version = buffer.get() & 0xff;
+        if (version != VERSION) {
+            throw new RuntimeException("Unsupported IBLT format version " + version);
+        }
+        int flags = buffer.get() & 0xff;
+        int cellCount = buffer.getInt();
+        int hashFunctionCount = buffer.get() & 0xff;
+        int keySize = buffer.get() & 0xff;
+        int valueSize = buffer.get() & 0xff;
+        int hashSumSize = buffer.get() & 0xff;
+        byte[] salt = new byte[SALT_SIZE];
+        buffer.get(salt);
+        return new IBLTWireFormat(flags, cellCount, hashFunctionCount, keySize, valueSize, hashSumSize, salt);
+    }
+
+    public byte[] write(IBLT<ByteArrayData, ByteArrayData> iblt) {
+        Cell<ByteArrayData, ByteArrayData>[] cells = iblt.getCells();
+        if (cells.length != cellCount) {
+            throw new RuntimeException("Expected " + cellCount + " cells, but IBLT has " + cells.length);
+        }
+        for (Cell<ByteArrayData, ByteArrayData> cell : cells) {
+            // The reader finds the cells by these sizes only
+            if (cell.getKeySum().getValue().length != keySize || cell.getValueSum().getValue().length != valueSize
+                    || cell.getHashKeySum().getValue().length != hashSumSize) {
+                throw new RuntimeException("Cell data sizes don't match " + keySize + "/" + valueSize + "/" + hashSumSize);
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(getEncodedSize(cells));
+        buffer.put((byte) VERSION);
+        buffer.put((byte) flags);
+        buffer.putInt(cellCount);
+        buffer.put((byte) hashFunctionCount);
+        buffer.put((byte) keySize);
+        buffer.put((byte) valueSize);
+        buffer.put((byte) hashSumSize);
+        buffer.put(salt);
+
+        if (flags == 0 && cells[0] instanceof OffHeapCell) {
+            ((OffHeapCell) cells[0]).getTable().copyTo(buffer);
+            return buffer.array();
+        }
+        if (isSkipEmptyCells()) {
+            int bitmapStart = buffer.position();
+            buffer.position(bitmapStart + bitmapSize());
+            for (int i = 0; i < cellCount; i++) {
+                if (!cells[i].isEmpty()) {
+                    int bitmapIndex = bitmapStart + i / 8;
+                    buffer.put(bitmapIndex, (byte) (buffer.get(bitmapIndex) | (1 << (i % 8))));
+                    writeCell(buffer, cells[i]);
+                }
+            }
+        } else {
+            for (Cell<ByteArrayData, ByteArrayData> cell : cells) {
+                writeCell(buffer, cell);
+            }
+        }
+        return buffer.array();
+    }
+
+    private void writeCell(ByteBuffer buffer, Cell<ByteArrayData, ByteArrayData> cell) {
+        if (isVariableLengthCounts()) {
+            writeVarInt(buffer, zigzag(cell.getCount()));
+        } else {
+            buffer.putInt(cell.getCount());
+        }
+        buffer.put(cell.getKeySum().getValue());
+        buffer.put(cell.getValueSum().getValue());
+        buffer.put(cell.getHashKeySum().getValue());
+    }
+
+    int getEncodedSize(Cell<ByteArrayData, ByteArrayData>[] cells) {
+        int size = HEADER_SIZE;
+        int dataSize = keySize + valueSize + hashSumSize;
+        if (isSkipEmptyCells()) {
+            size += bitmapSize();
+        }
+        for (Cell<ByteArrayData, ByteArrayData> cell : cells) {
+            if (isSkipEmptyCells() && cell.isEmpty()) {
+                continue;
+            }
+            size += dataSize + (isVariableLengthCounts() ? varIntSize(zigzag(cell.getCount())) : OffHeapCellTable.COUNT_SIZE);
+        }
+        return size;
+    }
+
+    /**
+     * Reads the cells that follow the header, starting at the position of buffer.
+     */
+    public IBLT<ByteArrayData, ByteArrayData> readIblt(ByteBuffer buffer) {
+        OffHeapCellTable table;
+        int cellSize = OffHeapCellTable.cellSize(keySize, valueSize, hashSumSize);
+        if (flags == 0 && buffer.remaining() < cellCount * cellSize) {
+            throw new RuntimeException("Truncated IBLT: " + buffer.remaining() + " bytes for " + cellCount + " cells");
+        }
+        if (flags == 0 && !buffer.isReadOnly()) {
+            table = new OffHeapCellTable(buffer, cellCount, keySize, valueSize, hashSumSize);
+        } else {
+            ByteBuffer cellBuffer = ByteBuffer.allocateDirect(cellCount * cellSize);
+            if (flags == 0) {
+                ByteBuffer source = buffer.slice();
+                source.limit(cellCount * cellSize);
+                cellBuffer.put(source);
+            } else {
+                readCells(buffer.slice(), cellBuffer, cellSize);
+            }
+            cellBuffer.clear();
+            table = new OffHeapCellTable(cellBuffer, cellCount, keySize, valueSize, hashSumSize);
+        }
+        return new IBLT<ByteArrayData, ByteArrayData>(table.createCells(),
+                new ByteArraySubtablesHashFunctions<ByteArrayData>(cellCount, hashFunctionCount));
+    }
+
+    private void readCells(ByteBuffer source, ByteBuffer target, int cellSize) {
+        int bitmapStart = source.position();
+        if (isSkipEmptyCells()) {
+            if (source.remaining() < bitmapSize()) {
+                throw new RuntimeException("Truncated IBLT: " + source.remaining() + " bytes for a bitmap of " + cellCount + " cells");
+            }
+            // The padding bits of the last byte would be cells beyond the end of the table
+            if ((source.get(bitmapStart + bitmapSize() - 1) & 0xff) >> (8 - (bitmapSize() * 8 - cellCount)) != 0) {
+                throw new RuntimeException("Non-empty cell bitmap has bits beyond cell " + cellCount);
+            }
+            source.position(bitmapStart + bitmapSize());
+        }
+        int dataSize = cellSize - OffHeapCellTable.COUNT_SIZE;
+        ByteBuffer data = source.duplicate();
+        for (int i = 0; i < cellCount; i++) {
+            if (isSkipEmptyCells() && (source.get(bitmapStart + i / 8) & (1 << (i % 8))) == 0) {
+                continue; // Target is zeroed, so the cell is already empty
+            }
+            int count = isVariableLengthCounts() ? unzigzag(readVarInt(source)) : readInt(source);
+            if (source.remaining() < dataSize) {
+                throw new RuntimeException("Truncated IBLT: cell " + i + " of " + cellCount + " is incomplete");
+            }
+            target.putInt(i * cellSize, count);
+            data.limit(source.position() + dataSize);
+            data.position(source.position());
+            target.position(i * cellSize + OffHeapCellTable.COUNT_SIZE);
+            target.put(data);
+            source.position(source.position() + dataSize);
+        }
+    }
+
+    private int bitmapSize() {
+        return (cellCount + 7) / 8;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int readInt(ByteBuffer buffer) {
+        if (buffer.remaining() < OffHeapCellTable.COUNT_SIZE) {
+            throw new RuntimeException("Truncated IBLT: incomplete count");
+        }
+        return buffer.getInt();
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new RuntimeException("Truncated IBLT: incomplete count");
+            }
+            byte b = buffer.get();
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new RuntimeException("Malformed varint count");
+    }
+
+    public boolean isSkipEmptyCells() {
+        return (flags & FLAG_SKIP_EMPTY_CELLS) != 0;
+    }
+
+    public boolean isVariableLengthCounts() {
+        return (flags & FLAG_VARIABLE_LENGTH_COUNTS) != 0;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    public int getHashFunctionCount() {
+        return hashFunctionCount;
+    }
+
+    public int getKeySize() {
+        return keySize;
+    }
+
+    public int getValueSize() {
+        return valueSize;
+    }
+
+    public int getHashSumSize() {
+        return hashSumSize;
+    }
+
+    public byte[] getSalt() {
+        return salt;
+    }
+}
@@ -0,0 +1,32 @@
+package se.rosenbaum.bitcoiniblt.bytearraydata;
+
+import se.rosenbaum.iblt.data.ByteArrayData;
+import se.rosenbaum.iblt.hash.HashFunction;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the hash of the last key it hashed. A slice inserted into several IBLTs that share
+ * this hash function is added to hashFunctionCount cells of each of them, but its key is only
+ * hashed once.
+ */
+class LastKeyHashFunction implements HashFunction<ByteArrayData, ByteArrayData> {
+    private HashFunction<ByteArrayData, ByteArrayData> hashFunction;
+    // Key and hash are replaced together, so that several threads may use the same instance
+    private volatile ByteArrayData[] last = null;
+
+    LastKeyHashFunction(HashFunction<ByteArrayData, ByteArrayData> hashFunction) {
+        this.hashFunction = hashFunction;
+    }
+
+    public ByteArrayData hash(ByteArrayData key) {
+        ByteArrayData[] keyAndHash = last;
+        if (keyAndHash != null && Arrays.equals(keyAndHash[0].getValue(), key.getValue())) {
+            return keyAndHash[1];
+        }
+        ByteArrayData hash = hashFunction.hash(key);
+        // The key may be a scratch array that the caller overwrites
+        last = new ByteArrayData[] {new ByteArrayData(key.getValue().clone()), hash};
+        return hash;
+    }
+}
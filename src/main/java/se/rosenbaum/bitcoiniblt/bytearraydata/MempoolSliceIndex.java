@@ -0,0 +1,219 @@
+package se.rosenbaum.bitcoiniblt.bytearraydata;
+
+import org.bitcoinj.core.Transaction;
+import se.rosenbaum.bitcoiniblt.SliceWriter;
+import se.rosenbaum.iblt.data.ByteArrayData;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The slices of the transactions encoded by a {@link ByteArrayDataTransactionCoder}, by the key
+ * of their first slice, as looked up by {@link se.rosenbaum.bitcoiniblt.AbsentTxAddingListEntriesListener}.
+ * <p/>
+ * Only the transactions are kept, in an open addressing table keyed by the key prefix truncated
+ * to a long. Their slices are encoded again when looked up, which only happens for the absent
+ * transactions found while decoding. Iterating the map encodes every transaction.
+ */
+class MempoolSliceIndex extends AbstractMap<ByteArrayData, Map<ByteArrayData, ByteArrayData>> {
+    private static final int MIN_CAPACITY = 16;
+
+    private ByteArrayDataTransactionCoder coder;
+    private long[] keys = new long[MIN_CAPACITY];
+    private Transaction[] transactions = new Transaction[MIN_CAPACITY];
+    private int size = 0;
+
+    MempoolSliceIndex(ByteArrayDataTransactionCoder coder) {
+        this.coder = coder;
+    }
+
+    private static long truncate(byte[] key) {
+        // The last two bytes are the slice index
+        long truncated = 0;
+        for (int i = 0; i < Math.min(8, key.length - 2); i++) {
+            truncated = (truncated << 8) | (key[i] & 0xff);
+        }
+        return truncated;
+    }
+
+    private int homeSlot(long truncated, int capacity) {
+        return (int) ((truncated * 0x9E3779B97F4A7C15L) >>> 32) & (capacity - 1);
+    }
+
+    /**
+     * @return the slot of the transaction whose key has the same prefix as key, or -1 minus the
+     * empty slot where it would be added.
+     */
+    private int find(byte[] key) {
+        long truncated = truncate(key);
+        // Prefixes longer than the long have to be compared in full
+        boolean truncatedIsPrefix = key.length - 2 <= 8;
+        int mask = keys.length - 1;
+        int slot = homeSlot(truncated, keys.length);
+        while (transactions[slot] != null) {
+            if (keys[slot] == truncated && (truncatedIsPrefix || samePrefix(coder.getKeyBytes(transactions[slot]), key))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1 - slot;
+    }
+
+    private static boolean samePrefix(byte[] key, byte[] otherKey) {
+        for (int i = 0; i < key.length - 2; i++) {
+            if (key[i] != otherKey[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param key the key of the first slice of transaction.
+     */
+    void add(Transaction transaction, byte[] key) {
+        int slot = find(key);
+        if (slot >= 0) {
+            transactions[slot] = transaction;
+            return;
+        }
+        if ((size + 1) * 4 > keys.length * 3) {
+            resize(keys.length * 2);
+            slot = find(key);
+        }
+        slot = -1 - slot;
+        keys[slot] = truncate(key);
+        transactions[slot] = transaction;
+        size++;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Transaction[] oldTransactions = transactions;
+        keys = new long[capacity];
+        transactions = new Transaction[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldTransactions[i] == null) {
+                continue;
+            }
+            int slot = homeSlot(oldKeys[i], capacity);
+            while (transactions[slot] != null) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            keys[slot] = oldKeys[i];
+            transactions[slot] = oldTransactions[i];
+        }
+    }
+
+    private Map<ByteArrayData, ByteArrayData> slices(Transaction transaction) {
+        final Map<ByteArrayData, ByteArrayData> slices = new HashMap<ByteArrayData, ByteArrayData>();
+        coder.encodeTransaction(transaction, new SliceWriter<ByteArrayData, ByteArrayData>() {
+            public void writeSlice(ByteArrayData key, ByteArrayData value) {
+                // The coder reuses its arrays for every slice
+                slices.put(new ByteArrayData(key.getValue().clone()), new ByteArrayData(value.getValue().clone()));
+            }
+        });
+        return slices;
+    }
+
+    @Override
+    public Map<ByteArrayData, ByteArrayData> get(Object key) {
+        if (!(key instanceof ByteArrayData)) {
+            return null;
+        }
+        int slot = find(((ByteArrayData) key).getValue());
+        return slot < 0 ? null : slices(transactions[slot]);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof ByteArrayData && find(((ByteArrayData) key).getValue()) >= 0;
+    }
+
+    /**
+     * @return null, the slices are not encoded just to be returned.
+     */
+    @Override
+    public Map<ByteArrayData, ByteArrayData> remove(Object key) {
+        if (!(key instanceof ByteArrayData)) {
+            return null;
+        }
+        int slot = find(((ByteArrayData) key).getValue());
+        if (slot < 0) {
+            return null;
+        }
+        size--;
+        // Shift later entries of the probe sequence back, so that no lookup stops at the hole
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; transactions[next] != null; next = (next + 1) & mask) {
+            if (((next - homeSlot(keys[next], keys.length)) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                transactions[hole] = transactions[next];
+                hole = next;
+            }
+        }
+        keys[hole] = 0;
+        transactions[hole] = null;
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        keys = new long[MIN_CAPACITY];
+        transactions = new Transaction[MIN_CAPACITY];
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<ByteArrayData, Map<ByteArrayData, ByteArrayData>>> entrySet() {
+        return new AbstractSet<Entry<ByteArrayData, Map<ByteArrayData, ByteArrayData>>>() {
+            @Override
+            public Iterator<Entry<ByteArrayData, Map<ByteArrayData, ByteArrayData>>> iterator() {
+                return new Iterator<Entry<ByteArrayData, Map<ByteArrayData, ByteArrayData>>>() {
+                    int slot = nextSlot(0);
+
+                    private int nextSlot(int from) {
+                        while (from < transactions.length && transactions[from] == null) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    public boolean hasNext() {
+                        return slot < transactions.length;
+                    }
+
+                    public Entry<ByteArrayData, Map<ByteArrayData, ByteArrayData>> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Transaction transaction = transactions[slot];
+                        slot = nextSlot(slot + 1);
+                        return new SimpleImmutableEntry<ByteArrayData, Map<ByteArrayData, ByteArrayData>>(
+                                new ByteArrayData(coder.getKeyBytes(transaction)), slices(transaction));
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
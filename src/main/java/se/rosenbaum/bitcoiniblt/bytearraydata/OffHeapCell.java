@@ -0,0 +1,71 @@
+package se.rosenbaum.bitcoiniblt.bytearraydata;
+
+import se.rosenbaum.iblt.Cell;
+import se.rosenbaum.iblt.data.ByteArrayData;
+
+/**
+ * A view of one cell in an {@link OffHeapCellTable}. The sums returned by the getters
+ * are copies, changing them does not change the cell.
+ */
+public class OffHeapCell extends Cell<ByteArrayData, ByteArrayData> {
+    private OffHeapCellTable table;
+    private int index;
+
+    OffHeapCell(OffHeapCellTable table, int index) {
+        // All state lives in the table, the sums of the super class are never used.
+        super(null, null, null, table.getHashFunction(), 0);
+        this.table = table;
+        this.index = index;
+    }
+
+    @Override
+    public void add(ByteArrayData key, ByteArrayData value) {
+        table.add(index, key, value, 1);
+    }
+
+    @Override
+    public void subtract(ByteArrayData key, ByteArrayData value) {
+        table.add(index, key, value, -1);
+    }
+
+    /**
+     * Adds (sign 1) or subtracts (sign -1) all sums and the count of another cell to this cell.
+     */
+    public void add(Cell<ByteArrayData, ByteArrayData> other, int sign) {
+        table.add(index, other, sign);
+    }
+
+    OffHeapCellTable getTable() {
+        return table;
+    }
+
+    @Override
+    public boolean isPure() {
+        return table.isPure(index);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return table.isEmpty(index);
+    }
+
+    @Override
+    public ByteArrayData getKeySum() {
+        return new ByteArrayData(table.getKeySum(index));
+    }
+
+    @Override
+    public ByteArrayData getValueSum() {
+        return new ByteArrayData(table.getValueSum(index));
+    }
+
+    @Override
+    public ByteArrayData getHashKeySum() {
+        return new ByteArrayData(table.getHashKeySum(index));
+    }
+
+    @Override
+    public int getCount() {
+        return table.getCount(index);
+    }
+}
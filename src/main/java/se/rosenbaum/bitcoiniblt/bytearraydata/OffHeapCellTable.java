@@ -0,0 +1,214 @@
+package se.rosenbaum.bitcoiniblt.bytearraydata;
+
+import se.rosenbaum.iblt.Cell;
+import se.rosenbaum.iblt.data.ByteArrayData;
+import se.rosenbaum.iblt.hash.ByteArrayDataHashFunction;
+import se.rosenbaum.iblt.hash.HashFunction;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stores count, keySum, valueSum and hashKeySum of all cells of an IBLT in a single direct
+ * ByteBuffer, outside of the java heap:
+ * <pre>
+ * [4-byte:count] [keySize:keySum] [valueSize:valueSum] [hashSumSize:hashKeySum]
+ * </pre>
+ * repeated once per cell. The cells returned by {@link #createCells()} are thin views into
+ * the buffer, so an IBLT built from them behaves exactly like one built from ordinary cells,
+ * but a big table is one allocation instead of several objects per cell.
+ */
+public class OffHeapCellTable {
+    static final int COUNT_SIZE = 4;
+    private ByteBuffer buffer;
+    private int cellCount;
+    private int keySize;
+    private int valueSize;
+    private int hashSumSize;
+    private int cellSize;
+    private HashFunction<ByteArrayData, ByteArrayData> hashFunction;
+    // Scratch state for reading cells. Cells may be added to from several threads, see
+    // ConcurrentIBLT, but only read from one.
+    private ByteBuffer reader;
+    private ByteArrayData keySum;
+
+    public OffHeapCellTable(int cellCount, int keySize, int valueSize, int hashSumSize) {
+        // Direct buffers are zeroed on allocation, so all cells start out empty
+        this(ByteBuffer.allocateDirect(cellCount * cellSize(keySize, valueSize, hashSumSize)),
+                cellCount, keySize, valueSize, hashSumSize);
+    }
+
+    /**
+     * Uses buffer, from its position, as the cell storage without copying it. Changes to the cells
+     * are written to the buffer.
+     */
+    OffHeapCellTable(ByteBuffer buffer, int cellCount, int keySize, int valueSize, int hashSumSize) {
+        this.cellCount = cellCount;
+        this.keySize = keySize;
+        this.valueSize = valueSize;
+        this.hashSumSize = hashSumSize;
+        this.cellSize = cellSize(keySize, valueSize, hashSumSize);
+        this.hashFunction = new ByteArrayDataHashFunction(hashSumSize);
+        if (buffer.remaining() < cellCount * cellSize) {
+            throw new RuntimeException("Buffer too small for " + cellCount + " cells: " + buffer.remaining() + " bytes");
+        }
+        ByteBuffer slice = buffer.slice();
+        slice.limit(cellCount * cellSize);
+        this.buffer = slice;
+        this.reader = slice.duplicate();
+        this.keySum = new ByteArrayData(keySize);
+    }
+
+    static int cellSize(int keySize, int valueSize, int hashSumSize) {
+        return COUNT_SIZE + keySize + valueSize + hashSumSize;
+    }
+
+    /**
+     * Bulk copies all cells, in the layout described above, to target.
+     */
+    void copyTo(ByteBuffer target) {
+        ByteBuffer source = buffer.duplicate();
+        // Not clear(), the table may be a slice of a bigger buffer, like a received message
+        source.position(0);
+        source.limit(cellCount * cellSize);
+        target.put(source);
+    }
+
+    public Cell<ByteArrayData, ByteArrayData>[] createCells() {
+        Cell[] cells = new Cell[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            cells[i] = new OffHeapCell(this, i);
+        }
+        return cells;
+    }
+
+    HashFunction<ByteArrayData, ByteArrayData> getHashFunction() {
+        return hashFunction;
+    }
+
+    void add(int index, ByteArrayData key, ByteArrayData value, int sign) {
+        int offset = index * cellSize;
+        buffer.putInt(offset, buffer.getInt(offset) + sign);
+        offset += COUNT_SIZE;
+        xor(offset, key.getValue());
+        offset += keySize;
+        xor(offset, value.getValue());
+        offset += valueSize;
+        xor(offset, hashFunction.hash(key).getValue());
+    }
+
+    void add(int index, Cell<ByteArrayData, ByteArrayData> other, int sign) {
+        int offset = index * cellSize;
+        buffer.putInt(offset, buffer.getInt(offset) + sign * other.getCount());
+        offset += COUNT_SIZE;
+        xor(offset, other.getKeySum().getValue());
+        offset += keySize;
+        xor(offset, other.getValueSum().getValue());
+        offset += valueSize;
+        xor(offset, other.getHashKeySum().getValue());
+    }
+
+    /**
+     * Adds (sign 1) or subtracts (sign -1) a cell read from source, in the layout described above,
+     * and leaves source positioned after it.
+     */
+    void add(int index, ByteBuffer source, int sign) {
+        int offset = index * cellSize;
+        buffer.putInt(offset, buffer.getInt(offset) + sign * source.getInt());
+        int i = offset + COUNT_SIZE;
+        int end = offset + cellSize;
+        for (; i + 8 <= end; i += 8) {
+            buffer.putLong(i, buffer.getLong(i) ^ source.getLong());
+        }
+        for (; i < end; i++) {
+            buffer.put(i, (byte) (buffer.get(i) ^ source.get()));
+        }
+    }
+
+    int getCellSize() {
+        return cellSize;
+    }
+
+    int getCount(int index) {
+        return buffer.getInt(index * cellSize);
+    }
+
+    byte[] getKeySum(int index) {
+        return read(index * cellSize + COUNT_SIZE, keySize);
+    }
+
+    byte[] getValueSum(int index) {
+        return read(index * cellSize + COUNT_SIZE + keySize, valueSize);
+    }
+
+    byte[] getHashKeySum(int index) {
+        return read(index * cellSize + COUNT_SIZE + keySize + valueSize, hashSumSize);
+    }
+
+    /**
+     * Called for every visited cell while peeling, so the key sum is read into a scratch array
+     * and the key hash compared in place.
+     */
+    boolean isPure(int index) {
+        int count = getCount(index);
+        if (count != 1 && count != -1) {
+            return false;
+        }
+        int offset = index * cellSize + COUNT_SIZE;
+        reader.position(offset);
+        reader.get(keySum.getValue());
+        byte[] keyHash = hashFunction.hash(keySum).getValue();
+        offset += keySize + valueSize;
+        for (int i = 0; i < hashSumSize; i++) {
+            if (buffer.get(offset + i) != keyHash[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isEmpty(int index) {
+        int offset = index * cellSize;
+        if (buffer.getInt(offset) != 0) {
+            return false;
+        }
+        int i = offset + COUNT_SIZE;
+        int end = offset + cellSize;
+        for (; i + 8 <= end; i += 8) {
+            if (buffer.getLong(i) != 0) {
+                return false;
+            }
+        }
+        for (; i < end; i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Only absolute gets and puts, so that different cells can be added to from different threads
+    private void xor(int offset, byte[] data) {
+        int i = 0;
+        for (; i + 8 <= data.length; i += 8) {
+            buffer.putLong(offset + i, buffer.getLong(offset + i) ^ readLong(data, i));
+        }
+        for (; i < data.length; i++) {
+            buffer.put(offset + i, (byte) (buffer.get(offset + i) ^ data[i]));
+        }
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long result = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            result = (result << 8) | (bytes[i] & 0xff);
+        }
+        return result;
+    }
+
+    private byte[] read(int offset, int length) {
+        byte[] result = new byte[length];
+        reader.position(offset);
+        reader.get(result);
+        return result;
+    }
+}
@@ -0,0 +1,179 @@
+package se.rosenbaum.bitcoiniblt.bytearraydata;
+
+import se.rosenbaum.bitcoiniblt.AbsentTxAddingListEntriesListener;
+import se.rosenbaum.bitcoiniblt.IBLTTransactionMap;
+import se.rosenbaum.bitcoiniblt.MempoolIBLT;
+import se.rosenbaum.bitcoiniblt.ResidualTransactions;
+import se.rosenbaum.bitcoiniblt.TransactionCoder;
+import se.rosenbaum.iblt.Cell;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.data.ByteArrayData;
+import se.rosenbaum.iblt.hash.ByteArraySubtablesHashFunctions;
+import se.rosenbaum.iblt.hash.HashFunctions;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes an IBLT while its cells are still arriving from a peer. The cells must arrive in
+ * index order, which is subtable order for {@link ByteArraySubtablesHashFunctions}, in the
+ * uncompressed {@link IBLTWireFormat} layout.
+ * <p/>
+ * The mempool contribution is subtracted from each cell as it arrives, and cells that turn
+ * pure are peeled right away. Entries peeled this way may change cells that have not arrived
+ * yet, which is fine since cells are sums. When the last cell has arrived, only what could not
+ * be peeled along the way remains for {@link #finish()}.
+ * <p/>
+ * The mempool must not change during decoding.
+ */
+public class StreamingIBLTDecoder {
+    private IBLTWireFormat format;
+    private TransactionCoder<ByteArrayData, ByteArrayData> transactionCoder;
+    private Cell<ByteArrayData, ByteArrayData>[] mempoolCells;
+    private OffHeapCellTable table;
+    private IBLT<ByteArrayData, ByteArrayData> iblt;
+    private HashFunctions<ByteArrayData, ByteArrayData> hashFunctions;
+    private AbsentTxAddingListEntriesListener<ByteArrayData> listener;
+    private ByteBuffer partialCell;
+    private int receivedCellCount = 0;
+    private int[] pureCells;
+    private int pureCellCount = 0;
+    private Map<ByteArrayData, ByteArrayData> extraEntries = new HashMap<ByteArrayData, ByteArrayData>();
+    private Map<ByteArrayData, ByteArrayData> absentEntries = new HashMap<ByteArrayData, ByteArrayData>();
+
+    public StreamingIBLTDecoder(IBLTWireFormat format, MempoolIBLT<ByteArrayData, ByteArrayData> mempool) {
+        if (format.getFlags() != 0) {
+            throw new RuntimeException("Streaming decode needs uncompressed cells, but flags were " + format.getFlags());
+        }
+        this.format = format;
+        this.transactionCoder = mempool.getTransactionCoder();
+        this.mempoolCells = mempool.getIBLT().getCells();
+        if (mempoolCells.length != format.getCellCount()) {
+            throw new RuntimeException("Mempool IBLT has " + mempoolCells.length + " cells, expected " + format.getCellCount());
+        }
+        this.table = new OffHeapCellTable(format.getCellCount(), format.getKeySize(), format.getValueSize(), format.getHashSumSize());
+        this.hashFunctions = new ByteArraySubtablesHashFunctions<ByteArrayData>(format.getCellCount(), format.getHashFunctionCount());
+        this.iblt = new IBLT<ByteArrayData, ByteArrayData>(table.createCells(), hashFunctions);
+        Map<ByteArrayData, Map<ByteArrayData, ByteArrayData>> encodedTransactions = transactionCoder.getEncodedTransactions();
+        if (encodedTransactions != null) {
+            listener = new AbsentTxAddingListEntriesListener<ByteArrayData>(iblt, encodedTransactions);
+        }
+        this.partialCell = ByteBuffer.allocate(table.getCellSize());
+        this.pureCells = new int[Math.max(16, format.getCellCount())];
+    }
+
+    /**
+     * Takes the next chunk of cell bytes, which may end in the middle of a cell, and peels
+     * whatever became pure.
+     */
+    public void receive(ByteBuffer chunk) {
+        while (chunk.hasRemaining() && receivedCellCount < format.getCellCount()) {
+            if (partialCell.position() > 0 || chunk.remaining() < partialCell.capacity()) {
+                int length = Math.min(partialCell.remaining(), chunk.remaining());
+                ByteBuffer part = chunk.duplicate();
+                part.limit(part.position() + length);
+                partialCell.put(part);
+                chunk.position(chunk.position() + length);
+                if (partialCell.hasRemaining()) {
+                    break;
+                }
+                partialCell.flip();
+                receiveCell(partialCell);
+                partialCell.clear();
+            } else {
+                receiveCell(chunk);
+            }
+        }
+        if (chunk.hasRemaining()) {
+            throw new RuntimeException("Received more than " + format.getCellCount() + " cells");
+        }
+        peel();
+    }
+
+    private void receiveCell(ByteBuffer source) {
+        int index = receivedCellCount++;
+        table.add(index, source, 1);
+        if (!mempoolCells[index].isEmpty()) {
+            table.add(index, mempoolCells[index], -1);
+        }
+        pushIfPure(index);
+    }
+
+    private void pushIfPure(int index) {
+        if (!table.isPure(index)) {
+            return;
+        }
+        if (pureCellCount == pureCells.length) {
+            int[] newPureCells = new int[pureCells.length * 2];
+            System.arraycopy(pureCells, 0, newPureCells, 0, pureCellCount);
+            pureCells = newPureCells;
+        }
+        pureCells[pureCellCount++] = index;
+    }
+
+    private void peel() {
+        while (pureCellCount > 0) {
+            int index = pureCells[--pureCellCount];
+            if (!table.isPure(index)) {
+                continue; // Already peeled through another cell
+            }
+            ByteArrayData key = new ByteArrayData(table.getKeySum(index));
+            ByteArrayData value = new ByteArrayData(table.getValueSum(index));
+            if (table.getCount(index) == 1) {
+                extraEntries.put(key, value);
+                iblt.delete(key, value);
+            } else {
+                absentEntries.put(key, value);
+                iblt.insert(key, value);
+                if (listener != null) {
+                    listener.absentKeyDetected(key, value);
+                }
+            }
+            for (int touched : hashFunctions.hashes(key)) {
+                // Cells that have not arrived yet are checked when they do
+                if (touched < receivedCellCount) {
+                    pushIfPure(touched);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the residual transactions, or null if the IBLT could not be decoded.
+     */
+    public ResidualTransactions finish() {
+        if (receivedCellCount < format.getCellCount()) {
+            throw new RuntimeException("Received " + receivedCellCount + " of " + format.getCellCount() + " cells");
+        }
+        // The listener inserts slices of absent transactions without telling us which
+        // cells it touched, so sweep the whole table until nothing is pure any more.
+        do {
+            for (int i = 0; i < receivedCellCount; i++) {
+                pushIfPure(i);
+            }
+            if (pureCellCount == 0) {
+                break;
+            }
+            peel();
+        } while (true);
+        for (int i = 0; i < receivedCellCount; i++) {
+            if (!table.isEmpty(i)) {
+                return null;
+            }
+        }
+        return IBLTTransactionMap.decodeResidualEntries(transactionCoder, extraEntries,
+                listener == null ? absentEntries : listener.getAbsentEntries());
+    }
+
+    public int getReceivedCellCount() {
+        return receivedCellCount;
+    }
+
+    /**
+     * @return the number of entries peeled so far.
+     */
+    public int getPeeledEntryCount() {
+        return extraEntries.size() + absentEntries.size();
+    }
+}
@@ -0,0 +1,31 @@
+package se.rosenbaum.bitcoiniblt.longdata;
+
+/**
+ * Big endian conversion between longs and byte arrays, without going through a ByteBuffer.
+ */
+final class BigEndian {
+    private BigEndian() {
+    }
+
+    /**
+     * Reads 8 bytes starting at offset. Bytes beyond the end of the array are read as 0.
+     */
+    static long readLong(byte[] bytes, int offset) {
+        long result = 0;
+        int end = Math.min(offset + 8, bytes.length);
+        for (int i = offset; i < end; i++) {
+            result = (result << 8) | (bytes[i] & 0xff);
+        }
+        return result << ((offset + 8 - end) * 8);
+    }
+
+    /**
+     * Writes value to the 8 bytes starting at offset. Bytes that don't fit in the array are skipped.
+     */
+    static void writeLong(long value, byte[] bytes, int offset) {
+        int end = Math.min(offset + 8, bytes.length);
+        for (int i = offset; i < end; i++) {
+            bytes[i] = (byte) (value >>> ((7 - (i - offset)) * 8));
+        }
+    }
+}
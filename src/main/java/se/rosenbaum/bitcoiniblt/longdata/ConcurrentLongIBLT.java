@@ -0,0 +1,87 @@
+package se.rosenbaum.bitcoiniblt.longdata;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link LongIBLT} that any number of threads can insert into and delete from at the same
+ * time, without locking. Count, key sum, value sum and key hash sum of each cell are four
+ * longs in one AtomicLongArray, and each of them is updated atomically on its own.
+ * <p/>
+ * Adding and xoring commute, so once all threads are done the cells are the same as if
+ * everything was inserted and deleted by one thread. A cell read while other threads are
+ * still updating it may not be consistent though, which is why the entries are listed from
+ * the LongIBLT returned by {@link #toLongIBLT()}, after all updates have completed.
+ */
+public class ConcurrentLongIBLT implements MutableLongIBLT {
+    private static final int COUNT = 0;
+    private static final int KEY_SUM = 1;
+    private static final int VALUE_SUM = 2;
+    private static final int HASH_KEY_SUM = 3;
+    private static final int CELL_SIZE = 4;
+
+    private int cellCount;
+    private int hashFunctionCount;
+    private int subtableSize;
+    private AtomicLongArray cells;
+
+    public ConcurrentLongIBLT(int cellCount, int hashFunctionCount) {
+        if (cellCount < hashFunctionCount) {
+            throw new RuntimeException("Cell count " + cellCount + " is less than hash function count " + hashFunctionCount);
+        }
+        this.cellCount = cellCount;
+        this.hashFunctionCount = hashFunctionCount;
+        this.subtableSize = cellCount / hashFunctionCount;
+        this.cells = new AtomicLongArray(cellCount * CELL_SIZE);
+    }
+
+    public void insert(long key, long value) {
+        update(key, value, 1);
+    }
+
+    public void delete(long key, long value) {
+        update(key, value, -1);
+    }
+
+    private void update(long key, long value, int count) {
+        long hashKey = LongIBLT.hashKey(key);
+        for (int i = 0; i < hashFunctionCount; i++) {
+            int offset = LongIBLT.cellIndex(key, i, subtableSize) * CELL_SIZE;
+            cells.getAndAdd(offset + COUNT, count);
+            xor(offset + KEY_SUM, key);
+            xor(offset + VALUE_SUM, value);
+            xor(offset + HASH_KEY_SUM, hashKey);
+        }
+    }
+
+    private void xor(int index, long value) {
+        if (value == 0) {
+            return;
+        }
+        long current;
+        do {
+            current = cells.get(index);
+        } while (!cells.compareAndSet(index, current, current ^ value));
+    }
+
+    /**
+     * @return a LongIBLT with the same cells, to list entries from or combine with other
+     * LongIBLTs. Must not be called before all inserts and deletes have completed.
+     */
+    public LongIBLT toLongIBLT() {
+        LongIBLT result = new LongIBLT(cellCount, hashFunctionCount);
+        for (int i = 0; i < cellCount; i++) {
+            int offset = i * CELL_SIZE;
+            result.addCell(i, (int) cells.get(offset + COUNT), cells.get(offset + KEY_SUM),
+                    cells.get(offset + VALUE_SUM), cells.get(offset + HASH_KEY_SUM));
+        }
+        return result;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    public int getHashFunctionCount() {
+        return hashFunctionCount;
+    }
+}
@@ -21,7 +21,14 @@ public class IBLTUtils {
     }
     
     public static IBLT<LongData, LongData> createIblt(int cellCount, int hashFunctionCount) {
-        Cell<LongData, LongData>[] cells = createCells(cellCount);
+        return createIblt(cellCount, hashFunctionCount, false);
+    }
+
+    /**
+     * @param flat if true, all cells are stored in one {@link LongArrayCellTable} instead of as separate objects.
+     */
+    public static IBLT<LongData, LongData> createIblt(int cellCount, int hashFunctionCount, boolean flat) {
+        Cell<LongData, LongData>[] cells = flat ? new LongArrayCellTable(cellCount).createCells() : createCells(cellCount);
         LongDataSubtablesHashFunctions hashFunctions = new LongDataSubtablesHashFunctions(cellCount, hashFunctionCount);
         return new IBLT<LongData, LongData>(cells, hashFunctions);
     }
@@ -0,0 +1,67 @@
+package se.rosenbaum.bitcoiniblt.longdata;
+
+import se.rosenbaum.iblt.Cell;
+import se.rosenbaum.iblt.data.LongData;
+
+/**
+ * A view of one cell in a {@link LongArrayCellTable}.
+ */
+public class LongArrayCell extends Cell<LongData, LongData> {
+    private LongArrayCellTable table;
+    private int index;
+
+    LongArrayCell(LongArrayCellTable table, int index) {
+        // All state lives in the table, the sums of the super class are never used.
+        super(null, null, null, table.getHashFunction(), 0);
+        this.table = table;
+        this.index = index;
+    }
+
+    @Override
+    public void add(LongData key, LongData value) {
+        table.add(index, key, value, 1);
+    }
+
+    @Override
+    public void subtract(LongData key, LongData value) {
+        table.add(index, key, value, -1);
+    }
+
+    /**
+     * Adds (sign 1) or subtracts (sign -1) all sums and the count of another cell to this cell.
+     */
+    public void add(Cell<LongData, LongData> other, int sign) {
+        table.add(index, other.getKeySum().getValue(), other.getValueSum().getValue(),
+                other.getHashKeySum().getValue(), sign * other.getCount());
+    }
+
+    @Override
+    public boolean isPure() {
+        return table.isPure(index);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return table.isEmpty(index);
+    }
+
+    @Override
+    public LongData getKeySum() {
+        return new LongData(table.getKeySum(index));
+    }
+
+    @Override
+    public LongData getValueSum() {
+        return new LongData(table.getValueSum(index));
+    }
+
+    @Override
+    public LongData getHashKeySum() {
+        return new LongData(table.getHashKeySum(index));
+    }
+
+    @Override
+    public int getCount() {
+        return table.getCount(index);
+    }
+}
@@ -0,0 +1,78 @@
+package se.rosenbaum.bitcoiniblt.longdata;
+
+import se.rosenbaum.iblt.Cell;
+import se.rosenbaum.iblt.data.LongData;
+import se.rosenbaum.iblt.hash.LongDataHashFunction;
+
+/**
+ * Stores count, keySum, valueSum and hashKeySum of all cells of an IBLT in a single long[],
+ * four longs per cell. The cells returned by {@link #createCells()} are thin views into
+ * the array.
+ */
+public class LongArrayCellTable {
+    private static final int COUNT = 0;
+    private static final int KEY_SUM = 1;
+    private static final int VALUE_SUM = 2;
+    private static final int HASH_KEY_SUM = 3;
+    private static final int CELL_SIZE = 4;
+
+    private long[] cells;
+    private int cellCount;
+    private LongDataHashFunction hashFunction = new LongDataHashFunction();
+
+    public LongArrayCellTable(int cellCount) {
+        this.cellCount = cellCount;
+        this.cells = new long[cellCount * CELL_SIZE];
+    }
+
+    public Cell<LongData, LongData>[] createCells() {
+        Cell[] result = new Cell[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            result[i] = new LongArrayCell(this, i);
+        }
+        return result;
+    }
+
+    LongDataHashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    void add(int index, long key, long value, long hashKey, int count) {
+        int offset = index * CELL_SIZE;
+        cells[offset + COUNT] += count;
+        cells[offset + KEY_SUM] ^= key;
+        cells[offset + VALUE_SUM] ^= value;
+        cells[offset + HASH_KEY_SUM] ^= hashKey;
+    }
+
+    void add(int index, LongData key, LongData value, int sign) {
+        add(index, key.getValue(), value.getValue(), hashFunction.hash(key).getValue(), sign);
+    }
+
+    int getCount(int index) {
+        return (int) cells[index * CELL_SIZE + COUNT];
+    }
+
+    long getKeySum(int index) {
+        return cells[index * CELL_SIZE + KEY_SUM];
+    }
+
+    long getValueSum(int index) {
+        return cells[index * CELL_SIZE + VALUE_SUM];
+    }
+
+    long getHashKeySum(int index) {
+        return cells[index * CELL_SIZE + HASH_KEY_SUM];
+    }
+
+    boolean isPure(int index) {
+        int count = getCount(index);
+        return (count == 1 || count == -1) && hashFunction.hash(new LongData(getKeySum(index))).getValue() == getHashKeySum(index);
+    }
+
+    boolean isEmpty(int index) {
+        int offset = index * CELL_SIZE;
+        return cells[offset + COUNT] == 0 && cells[offset + KEY_SUM] == 0 && cells[offset + VALUE_SUM] == 0
+                && cells[offset + HASH_KEY_SUM] == 0;
+    }
+}
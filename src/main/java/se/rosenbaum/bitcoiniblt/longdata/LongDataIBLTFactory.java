@@ -0,0 +1,60 @@
+package se.rosenbaum.bitcoiniblt.longdata;
+
+import se.rosenbaum.bitcoiniblt.IBLTFactory;
+import se.rosenbaum.iblt.Cell;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.data.LongData;
+import se.rosenbaum.iblt.hash.LongDataHashFunction;
+
+public class LongDataIBLTFactory implements IBLTFactory<LongData, LongData> {
+    private int cellCount;
+    private int hashFunctionCount;
+    private boolean flat;
+    private LongDataHashFunction hashFunction = new LongDataHashFunction();
+
+    public LongDataIBLTFactory(int cellCount, int hashFunctionCount) {
+        this(cellCount, hashFunctionCount, false);
+    }
+
+    public LongDataIBLTFactory(int cellCount, int hashFunctionCount, boolean flat) {
+        this.cellCount = cellCount;
+        this.hashFunctionCount = hashFunctionCount;
+        this.flat = flat;
+    }
+
+    public IBLT<LongData, LongData> createIblt() {
+        return IBLTUtils.createIblt(cellCount, hashFunctionCount, flat);
+    }
+
+    public void add(IBLT<LongData, LongData> target, IBLT<LongData, LongData> source) {
+        combine(target, source, 1);
+    }
+
+    public void subtract(IBLT<LongData, LongData> target, IBLT<LongData, LongData> source) {
+        combine(target, source, -1);
+    }
+
+    private void combine(IBLT<LongData, LongData> target, IBLT<LongData, LongData> source, int sign) {
+        Cell<LongData, LongData>[] targetCells = target.getCells();
+        Cell<LongData, LongData>[] sourceCells = source.getCells();
+        if (targetCells.length != sourceCells.length) {
+            throw new RuntimeException("Cell count mismatch: " + targetCells.length + " != " + sourceCells.length);
+        }
+        for (int i = 0; i < targetCells.length; i++) {
+            Cell<LongData, LongData> sourceCell = sourceCells[i];
+            if (sourceCell.isEmpty()) {
+                continue;
+            }
+            Cell<LongData, LongData> targetCell = targetCells[i];
+            if (targetCell instanceof LongArrayCell) {
+                ((LongArrayCell) targetCell).add(sourceCell, sign);
+                continue;
+            }
+            targetCells[i] = new Cell<LongData, LongData>(
+                    new LongData(targetCell.getKeySum().getValue() ^ sourceCell.getKeySum().getValue()),
+                    new LongData(targetCell.getValueSum().getValue() ^ sourceCell.getValueSum().getValue()),
+                    new LongData(targetCell.getHashKeySum().getValue() ^ sourceCell.getHashKeySum().getValue()),
+                    hashFunction, targetCell.getCount() + sign * sourceCell.getCount());
+        }
+    }
+}
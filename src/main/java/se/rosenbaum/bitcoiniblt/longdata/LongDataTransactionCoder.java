@@ -1,66 +1,66 @@
 package se.rosenbaum.bitcoiniblt.longdata;
 
 import org.bitcoinj.core.NetworkParameters;
-import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
+import se.rosenbaum.bitcoiniblt.KeyDerivationCache;
 import se.rosenbaum.bitcoiniblt.TransactionCoder;
 import se.rosenbaum.iblt.data.LongData;
 
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class LongDataTransactionCoder implements TransactionCoder<LongData, LongData> {
+    static final long KEY_PREFIX_MASK = 0xFFFFFFFFFFFF0000L;
+
     NetworkParameters params;
     byte[] salt;
+    private KeyDerivationCache keyDerivationCache;
 
     public LongDataTransactionCoder(NetworkParameters params, byte[] salt) {
+        this(params, salt, null);
+    }
+
+    /**
+     * @param keyDerivationCache remembers derived keys, may be shared with other coders. May be null.
+     */
+    public LongDataTransactionCoder(NetworkParameters params, byte[] salt, KeyDerivationCache keyDerivationCache) {
         if (salt.length != 256/8) {
             throw new RuntimeException("Bad salt length! Must be 32, but was  " + salt.length);
         }
 
         this.params = params;
         this.salt = salt;
+        this.keyDerivationCache = keyDerivationCache;
     }
 
     public Map<LongData, LongData> encodeTransaction(Transaction transaction) {
         Map<LongData, LongData> map = new HashMap<LongData, LongData>();
-        byte[] transactionId = transaction.getHash().getBytes();
-        byte[] key = Arrays.copyOf(transactionId, transactionId.length + salt.length);
-        System.arraycopy(salt, 0, key, transactionId.length, salt.length);
-        key = Sha256Hash.create(key).getBytes();
-
-        byte[] keyBytes = Arrays.copyOfRange(key, 0, 8); // 64 first bits (the last to bytes will be overwritten by counter
+        long keyPrefix = getKeyPrefix(transaction, salt, keyDerivationCache);
         char keyCounter = 0; // char is a 16 bit unsigned integer
 
         byte[] bytes = transaction.bitcoinSerialize();
         for (int i = 0; i < bytes.length; i += 8) {
-            byte[] keyCounterBytes = ByteBuffer.allocate(2).putChar(keyCounter++).array();
-            keyBytes[6] = keyCounterBytes[0];
-            keyBytes[7] = keyCounterBytes[1];
-
-            LongData keyData = new LongData(ByteBuffer.wrap(keyBytes).getLong());
-            LongData valueData = new LongData(ByteBuffer.wrap(Arrays.copyOfRange(bytes, i, i+8)).getLong());
-            map.put(keyData, valueData);
+            map.put(new LongData(keyPrefix | keyCounter++), new LongData(BigEndian.readLong(bytes, i)));
         }
         return map;
     }
 
+    /**
+     * The 48 first bits of SHA256(txid || salt). The last 16 bits of every key are used for the slice counter.
+     */
+    static long getKeyPrefix(Transaction transaction, byte[] salt, KeyDerivationCache keyDerivationCache) {
+        byte[] key = KeyDerivationCache.getKey(keyDerivationCache, transaction.getHash(), salt, 6);
+        return BigEndian.readLong(key, 0) & KEY_PREFIX_MASK;
+    }
+
     public Transaction decodeTransaction(Map<LongData, LongData> map) {
         byte[] txBytes = new byte[map.size() * 8];
 
         for (Map.Entry<LongData, LongData> entry : map.entrySet()) {
-            long key = entry.getKey().getValue();
-            byte[] keyBytes = ByteBuffer.allocate(8).putLong(key).array();
-            char keyCounter = ByteBuffer.wrap(keyBytes, 6, 2).getChar();
-
-            long value = entry.getValue().getValue();
-            byte[] valueBytes = ByteBuffer.allocate(8).putLong(value).array();
-
-            System.arraycopy(valueBytes, 0, txBytes, keyCounter * 8, 8);
+            char keyCounter = (char) entry.getKey().getValue();
+            BigEndian.writeLong(entry.getValue().getValue(), txBytes, keyCounter * 8);
         }
 
         return new Transaction(params, txBytes);
@@ -70,15 +70,8 @@ public class LongDataTransactionCoder implements TransactionCoder<LongData, Long
         Map<Long, byte[]> transactionGroups = new HashMap<Long, byte[]>();
         for (Map.Entry<LongData, LongData> entry : entries.entrySet()) {
             long key = entry.getKey().getValue();
-            byte[] keyBytes = ByteBuffer.allocate(8).putLong(key).array();
-            char keyCounter = ByteBuffer.wrap(keyBytes, 6, 2).getChar();
-            keyBytes[6] = 0;
-            keyBytes[7] = 0;
-
-            long keyKey = ByteBuffer.wrap(keyBytes).getLong();
-
-            long value = entry.getValue().getValue();
-            byte[] valueBytes = ByteBuffer.allocate(8).putLong(value).array();
+            char keyCounter = (char) key;
+            long keyKey = key & KEY_PREFIX_MASK;
 
             byte[] txBytes = transactionGroups.get(keyKey);
             if (txBytes == null) {
@@ -91,7 +84,7 @@ public class LongDataTransactionCoder implements TransactionCoder<LongData, Long
                 txBytes = newTxBytes;
             }
 
-            System.arraycopy(valueBytes, 0, txBytes, keyCounter * 8, 8);
+            BigEndian.writeLong(entry.getValue().getValue(), txBytes, keyCounter * 8);
         }
         List<Transaction> result = new ArrayList<Transaction>(transactionGroups.size());
         for (byte[] txBytes : transactionGroups.values()) {
@@ -108,4 +101,8 @@ public class LongDataTransactionCoder implements TransactionCoder<LongData, Long
     public boolean isEncoded(Transaction transaction) {
         return false;
     }
+
+    public void removeEncoded(Transaction transaction) {
+        // Unsupported, nothing is remembered
+    }
 }
@@ -0,0 +1,92 @@
+package se.rosenbaum.bitcoiniblt.longdata;
+
+/**
+ * A growable list of key/value pairs stored in two parallel long arrays.
+ */
+public class LongEntries {
+    private long[] keys;
+    private long[] values;
+    private int size = 0;
+
+    public LongEntries() {
+        this(16);
+    }
+
+    public LongEntries(int initialCapacity) {
+        keys = new long[Math.max(initialCapacity, 1)];
+        values = new long[keys.length];
+    }
+
+    public void add(long key, long value) {
+        if (size == keys.length) {
+            long[] newKeys = new long[size * 2];
+            long[] newValues = new long[size * 2];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(values, 0, newValues, 0, size);
+            keys = newKeys;
+            values = newValues;
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getKey(int index) {
+        return keys[index];
+    }
+
+    public long getValue(int index) {
+        return values[index];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Sorts the entries on key, in unsigned order, keeping each value with its key.
+     */
+    public void sortByKey() {
+        sort(0, size - 1);
+    }
+
+    private void sort(int low, int high) {
+        while (low < high) {
+            long pivot = keys[(low + high) >>> 1] ^ Long.MIN_VALUE;
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while ((keys[i] ^ Long.MIN_VALUE) < pivot) {
+                    i++;
+                }
+                while ((keys[j] ^ Long.MIN_VALUE) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // Recurse into the smaller half and loop on the larger one to keep the stack shallow
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
@@ -0,0 +1,170 @@
+package se.rosenbaum.bitcoiniblt.longdata;
+
+/**
+ * An IBLT with 8 byte keys and values that works on primitive longs only. Counts, key sums,
+ * value sums and key hash sums live in four parallel arrays, and nothing is allocated
+ * when inserting or deleting. Listing entries reuses a work list that is allocated on the
+ * first call and only grows if it is too small.
+ * <p/>
+ * The cells are split into hashFunctionCount subtables, and each hash function selects a
+ * cell in its own subtable, like LongDataSubtablesHashFunctions does. The hash functions
+ * are not the same though, so a LongIBLT can only be combined with other LongIBLTs.
+ */
+public class LongIBLT implements MutableLongIBLT {
+    private static final long KEY_HASH_SEED = 0x5851F42D4C957F2DL;
+
+    private int cellCount;
+    private int hashFunctionCount;
+    private int subtableSize;
+    private int[] counts;
+    private long[] keySums;
+    private long[] valueSums;
+    private long[] hashKeySums;
+    // Work list of listEntries, kept between calls
+    private int[] candidates;
+
+    public LongIBLT(int cellCount, int hashFunctionCount) {
+        if (cellCount < hashFunctionCount) {
+            throw new RuntimeException("Cell count " + cellCount + " is less than hash function count " + hashFunctionCount);
+        }
+        this.cellCount = cellCount;
+        this.hashFunctionCount = hashFunctionCount;
+        this.subtableSize = cellCount / hashFunctionCount;
+        this.counts = new int[cellCount];
+        this.keySums = new long[cellCount];
+        this.valueSums = new long[cellCount];
+        this.hashKeySums = new long[cellCount];
+    }
+
+    public void insert(long key, long value) {
+        update(key, value, 1);
+    }
+
+    public void delete(long key, long value) {
+        update(key, value, -1);
+    }
+
+    private void update(long key, long value, int count) {
+        long hashKey = hashKey(key);
+        for (int i = 0; i < hashFunctionCount; i++) {
+            int cell = cellIndex(key, i);
+            counts[cell] += count;
+            keySums[cell] ^= key;
+            valueSums[cell] ^= value;
+            hashKeySums[cell] ^= hashKey;
+        }
+    }
+
+    /**
+     * Adds count and the sums of one cell of another IBLT with the same dimensions to cell.
+     */
+    void addCell(int cell, int count, long keySum, long valueSum, long hashKeySum) {
+        counts[cell] += count;
+        keySums[cell] ^= keySum;
+        valueSums[cell] ^= valueSum;
+        hashKeySums[cell] ^= hashKeySum;
+    }
+
+    /**
+     * Adds (sign 1) or subtracts (sign -1) all cells of other to the cells of this IBLT.
+     */
+    public void add(LongIBLT other, int sign) {
+        if (other.cellCount != cellCount || other.hashFunctionCount != hashFunctionCount) {
+            throw new RuntimeException("Can't combine IBLTs of different dimensions");
+        }
+        for (int i = 0; i < cellCount; i++) {
+            counts[i] += sign * other.counts[i];
+            keySums[i] ^= other.keySums[i];
+            valueSums[i] ^= other.valueSums[i];
+            hashKeySums[i] ^= other.hashKeySums[i];
+        }
+    }
+
+    /**
+     * Peels all entries off this IBLT. Entries with count 1 are added to extraEntries, and
+     * entries with count -1 to absentEntries. The IBLT is emptied in the process.
+     *
+     * @return false if the IBLT could not be fully decoded.
+     */
+    public boolean listEntries(LongEntries extraEntries, LongEntries absentEntries) {
+        // Only cells that changed since they were last checked can become pure, so we keep
+        // a stack of candidates instead of scanning the whole table over and over again.
+        if (candidates == null) {
+            candidates = new int[Math.max(16, cellCount)];
+        }
+        int candidateCount = 0;
+        for (int i = 0; i < cellCount; i++) {
+            if (isPure(i)) {
+                candidates[candidateCount++] = i;
+            }
+        }
+        while (candidateCount > 0) {
+            int cell = candidates[--candidateCount];
+            if (!isPure(cell)) {
+                continue;
+            }
+            long key = keySums[cell];
+            long value = valueSums[cell];
+            if (counts[cell] == 1) {
+                extraEntries.add(key, value);
+                delete(key, value);
+            } else {
+                absentEntries.add(key, value);
+                insert(key, value);
+            }
+            for (int i = 0; i < hashFunctionCount; i++) {
+                int touched = cellIndex(key, i);
+                if (isPure(touched)) {
+                    if (candidateCount == candidates.length) {
+                        int[] newCandidates = new int[candidates.length * 2];
+                        System.arraycopy(candidates, 0, newCandidates, 0, candidateCount);
+                        candidates = newCandidates;
+                    }
+                    candidates[candidateCount++] = touched;
+                }
+            }
+        }
+        for (int i = 0; i < cellCount; i++) {
+            if (!isEmpty(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isPure(int cell) {
+        return (counts[cell] == 1 || counts[cell] == -1) && hashKey(keySums[cell]) == hashKeySums[cell];
+    }
+
+    boolean isEmpty(int cell) {
+        return counts[cell] == 0 && keySums[cell] == 0 && valueSums[cell] == 0 && hashKeySums[cell] == 0;
+    }
+
+    int cellIndex(long key, int hashFunction) {
+        return cellIndex(key, hashFunction, subtableSize);
+    }
+
+    static int cellIndex(long key, int hashFunction, int subtableSize) {
+        long hash = mix(key + (hashFunction + 1) * 0x9E3779B97F4A7C15L);
+        return hashFunction * subtableSize + (int) ((hash >>> 1) % subtableSize);
+    }
+
+    static long hashKey(long key) {
+        return mix(key ^ KEY_HASH_SEED);
+    }
+
+    // The finalizer of SplitMix64. Every input bit affects every output bit.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    public int getHashFunctionCount() {
+        return hashFunctionCount;
+    }
+}
@@ -0,0 +1,10 @@
+package se.rosenbaum.bitcoiniblt.longdata;
+
+/**
+ * An IBLT with 8 byte keys and values that entries can be inserted into and deleted from.
+ */
+public interface MutableLongIBLT {
+    void insert(long key, long value);
+
+    void delete(long key, long value);
+}
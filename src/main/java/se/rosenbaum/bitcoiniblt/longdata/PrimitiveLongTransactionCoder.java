@@ -0,0 +1,102 @@
+package se.rosenbaum.bitcoiniblt.longdata;
+
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.VerificationException;
+import se.rosenbaum.bitcoiniblt.KeyDerivationCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes transactions into a LongIBLT or ConcurrentLongIBLT, and decodes them from a LongIBLT,
+ * without boxing any keys or values.
+ * Keys and values are the same as the ones produced by LongDataTransactionCoder with the same salt.
+ */
+public class PrimitiveLongTransactionCoder {
+    NetworkParameters params;
+    byte[] salt;
+    private KeyDerivationCache keyDerivationCache;
+
+    public PrimitiveLongTransactionCoder(NetworkParameters params, byte[] salt) {
+        this(params, salt, null);
+    }
+
+    /**
+     * @param keyDerivationCache remembers derived keys, may be shared with other coders. May be null.
+     */
+    public PrimitiveLongTransactionCoder(NetworkParameters params, byte[] salt, KeyDerivationCache keyDerivationCache) {
+        if (salt.length != 256/8) {
+            throw new RuntimeException("Bad salt length! Must be 32, but was  " + salt.length);
+        }
+
+        this.params = params;
+        this.salt = salt;
+        this.keyDerivationCache = keyDerivationCache;
+    }
+
+    /**
+     * @return the number of slices inserted
+     */
+    public int insertTransaction(Transaction transaction, MutableLongIBLT iblt) {
+        return encodeTransaction(transaction, iblt, true);
+    }
+
+    /**
+     * @return the number of slices deleted
+     */
+    public int deleteTransaction(Transaction transaction, MutableLongIBLT iblt) {
+        return encodeTransaction(transaction, iblt, false);
+    }
+
+    private int encodeTransaction(Transaction transaction, MutableLongIBLT iblt, boolean insert) {
+        long keyPrefix = LongDataTransactionCoder.getKeyPrefix(transaction, salt, keyDerivationCache);
+        char keyCounter = 0; // char is a 16 bit unsigned integer
+
+        byte[] bytes = transaction.bitcoinSerialize();
+        for (int i = 0; i < bytes.length; i += 8) {
+            long key = keyPrefix | keyCounter++;
+            long value = BigEndian.readLong(bytes, i);
+            if (insert) {
+                iblt.insert(key, value);
+            } else {
+                iblt.delete(key, value);
+            }
+        }
+        return keyCounter;
+    }
+
+    /**
+     * Reassembles the transactions from entries listed from a LongIBLT. The entries are sorted in place.
+     *
+     * @return the transactions, or null if any of them is not a valid transaction.
+     */
+    public List<Transaction> decodeTransactions(LongEntries entries) {
+        entries.sortByKey();
+        List<Transaction> result = new ArrayList<Transaction>();
+        int start = 0;
+        while (start < entries.size()) {
+            long keyPrefix = entries.getKey(start) & LongDataTransactionCoder.KEY_PREFIX_MASK;
+            int end = start + 1;
+            while (end < entries.size() && (entries.getKey(end) & LongDataTransactionCoder.KEY_PREFIX_MASK) == keyPrefix) {
+                end++;
+            }
+            // Sorted on key, so the last entry of the group has the highest counter
+            char lastCounter = (char) entries.getKey(end - 1);
+            byte[] txBytes = new byte[(lastCounter + 1) * 8];
+            for (int i = start; i < end; i++) {
+                BigEndian.writeLong(entries.getValue(i), txBytes, ((char) entries.getKey(i)) * 8);
+            }
+            Transaction transaction = new Transaction(params, txBytes, null, false, false, Message.UNKNOWN_LENGTH);
+            try {
+                transaction.verify(); // We might get bad data here.
+            } catch (VerificationException e) {
+                return null;
+            }
+            result.add(transaction);
+            start = end;
+        }
+        return result;
+    }
+}
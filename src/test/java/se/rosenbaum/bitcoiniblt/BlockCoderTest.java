@@ -0,0 +1,82 @@
+package se.rosenbaum.bitcoiniblt;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.junit.Test;
+import se.rosenbaum.bitcoiniblt.bytearraydata.ByteArrayDataIBLTFactory;
+import se.rosenbaum.bitcoiniblt.bytearraydata.ByteArrayDataTransactionCoder;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.data.ByteArrayData;
+
+import java.util.List;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class BlockCoderTest extends CoderTest {
+    private NetworkParameters params = MainNetParams.get();
+    private byte[] salt = new byte[32];
+
+    @Test
+    public void testDecodeWithMempoolIBLT() {
+        testDecodeWithMempoolIBLT(new ByteArrayDataIBLTFactory(900, 3, 8, 16, 4));
+    }
+
+    @Test
+    public void testDecodeWithOffHeapMempoolIBLT() {
+        testDecodeWithMempoolIBLT(new ByteArrayDataIBLTFactory(900, 3, 8, 16, 4, true));
+    }
+
+    private void testDecodeWithMempoolIBLT(ByteArrayDataIBLTFactory factory) {
+        List<Transaction> transactions = createTransactions(params, 61);
+        List<Transaction> blockTransactions = transactions.subList(0, 50);
+
+        Block block = createMock(Block.class);
+        expect(block.getTransactions()).andReturn(blockTransactions).anyTimes();
+        Block header = createMock(Block.class);
+        Capture<Transaction> capture = new Capture<Transaction>(CaptureType.ALL);
+        header.addTransaction(EasyMock.capture(capture));
+        expectLastCall().anyTimes();
+        replayAll();
+
+        TransactionSorter sorter = new SameAsBlockTransactionSorter(block);
+        BlockCoder<ByteArrayData, ByteArrayData> sender = new BlockCoder<ByteArrayData, ByteArrayData>(factory.createIblt(),
+                new ByteArrayDataTransactionCoder(params, salt, 8, 16), sorter);
+        IBLT<ByteArrayData, ByteArrayData> iblt = sender.encode(block);
+
+        // The mempool lacks two of the block's transactions and has ten that are not in the block.
+        ByteArrayDataTransactionCoder receiverCoder = new ByteArrayDataTransactionCoder(params, salt, 8, 16);
+        MempoolIBLT<ByteArrayData, ByteArrayData> mempool = new MempoolIBLT<ByteArrayData, ByteArrayData>(factory, receiverCoder);
+        for (Transaction transaction : transactions.subList(2, 61)) {
+            mempool.addTransaction(transaction);
+        }
+        // This one leaves the mempool before the block arrives
+        mempool.removeTransaction(transactions.get(60).getHash());
+        assertEquals(58, mempool.size());
+
+        BlockCoder<ByteArrayData, ByteArrayData> receiver = new BlockCoder<ByteArrayData, ByteArrayData>(iblt, receiverCoder, sorter);
+        assertNotNull(receiver.decode(header, mempool));
+        assertEquals(blockTransactions, capture.getValues());
+        assertEquals(2, receiver.getResidualTransactions().getExtraTransactions().size());
+        assertEquals(10, receiver.getResidualTransactions().getAbsentTransactions().size());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDecodeWithMempoolIBLTOfOtherCoder() {
+        ByteArrayDataIBLTFactory factory = new ByteArrayDataIBLTFactory(900, 3, 8, 16, 4);
+        Block header = createMock(Block.class);
+        replayAll();
+        MempoolIBLT<ByteArrayData, ByteArrayData> mempool = new MempoolIBLT<ByteArrayData, ByteArrayData>(factory,
+                new ByteArrayDataTransactionCoder(params, salt, 8, 16));
+        BlockCoder<ByteArrayData, ByteArrayData> receiver = new BlockCoder<ByteArrayData, ByteArrayData>(factory.createIblt(),
+                new ByteArrayDataTransactionCoder(params, salt, 8, 16), new CanonicalOrderTransactionSorter());
+        receiver.decode(header, mempool);
+    }
+}
@@ -7,18 +7,28 @@ import org.bitcoinj.params.MainNetParams;
 import org.easymock.Capture;
 import org.easymock.CaptureType;
 import org.easymock.EasyMock;
+import org.junit.After;
 import org.junit.Before;
 import se.rosenbaum.bitcoiniblt.bytearraydata.ByteArrayDataTransactionCoder;
 import se.rosenbaum.bitcoiniblt.bytearraydata.IBLTUtils;
 import se.rosenbaum.bitcoiniblt.printer.FailureProbabilityPrinter;
 import se.rosenbaum.bitcoiniblt.util.AggregateResultStats;
 import se.rosenbaum.bitcoiniblt.util.BlockStatsResult;
+import se.rosenbaum.bitcoiniblt.util.CellCountSearch;
 import se.rosenbaum.bitcoiniblt.util.TestConfig;
 import se.rosenbaum.bitcoiniblt.util.TransactionSets;
 import se.rosenbaum.iblt.IBLT;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
@@ -28,8 +38,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 public class BlockStatsClientCoderTest extends ClientCoderTest {
+    // z for a two sided 99% confidence interval
+    private static final double WILSON_Z = 2.576;
+    private static final int MIN_SAMPLES_BEFORE_STOP = 100;
+
     protected TransactionSorter sorter;
-    private BlockCoder sut;
+    protected int trialThreadCount = Runtime.getRuntime().availableProcessors();
+    private ExecutorService trialExecutor;
 
 
     @Before
@@ -37,23 +52,30 @@ public class BlockStatsClientCoderTest extends ClientCoderTest {
         sorter = new CanonicalOrderTransactionSorter();
     }
 
-    private void createBlockCoder(TestConfig config) {
-        TransactionCoder transactionCoder = new ByteArrayDataTransactionCoder(getParams(), config.getSalt(), config.getKeySize(),
-                config.getValueSize());
+    private BlockCoder createBlockCoder(TestConfig config, byte[] salt) {
         IBLT iblt = new IBLTUtils().createIblt(config.getCellCount(), config.getHashFunctionCount(), config.getKeySize(),
                 config.getValueSize(), config.getKeyHashSize());
-        sut = new BlockCoder(iblt, transactionCoder, sorter);
+        return createBlockCoder(config, salt, iblt);
     }
 
-    private void createBlockCoder(TestConfig config, IBLT iblt) {
-        TransactionCoder transactionCoder = new ByteArrayDataTransactionCoder(getParams(), config.getSalt(), config.getKeySize(),
+    private BlockCoder createBlockCoder(TestConfig config, byte[] salt, IBLT iblt) {
+        TransactionCoder transactionCoder = new ByteArrayDataTransactionCoder(getParams(), salt, config.getKeySize(),
                 config.getValueSize());
-        sut = new BlockCoder(iblt, transactionCoder, sorter);
+        return new BlockCoder(iblt, transactionCoder, sorter);
     }
 
     public BlockStatsResult testBlockStats(TestConfig config) throws IOException {
-        createBlockCoder(config);
-        TransactionSets sets = config.createTransactionSets();
+        return testBlockStats(config, config.createTransactionSets());
+    }
+
+    /**
+     * Encodes and decodes one block. Only uses its own coders and IBLTs, so several samples
+     * can run at the same time.
+     */
+    protected BlockStatsResult testBlockStats(TestConfig config, TransactionSets sets) throws IOException {
+        // Sender and receiver must agree on the salt
+        byte[] salt = config.getSalt();
+        BlockCoder sut = createBlockCoder(config, salt);
 
         List<Transaction> sortedBlockTransactions = sorter.sort(sets.getSendersTransactions());
 
@@ -74,7 +96,7 @@ public class BlockStatsClientCoderTest extends ClientCoderTest {
         result.setEncodingTime(System.currentTimeMillis() - startTime);
         result.setTotalKeysCount(sut.getEncodedEntriesCount());
 
-        createBlockCoder(config, iblt);
+        sut = createBlockCoder(config, salt, iblt);
 
         startTime = System.currentTimeMillis();
         Block resultBlock = sut.decode(recreatedBlock, sets.getReceiversTransactions());
@@ -127,18 +149,120 @@ public class BlockStatsClientCoderTest extends ClientCoderTest {
     }
 
     protected AggregateResultStats testFailureProbability(FailureProbabilityPrinter printer, TestConfig config, int sampleCount) throws IOException {
-        AggregateResultStats stats = new AggregateResultStats();
+        return testFailureProbability(printer, config, sampleCount, -1);
+    }
 
-        for (int i = 0; i < sampleCount; i++) {
-            BlockStatsResult result = testBlockStats(config);
-            if (result == null) {
-                break;
+    /**
+     * Runs up to sampleCount samples on trialThreadCount threads. If targetFailureProbability
+     * is not negative, sampling stops as soon as the Wilson score interval of the failure
+     * probability lies entirely above or below it, so the returned estimate is on the right
+     * side of the target with about 99% confidence. Use {@link #isBelowTarget(AggregateResultStats, double)}
+     * rather than comparing the estimate to the target.
+     */
+    protected AggregateResultStats testFailureProbability(final FailureProbabilityPrinter printer, final TestConfig config,
+                                                          final int sampleCount, final double targetFailureProbability) throws IOException {
+        final AggregateResultStats stats = new AggregateResultStats();
+        final AtomicInteger nextSample = new AtomicInteger();
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        List<Future<Object>> futures = new ArrayList<Future<Object>>(trialThreadCount);
+        for (int i = 0; i < trialThreadCount; i++) {
+            futures.add(getTrialExecutor().submit(new Callable<Object>() {
+                public Object call() throws IOException {
+                    while (!stop.get() && nextSample.getAndIncrement() < sampleCount) {
+                        TransactionSets sets;
+                        synchronized (BlockStatsClientCoderTest.this) {
+                            // The transaction sources are not thread safe
+                            sets = config.createTransactionSets();
+                        }
+                        BlockStatsResult result = testBlockStats(config, sets);
+                        if (result == null) {
+                            stop.set(true);
+                            break;
+                        }
+                        int samples = stats.addSample(result);
+                        if (printer != null && samples % 100 == 0) {
+                            synchronized (printer) {
+                                printer.logResult(config, stats);
+                            }
+                        }
+                        if (targetFailureProbability >= 0 && samples >= MIN_SAMPLES_BEFORE_STOP
+                                && stats.isOnOneSideOf(targetFailureProbability, WILSON_Z)) {
+                            stop.set(true);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<Object> future : futures) {
+                future.get();
             }
-            stats.addSample(result);
-            if (printer != null && i % 100 == 0 && i > 0) {
-                printer.logResult(config, stats);
+        } catch (InterruptedException e) {
+            stop.set(true);
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            stop.set(true);
+            cancel(futures);
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
             }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
         }
         return stats;
     }
+
+    private static void cancel(List<Future<Object>> futures) {
+        for (Future<Object> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * The decision of {@link #testFailureProbability(FailureProbabilityPrinter, TestConfig, int, double)}: whether
+     * the failure probability of stats is below targetFailureProbability. If sampling stopped early the Wilson score
+     * interval decides, otherwise the point estimate does.
+     */
+    protected static boolean isBelowTarget(AggregateResultStats stats, double targetFailureProbability) {
+        if (stats.isOnOneSideOf(targetFailureProbability, WILSON_Z)) {
+            return stats.getWilsonUpperBound(WILSON_Z) < targetFailureProbability;
+        }
+        return stats.getFailureProbability() <= targetFailureProbability;
+    }
+
+    protected CellCountSearch createCellCountSearch(TestConfig config) {
+        return createCellCountSearch(config, null);
+    }
+
+    /**
+     * A cell count search for config that samples with {@link #testFailureProbability(FailureProbabilityPrinter, TestConfig, int)}.
+     * Each probe is logged to printer, if not null.
+     */
+    protected CellCountSearch createCellCountSearch(TestConfig config, final FailureProbabilityPrinter printer) {
+        return new CellCountSearch(config, new CellCountSearch.Sampler() {
+            public AggregateResultStats sample(TestConfig config, int sampleCount) throws IOException {
+                return testFailureProbability(printer, config, sampleCount);
+            }
+        });
+    }
+
+    private synchronized ExecutorService getTrialExecutor() {
+        if (trialExecutor == null) {
+            trialExecutor = Executors.newFixedThreadPool(trialThreadCount);
+        }
+        return trialExecutor;
+    }
+
+    @After
+    public void shutdownTrialExecutor() {
+        if (trialExecutor != null) {
+            trialExecutor.shutdownNow();
+            trialExecutor = null;
+        }
+    }
 }
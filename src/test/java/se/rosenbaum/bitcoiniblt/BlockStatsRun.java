@@ -6,8 +6,7 @@ import se.rosenbaum.bitcoiniblt.printer.HashCountCellCountPrinter;
 import se.rosenbaum.bitcoiniblt.printer.IBLTSizeBlockStatsPrinter;
 import se.rosenbaum.bitcoiniblt.printer.ValueSizeCellCountPrinter;
 import se.rosenbaum.bitcoiniblt.util.AggregateResultStats;
-import se.rosenbaum.bitcoiniblt.util.BlockStatsResult;
-import se.rosenbaum.bitcoiniblt.util.Interval;
+import se.rosenbaum.bitcoiniblt.util.CellCountSearch;
 import se.rosenbaum.bitcoiniblt.util.TestConfig;
 import se.rosenbaum.bitcoiniblt.util.TransactionSets;
 
@@ -15,6 +14,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * What do I want to accomplish?
@@ -64,38 +64,18 @@ public class BlockStatsRun extends BlockStatsClientCoderTest {
         int cellCountStart = 8192 * 2 * 2 * 2 * 2;
         TestConfig config = new RandomTransactionsTestConfig(50, 50, 50, 1, 8, 64, 4, cellCountStart, false);
 
-        Interval interval = new Interval(0, config.getCellCount());
-
         int minHashFunctionCount = 2;
         int maxHashFunctionCount = 10;
         IBLTSizeBlockStatsPrinter printer = new HashCountCellCountPrinter(tempDirectory, maxHashFunctionCount - minHashFunctionCount + 1);
 
         for (int i = minHashFunctionCount; i <= maxHashFunctionCount; i++) {
             config.setHashFunctionCount(i);
+            config.setCellCount(cellCountStart);
 
-            BlockStatsResult lastSuccessResult = null;
-            interval.setLow(0);
-            interval.setHigh(cellCountStart);
-            // must be a multiple of hashFunctionCount
-            config.setCellCount(interval.getHigh() - interval.getHigh() % config.getHashFunctionCount());
-
-            while (true) {
-                BlockStatsResult result = testBlockStats(config);
-                printer.logResult(config, result);
-                if (result.isSuccess()) {
-                    lastSuccessResult = result;
-                    interval.setHigh(config.getCellCount());
-                } else {
-                    interval.setLow(config.getCellCount());
-                }
-                config.setCellCount(interval.nextValue(config));
-
-                if (!interval.isInsideInterval(config.getCellCount())) {
-                    config.setCellCount(interval.getHigh());
-                    printer.addResult(config, lastSuccessResult);
-                    break;
-                }
-            }
+            CellCountSearch search = createCellCountSearch(config);
+            int foundCellCount = search.findCellCount(0.05);
+            logProbes(printer, config, search);
+            printer.addResult(config, search.getStats(foundCellCount));
         }
         printer.finish();
     }
@@ -103,35 +83,18 @@ public class BlockStatsRun extends BlockStatsClientCoderTest {
     @Test
     public void testValueSizeVsCellCount() throws IOException {
         TestConfig config = new RandomTransactionsTestConfig(50, 50, 50, 4, 8, 8, 4, 32384, false);
-        Interval interval = new Interval(0, config.getCellCount());
 
         int[] category = new int[]{8, 16, 32, 48, 64, 80, 96, 112, 128, 144, 160, 176, 192, 208, 256, 270, 280, 512};
-        IBLTSizeBlockStatsPrinter printer = new ValueSizeCellCountPrinter(tempDirectory, category.length, "Minimum decodable IBLT size, non-corpus");
+        IBLTSizeBlockStatsPrinter printer = new ValueSizeCellCountPrinter(tempDirectory, category.length, "IBLT size for 5% failure probability, 4 hash functions, non-corpus");
 
         for (int i = 0; i < category.length; i++) {
             config.setValueSize(category[i]);
 
-            BlockStatsResult lastSuccessResult = null;
-            while (true) {
-                BlockStatsResult result = testBlockStats(config);
-                printer.logResult(config, result);
-                if (result.isSuccess()) {
-                    lastSuccessResult = result;
-                    interval.setHigh(config.getCellCount());
-                } else {
-                    interval.setLow(config.getCellCount());
-                }
-                config.setCellCount(interval.nextValue(config));
-
-                if (!interval.isInsideInterval(config.getCellCount())) {
-                    config.setCellCount(interval.getHigh());
-                    printer.addResult(config, lastSuccessResult);
-                    config.setCellCount(config.getCellCount()*4);
-                    interval.setHigh(config.getCellCount());
-                    interval.setLow(0);
-                    break;
-                }
-            }
+            CellCountSearch search = createCellCountSearch(config);
+            int foundCellCount = search.findCellCount(0.05);
+            logProbes(printer, config, search);
+            printer.addResult(config, search.getStats(foundCellCount));
+            config.setCellCount(foundCellCount * 4);
         }
         printer.finish();
     }
@@ -154,34 +117,28 @@ public class BlockStatsRun extends BlockStatsClientCoderTest {
         for (int i = 0; i < category.length; i++) {
             config.setValueSize(category[i]);
 
-            Interval interval = new Interval(0, config.getCellCount());
-            AggregateResultStats closestResult = null;
-            TestConfig closestTestConfig = null;
-            while (true) {
-                AggregateResultStats result = testFailureProbability(null, config, 1000);
-                valueSizeCellCountPrinter.logResult(config, result);
-                if (result.getFailureProbability() <= 0.05) {
-                    if (result.getFailureProbability() == 0.05) {
-                        interval.setLow(config.getCellCount());
-                    }
-                    interval.setHigh(config.getCellCount());
-                    closestResult = result;
-                    closestTestConfig = new RandomTransactionsTestConfig(50, 50, 50, 3, 8, config.getValueSize(), 4, config.getCellCount(), false);
-                } else {
-                    interval.setLow(config.getCellCount());
-                }
-                config.setCellCount(interval.nextValue(config));
-
-                if (!interval.isInsideInterval(config.getCellCount())) {
-                    config.setCellCount(interval.getHigh()*2);
-                    break;
-                }
-            }
+            CellCountSearch search = createCellCountSearch(config);
+            int foundCellCount = search.findCellCount(0.05);
+            AggregateResultStats closestResult = search.getStats(foundCellCount);
+            logProbes(valueSizeCellCountPrinter, config, search);
+            TestConfig closestTestConfig = new RandomTransactionsTestConfig(50, 50, 50, 3, 8, config.getValueSize(), 4, foundCellCount, false);
+            config.setCellCount(foundCellCount * 2);
             valueSizeCellCountPrinter.addResult(closestTestConfig, closestResult);
         }
         valueSizeCellCountPrinter.finish();
     }
 
+    /**
+     * Logs every probe of search to printer, in cell count order.
+     */
+    private void logProbes(IBLTSizeBlockStatsPrinter printer, TestConfig config, CellCountSearch search) {
+        int cellCount = config.getCellCount();
+        for (Map.Entry<Integer, AggregateResultStats> probe : search.getProbes().entrySet()) {
+            config.setCellCount(probe.getKey());
+            printer.logResult(config, probe.getValue());
+        }
+        config.setCellCount(cellCount);
+    }
 
     @Test
     public void testTxSizes() {
@@ -4,6 +4,13 @@ import org.bitcoinj.core.Transaction;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -68,6 +75,49 @@ public class CanonicalOrderTransactionSorterTest extends CoderTest {
         assertEquals(0, sut.compare(t2, t1));
     }
 
+    @Test
+    public void testSort() {
+        Transaction t1 = t("6", "8", "4");
+        Transaction t2 = t("5", "7");
+        Transaction t3 = t("8", "4");
+        Transaction t4 = t("9");
+        replayAll();
+        List<Transaction> list = new ArrayList<Transaction>();
+        Collections.addAll(list, t4, t2, t3, t1);
+        List<Transaction> sorted = sut.sort(list);
+
+        // t1 and t3 both have 4 as smallest hash, but at index 2 and 1 respectively
+        assertEquals(4, sorted.size());
+        assertEquals(t3, sorted.get(0));
+        assertEquals(t1, sorted.get(1));
+        assertEquals(t2, sorted.get(2));
+        assertEquals(t4, sorted.get(3));
+        assertEquals(t4, list.get(0));
+    }
+
+    @Test
+    public void testParallelSortSameAsSequential() {
+        Random random = new Random(1);
+        List<Transaction> list = new ArrayList<Transaction>();
+        for (int i = 0; i < 300; i++) {
+            list.add(t(Long.toHexString(random.nextLong() >>> 1), Long.toHexString(random.nextLong() >>> 1)));
+        }
+        replayAll();
+        List<Transaction> expected = sut.sort(list);
+        for (int i = 1; i < expected.size(); i++) {
+            assertTrue(sut.compare(expected.get(i - 1), expected.get(i)) < 0);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            CanonicalOrderTransactionSorter parallel = new CanonicalOrderTransactionSorter(executor, 4);
+            parallel.minParallelSize = 100;
+            assertEquals(expected, parallel.sort(list));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     private void testLt(Transaction t1, Transaction t2) {
         replayAll();
         lt(t1, t2);
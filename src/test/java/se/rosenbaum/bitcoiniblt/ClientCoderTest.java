@@ -12,15 +12,14 @@ import org.junit.After;
 import org.junit.Before;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import se.rosenbaum.bitcoiniblt.corpus.SegmentStore;
+import se.rosenbaum.bitcoiniblt.util.MessageCache;
 import se.rosenbaum.bitcoiniblt.util.TestConfig;
 import se.rosenbaum.bitcoiniblt.util.TransactionCollectorProcessor;
 import se.rosenbaum.bitcoiniblt.util.TransactionProcessor;
 import se.rosenbaum.bitcoiniblt.util.TransactionSets;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -36,7 +35,6 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
-import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -48,6 +46,9 @@ import static org.junit.Assert.fail;
  */
 public abstract class ClientCoderTest extends CoderTest {
     private static Logger logger = LoggerFactory.getLogger(ClientCoderTest.class);
+    private static final long DEFAULT_BLOCK_CACHE_BYTES = 256L << 20;
+    // Shared by all tests run in the same JVM, one per network
+    private static final Map<String, MessageCache<Block>> blockCaches = new HashMap<String, MessageCache<Block>>();
 
     protected byte[] salt;
 
@@ -60,12 +61,13 @@ public abstract class ClientCoderTest extends CoderTest {
     protected String TESTNET_BLOCK = "00000000e4a728571997c669c52425df5f529dd370fa9164c64fd60a49e245c4";
 
     protected File tempDirectory;
+    private File cacheDirectory;
+    private SegmentStore cacheStore;
     private File blockDirectory;
     private File transactionDirectory;
     private File walletDirectory;
     private Sha256Hash[] blockHashes;
     private Random random;
-    private Map<Sha256Hash, Block> blockCache = new HashMap<Sha256Hash, Block>();
     protected int blockCount = 1000;
 
     protected Properties testProps;
@@ -94,53 +96,89 @@ public abstract class ClientCoderTest extends CoderTest {
         logger.info("tmpDir={}", new File(tmpDir).getAbsolutePath());
 
         tempDirectory = new File(new File(tmpDir), "data");
-        File cacheDirectory = new File(cacheDir);
+        cacheDirectory = new File(cacheDir);
         blockDirectory = new File(cacheDirectory, "blocks");
         transactionDirectory = new File(cacheDirectory, "transactions");
         walletDirectory = new File(tempDirectory, "wallet");
-        blockDirectory.mkdirs();
-        transactionDirectory.mkdirs();
         walletDirectory.mkdirs();
     }
 
+    private synchronized SegmentStore getCacheStore() throws IOException {
+        if (cacheStore == null) {
+            cacheStore = new SegmentStore(new File(cacheDirectory, "store"), getParams());
+            if (cacheStore.getEntryCount() == 0) {
+                // The cache used to be one file per block and transaction
+                int blocks = cacheStore.importDirectory(blockDirectory, SegmentStore.BLOCK);
+                int transactions = cacheStore.importDirectory(transactionDirectory, SegmentStore.TRANSACTION);
+                logger.info("Imported {} blocks and {} transactions into the cache store", blocks, transactions);
+            }
+        }
+        return cacheStore;
+    }
+
     protected void startWallet() {
         walletAppKit = new WalletAppKit(getParams(), walletDirectory, "iblt" + getParams().getClass().getSimpleName());
         walletAppKit.startAsync().awaitRunning();
     }
 
     @After
-    public void tearDown() throws ExecutionException, InterruptedException, TimeoutException {
+    public void tearDown() throws ExecutionException, InterruptedException, TimeoutException, IOException {
         if (walletAppKit != null) {
             walletAppKit.stopAsync().awaitTerminated(1L, TimeUnit.MINUTES);
         }
+        if (cacheStore != null) {
+            cacheStore.close();
+            cacheStore = null;
+        }
+        MessageCache<Block> blockCache;
+        synchronized (blockCaches) {
+            blockCache = blockCaches.get(getParams().getId());
+        }
+        if (blockCache != null && blockCache.hasChangedSinceSnapshot()) {
+            logger.info("Saving block cache: {}", blockCache);
+            blockCache.saveSnapshot(getBlockCacheSnapshot());
+        }
     }
 
-    public Transaction getTransaction(Sha256Hash transactionId) throws IOException {
-        File txFile = new File(transactionDirectory, transactionId.toString());
-        if (txFile.exists()) {
-            byte[] fileContents = new byte[(int)txFile.length()];
-            InputStream inputStream = new FileInputStream(txFile);
-            if (fileContents.length != inputStream.read(fileContents)) {
-                throw new RuntimeException("Couldn't read transaction " + transactionId + " from file " + txFile.getAbsolutePath());
+    private MessageCache<Block> getBlockCache() throws IOException {
+        synchronized (blockCaches) {
+            MessageCache<Block> blockCache = blockCaches.get(getParams().getId());
+            if (blockCache == null) {
+                String maxBytes = testProps.getProperty("iblt.block.cache.bytes");
+                blockCache = MessageCache.forBlocks(getParams(),
+                        maxBytes == null ? DEFAULT_BLOCK_CACHE_BYTES : Long.parseLong(maxBytes));
+                File snapshot = getBlockCacheSnapshot();
+                if (snapshot.exists()) {
+                    int loaded = blockCache.loadSnapshot(snapshot);
+                    logger.info("Loaded {} blocks from {}", loaded, snapshot);
+                }
+                blockCaches.put(getParams().getId(), blockCache);
             }
-            inputStream.close();
-            return new Transaction(getParams(), fileContents);
+            return blockCache;
         }
-        return null;
+    }
+
+    private File getBlockCacheSnapshot() {
+        return new File(cacheDirectory, "block-cache-" + getParams().getId());
+    }
+
+    public Transaction getTransaction(Sha256Hash transactionId) throws IOException {
+        return getCacheStore().getTransaction(transactionId);
     }
 
     public Block getBlock(Sha256Hash blockId) {
         try {
             logger.debug("Getting block {}", blockId);
+            MessageCache<Block> blockCache = getBlockCache();
             Block block = blockCache.get(blockId);
             if (block != null) {
                 logger.debug("found in cache!");
                 return block;
             }
-            block = readBlockFromDisk(blockId);
+            block = getCacheStore().getBlock(blockId);
             if (block != null) {
-                logger.debug("found on file system!");
-                blockCache.put(blockId, block);
+                logger.debug("found in cache store!");
+                blockCache.put(block);
                 return block;
             }
 
@@ -149,9 +187,8 @@ public abstract class ClientCoderTest extends CoderTest {
             }
             block = walletAppKit.peerGroup().getDownloadPeer().getBlock(blockId).get();
             logger.debug("downladed!");
-            saveBlockToDisk(block);
-            saveTransactions(block);
-            blockCache.put(blockId, block);
+            getCacheStore().putBlock(block);
+            blockCache.put(block);
             return block;
         } catch (Exception e) {
             e.printStackTrace();
@@ -160,63 +197,6 @@ public abstract class ClientCoderTest extends CoderTest {
         }
     }
 
-    private void saveTransactions(Block block) {
-        for (Transaction transaction : block.getTransactions()) {
-            saveToDisk(transactionDirectory, transaction);
-        }
-    }
-
-    private Block readBlockFromDisk(Sha256Hash blockHash) {
-        logger.debug("Reading block {} from disk ... ", blockHash.toString());
-        File blockFile = new File(blockDirectory, blockHash.toString());
-        if (!blockFile.exists()) {
-            logger.debug(" not found!");
-            return null;
-        }
-        try {
-
-            FileInputStream fileInput = new FileInputStream(blockFile);
-            byte[] blockData = new byte[(int) blockFile.length()];
-            fileInput.read(blockData);
-            assertEquals(0, fileInput.available());
-            fileInput.close();
-            logger.debug(" found!");
-            return new Block(getParams(), blockData);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            fail();
-        } catch (IOException e) {
-            e.printStackTrace();
-            fail();
-        }
-        return null;
-    }
-
-    private void saveBlockToDisk(Block block) {
-        saveToDisk(blockDirectory, block);
-    }
-
-    private void saveToDisk(File targetDirectory, Message message) {
-        try {
-            logger.debug("Saving " + message.getClass().getSimpleName() + " {} to disk ... ", message.getHash().toString());
-            File blockFile = getFile(targetDirectory, message);
-            if (blockFile.exists()) {
-                return;
-            }
-            FileOutputStream out = new FileOutputStream(blockFile);
-            message.bitcoinSerialize(out);
-            out.close();
-            logger.debug("done!");
-        } catch (Exception e) {
-            e.printStackTrace();
-            fail();
-        }
-    }
-
-    private File getFile(File targetDirectory, Message message) {
-        return new File(targetDirectory, message.getHash().toString());
-    }
-
     public Block getBlock() {
         Sha256Hash blockHash = new Sha256Hash(TESTNET_BLOCK);
         return getBlock(blockHash);
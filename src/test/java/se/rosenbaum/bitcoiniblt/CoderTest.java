@@ -1,11 +1,15 @@
 package se.rosenbaum.bitcoiniblt;
 
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
 import org.bitcoinj.core.TransactionInput;
 import org.bitcoinj.core.TransactionOutPoint;
 import org.easymock.EasyMockSupport;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -37,4 +41,19 @@ public abstract class CoderTest extends EasyMockSupport {
         expect(t1.getHash()).andReturn(createHash("" + hashValue++));
         return t1;
     }
+
+    /**
+     * Creates real, but made up, transactions without any need for the network. The keys are
+     * derived from i, so the transactions are the same on every run.
+     */
+    public List<Transaction> createTransactions(NetworkParameters params, int count) {
+        List<Transaction> transactions = new ArrayList<Transaction>(count);
+        for (int i = 0; i < count; i++) {
+            Transaction transaction = new Transaction(params);
+            transaction.addInput(new TransactionInput(params, transaction, new byte[] {1, 2, (byte) i}));
+            transaction.addOutput(Coin.valueOf(i + 1), ECKey.fromPrivate(BigInteger.valueOf(i + 1)));
+            transactions.add(transaction);
+        }
+        return transactions;
+    }
 }
@@ -0,0 +1,91 @@
+package se.rosenbaum.bitcoiniblt;
+
+import org.junit.Test;
+import se.rosenbaum.bitcoiniblt.bytearraydata.IBLTUtils;
+import se.rosenbaum.iblt.Cell;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.data.ByteArrayData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ConcurrentIBLTTest {
+    private static final int THREAD_COUNT = 4;
+
+    @Test
+    public void testSameAsSerial() throws Exception {
+        testSameAsSerial(false);
+    }
+
+    @Test
+    public void testSameAsSerialOffHeap() throws Exception {
+        testSameAsSerial(true);
+    }
+
+    private void testSameAsSerial(boolean offHeap) throws Exception {
+        final List<ByteArrayData> keys = new ArrayList<ByteArrayData>();
+        final List<ByteArrayData> values = new ArrayList<ByteArrayData>();
+        Random random = new Random(1);
+        for (int i = 0; i < 5000; i++) {
+            byte[] key = new byte[8];
+            byte[] value = new byte[64];
+            random.nextBytes(key);
+            random.nextBytes(value);
+            keys.add(new ByteArrayData(key));
+            values.add(new ByteArrayData(value));
+        }
+
+        IBLTUtils utils = new IBLTUtils();
+        IBLT<ByteArrayData, ByteArrayData> serial = utils.createIblt(300, 3, 8, 64, 4, offHeap);
+        for (int i = 0; i < keys.size(); i++) {
+            if (i % 3 == 0) {
+                serial.delete(keys.get(i), values.get(i));
+            } else {
+                serial.insert(keys.get(i), values.get(i));
+            }
+        }
+
+        final ConcurrentIBLT<ByteArrayData, ByteArrayData> sut = utils.createConcurrentIblt(300, 3, 8, 64, 4, offHeap, 16);
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int thread = 0; thread < THREAD_COUNT; thread++) {
+                final int first = thread;
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() {
+                        for (int i = first; i < keys.size(); i += THREAD_COUNT) {
+                            if (i % 3 == 0) {
+                                sut.delete(keys.get(i), values.get(i));
+                            } else {
+                                sut.insert(keys.get(i), values.get(i));
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Cell<ByteArrayData, ByteArrayData>[] expected = serial.getCells();
+        Cell<ByteArrayData, ByteArrayData>[] actual = sut.getCells();
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getCount(), actual[i].getCount());
+            assertArrayEquals(expected[i].getKeySum().getValue(), actual[i].getKeySum().getValue());
+            assertArrayEquals(expected[i].getValueSum().getValue(), actual[i].getValueSum().getValue());
+            assertArrayEquals(expected[i].getHashKeySum().getValue(), actual[i].getHashKeySum().getValue());
+        }
+    }
+}
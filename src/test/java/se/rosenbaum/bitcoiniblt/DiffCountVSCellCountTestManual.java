@@ -6,7 +6,7 @@ import se.rosenbaum.bitcoiniblt.printer.FailureProbabilityPrinter;
 import se.rosenbaum.bitcoiniblt.printer.IBLTSizeBlockStatsPrinter;
 import se.rosenbaum.bitcoiniblt.printer.ValueSizeCellCountPrinter;
 import se.rosenbaum.bitcoiniblt.util.AggregateResultStats;
-import se.rosenbaum.bitcoiniblt.util.Interval;
+import se.rosenbaum.bitcoiniblt.util.CellCountSearch;
 import se.rosenbaum.bitcoiniblt.util.TestConfig;
 
 import java.io.File;
@@ -47,8 +47,7 @@ public class DiffCountVSCellCountTestManual extends BlockStatsClientCoderTest {
 
     @Test
     public void testRipped() throws IOException {
-
-
+        CellCountVSFailureProbabilityPrinter printer = new CellCountVSFailureProbabilityPrinter(tempDirectory);
         TestConfig config = new RandomTransactionsTestConfig(0, 0, 0, 3, 8, 64, 4, 10000, true);
 
         double[] failureProbabilities = new double[] {0.001, 0.005, 0.01, 0.02, 0.05};
@@ -67,33 +66,20 @@ public class DiffCountVSCellCountTestManual extends BlockStatsClientCoderTest {
             int[] cellCountEstimates = findRoughEstimate(null, config);
             int initialCellCount = cellCountEstimates[1];
 
-            Interval interval = new Interval(0, initialCellCount);
-            TestConfig closestTestConfig = null;
-
+            config.setCellCountMultiple(initialCellCount);
+            CellCountSearch search = createCellCountSearch(config);
             for (int j = 0; j < failureProbabilities.length; j++) { // For each failure probability, hardest first
                 double failureProbability = failureProbabilities[j];
-                while (true) {
-                    AggregateResultStats result = testFailureProbability(null, config, samplesNeeded[j]/20);
-                    if (result.getFailureProbability() <= failureProbability) {
-                        if (result.getFailureProbability() == failureProbability) {
-                            interval.setLow(config.getCellCount());
-                        }
-                        interval.setHigh(config.getCellCount());
-                        closestTestConfig = config;
-                    } else {
-                        interval.setLow(config.getCellCount());
-                    }
-                    config = new RandomTransactionsTestConfig(config);
-                    config.setCellCount(interval.nextValue(config));
-
-                    if (!interval.isInsideInterval(config.getCellCount())) {
-                        configs[i][j] = closestTestConfig;
-                        System.out.println("diffs " + diffs + ", failure probability "  + failureProbability + " size " + configs[i][j].getIbltSize());
-                        break;
-                    }
-                }
+                search.setMaxSamplesPerProbe(samplesNeeded[j]);
+                // Later, easier, targets reuse the samples of cell counts already probed
+                int cellCount = search.findCellCount(failureProbability);
+                configs[i][j] = new RandomTransactionsTestConfig(config);
+                configs[i][j].setCellCount(cellCount);
+                System.out.println("diffs " + diffs + ", failure probability "  + failureProbability + " size " + configs[i][j].getIbltSize());
             }
+            search.printCurve(printer);
         }
+        printer.finish();
     }
 
     // TODO: hashFunctionCount vs Failureprobability --> select best hashFunctionCount
@@ -0,0 +1,58 @@
+package se.rosenbaum.bitcoiniblt;
+
+import org.junit.Test;
+import se.rosenbaum.bitcoiniblt.util.AggregateResultStats;
+import se.rosenbaum.bitcoiniblt.util.SyntheticTransactionGenerator;
+import se.rosenbaum.bitcoiniblt.util.SyntheticTransactionsTestConfig;
+import se.rosenbaum.bitcoiniblt.util.TestConfig;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FailureProbabilityTest extends BlockStatsClientCoderTest {
+
+    private TestConfig createConfig(int cellCount) {
+        return new SyntheticTransactionsTestConfig(new SyntheticTransactionGenerator(getParams(), 1),
+                100, 5, 5, 3, 8, 64, 4, cellCount) {
+            @Override
+            public byte[] getSalt() {
+                // A fixed salt, so that the failures are the same on every run
+                byte[] salt = new byte[32];
+                Arrays.fill(salt, (byte) 1);
+                return salt;
+            }
+        };
+    }
+
+    @Test
+    public void testAllSamplesWithoutTarget() throws IOException {
+        trialThreadCount = 4;
+        AggregateResultStats stats = testFailureProbability(null, createConfig(600), 40);
+        assertEquals(40, stats.getSampleCount());
+        assertEquals(0, stats.getFailures());
+    }
+
+    @Test
+    public void testStopsEarlyBelowTarget() throws IOException {
+        trialThreadCount = 4;
+        AggregateResultStats stats = testFailureProbability(null, createConfig(600), 10000, 0.05);
+        assertEquals(0, stats.getFailures());
+        assertTrue(stats.getSampleCount() >= 100);
+        assertTrue(stats.getSampleCount() < 200);
+        assertTrue(stats.getWilsonUpperBound(2.576) < 0.05);
+        assertTrue(isBelowTarget(stats, 0.05));
+    }
+
+    @Test
+    public void testStopsEarlyAboveTarget() throws IOException {
+        trialThreadCount = 4;
+        AggregateResultStats stats = testFailureProbability(null, createConfig(30), 10000, 0.05);
+        assertTrue(stats.getSampleCount() >= 100);
+        assertTrue(stats.getSampleCount() < 200);
+        assertFalse(isBelowTarget(stats, 0.05));
+    }
+}
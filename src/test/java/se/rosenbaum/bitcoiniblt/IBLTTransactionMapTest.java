@@ -0,0 +1,150 @@
+package se.rosenbaum.bitcoiniblt;
+
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+import se.rosenbaum.bitcoiniblt.bytearraydata.ByteArrayDataIBLTFactory;
+import se.rosenbaum.bitcoiniblt.bytearraydata.ByteArrayDataTransactionCoder;
+import se.rosenbaum.iblt.Cell;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.bitcoiniblt.longdata.IBLTUtils;
+import se.rosenbaum.bitcoiniblt.longdata.LongDataTransactionCoder;
+import se.rosenbaum.iblt.data.ByteArrayData;
+import se.rosenbaum.iblt.data.LongData;
+import se.rosenbaum.iblt.util.ResidualData;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IBLTTransactionMapTest extends CoderTest {
+    private NetworkParameters params = MainNetParams.get();
+    private byte[] salt = new byte[32];
+
+    @Test
+    public void testParallelPutSameAsSerialPut() {
+        ByteArrayDataIBLTFactory factory = new ByteArrayDataIBLTFactory(300, 3, 8, 16, 4);
+        List<Transaction> transactions = createTransactions(params, 50);
+
+        IBLTTransactionMap<ByteArrayData, ByteArrayData> serial = createMap(factory);
+        serial.putTransactions(transactions);
+
+        IBLTTransactionMap<ByteArrayData, ByteArrayData> parallel = createMap(factory);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            parallel.putTransactions(transactions, factory, executor, 7);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(serial.getEncodedEntriesCount(), parallel.getEncodedEntriesCount());
+        assertCellsEqual(serial.getIBLT(), parallel.getIBLT());
+    }
+
+    @Test
+    public void testOffHeapSameAsHeap() {
+        ByteArrayDataIBLTFactory heapFactory = new ByteArrayDataIBLTFactory(300, 3, 8, 16, 4);
+        ByteArrayDataIBLTFactory offHeapFactory = new ByteArrayDataIBLTFactory(300, 3, 8, 16, 4, true);
+        List<Transaction> transactions = createTransactions(params, 50);
+
+        IBLTTransactionMap<ByteArrayData, ByteArrayData> heap = createMap(heapFactory);
+        heap.putTransactions(transactions);
+        heap.deleteTransactions(transactions.subList(0, 10));
+
+        IBLTTransactionMap<ByteArrayData, ByteArrayData> offHeap = createMap(offHeapFactory);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            offHeap.putTransactions(transactions, offHeapFactory, executor, 3);
+        } finally {
+            executor.shutdown();
+        }
+        offHeap.deleteTransactions(transactions.subList(0, 10));
+
+        assertCellsEqual(heap.getIBLT(), offHeap.getIBLT());
+    }
+
+    @Test
+    public void testFlatLongSameAsHeap() {
+        List<Transaction> transactions = createTransactions(params, 20);
+        IBLTTransactionMap<LongData, LongData> heap = new IBLTTransactionMap<LongData, LongData>(
+                IBLTUtils.createIblt(1200, 3), new LongDataTransactionCoder(params, salt));
+        heap.putTransactions(transactions);
+        IBLTTransactionMap<LongData, LongData> flat = new IBLTTransactionMap<LongData, LongData>(
+                IBLTUtils.createIblt(1200, 3, true), new LongDataTransactionCoder(params, salt));
+        flat.putTransactions(transactions);
+
+        Cell<LongData, LongData>[] heapCells = heap.getIBLT().getCells();
+        Cell<LongData, LongData>[] flatCells = flat.getIBLT().getCells();
+        for (int i = 0; i < heapCells.length; i++) {
+            assertEquals(heapCells[i].getCount(), flatCells[i].getCount());
+            assertEquals(heapCells[i].getKeySum(), flatCells[i].getKeySum());
+            assertEquals(heapCells[i].getValueSum(), flatCells[i].getValueSum());
+            assertEquals(heapCells[i].getHashKeySum(), flatCells[i].getHashKeySum());
+        }
+        assertEquals(new HashSet<Transaction>(transactions), new HashSet<Transaction>(flat.decodeRemaining().getExtraTransactions()));
+    }
+
+    @Test
+    public void testPeelingDecoderSameAsListEntries() {
+        ByteArrayDataIBLTFactory factory = new ByteArrayDataIBLTFactory(600, 3, 8, 16, 4);
+        List<Transaction> transactions = createTransactions(params, 40);
+        IBLTTransactionMap<ByteArrayData, ByteArrayData> sender = createMap(factory);
+        sender.putTransactions(transactions.subList(0, 30));
+
+        // Without a mempool listener, so that the plain entries can be compared
+        IBLTTransactionMap<ByteArrayData, ByteArrayData> deleter = new IBLTTransactionMap<ByteArrayData, ByteArrayData>(
+                factory.createIblt(), new ByteArrayDataTransactionCoder(params, salt, 8, 16));
+        deleter.deleteTransactions(transactions.subList(10, 40));
+        IBLT<ByteArrayData, ByteArrayData> rescanned = copy(factory, sender.getIBLT());
+        factory.add(rescanned, deleter.getIBLT());
+        IBLT<ByteArrayData, ByteArrayData> peeled = copy(factory, rescanned);
+        Cell<ByteArrayData, ByteArrayData>[] peeledCells = peeled.getCells().clone();
+
+        ResidualData<ByteArrayData, ByteArrayData> expected = rescanned.listEntries(null);
+        ResidualData<ByteArrayData, ByteArrayData> actual = new PeelingDecoder<ByteArrayData, ByteArrayData>(peeled).listEntries(null);
+        assertEquals(expected.getExtraEntries(), actual.getExtraEntries());
+        assertEquals(expected.getAbsentEntries(), actual.getAbsentEntries());
+        // The original cells are back in place, and empty
+        for (int i = 0; i < peeledCells.length; i++) {
+            assertSame(peeledCells[i], peeled.getCells()[i]);
+            assertTrue(peeledCells[i].isEmpty());
+        }
+
+        IBLTTransactionMap<ByteArrayData, ByteArrayData> receiver = new IBLTTransactionMap<ByteArrayData, ByteArrayData>(
+                copy(factory, sender.getIBLT()), new ByteArrayDataTransactionCoder(params, salt, 8, 16));
+        receiver.deleteTransactions(transactions.subList(10, 40));
+        ResidualTransactions residual = receiver.decodeRemaining();
+        assertEquals(new HashSet<Transaction>(transactions.subList(0, 10)), new HashSet<Transaction>(residual.getExtraTransactions()));
+        assertEquals(new HashSet<Transaction>(transactions.subList(30, 40)), new HashSet<Transaction>(residual.getAbsentTransactions()));
+    }
+
+    private IBLT<ByteArrayData, ByteArrayData> copy(ByteArrayDataIBLTFactory factory, IBLT<ByteArrayData, ByteArrayData> iblt) {
+        IBLT<ByteArrayData, ByteArrayData> copy = factory.createIblt();
+        factory.add(copy, iblt);
+        return copy;
+    }
+
+    private IBLTTransactionMap<ByteArrayData, ByteArrayData> createMap(ByteArrayDataIBLTFactory factory) {
+        return new IBLTTransactionMap<ByteArrayData, ByteArrayData>(factory.createIblt(),
+                new ByteArrayDataTransactionCoder(params, salt, 8, 16));
+    }
+
+    private void assertCellsEqual(IBLT<ByteArrayData, ByteArrayData> expected, IBLT<ByteArrayData, ByteArrayData> actual) {
+        Cell<ByteArrayData, ByteArrayData>[] expectedCells = expected.getCells();
+        Cell<ByteArrayData, ByteArrayData>[] actualCells = actual.getCells();
+        assertEquals(expectedCells.length, actualCells.length);
+        for (int i = 0; i < expectedCells.length; i++) {
+            assertEquals(expectedCells[i].getCount(), actualCells[i].getCount());
+            assertArrayEquals(expectedCells[i].getKeySum().getValue(), actualCells[i].getKeySum().getValue());
+            assertArrayEquals(expectedCells[i].getValueSum().getValue(), actualCells[i].getValueSum().getValue());
+            assertArrayEquals(expectedCells[i].getHashKeySum().getValue(), actualCells[i].getHashKeySum().getValue());
+        }
+    }
+}
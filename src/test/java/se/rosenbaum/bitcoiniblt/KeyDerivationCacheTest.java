@@ -0,0 +1,92 @@
+package se.rosenbaum.bitcoiniblt;
+
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+import se.rosenbaum.bitcoiniblt.bytearraydata.ByteArrayDataTransactionCoder;
+import se.rosenbaum.bitcoiniblt.longdata.LongDataTransactionCoder;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class KeyDerivationCacheTest extends CoderTest {
+    private NetworkParameters params = MainNetParams.get();
+    private byte[] salt = new byte[32];
+
+    @Test
+    public void testHitsMissesAndEviction() {
+        List<Transaction> transactions = createTransactions(params, 3);
+        KeyDerivationCache sut = new KeyDerivationCache(2);
+
+        byte[] key = sut.getKey(transactions.get(0).getHash(), salt);
+        assertArrayEquals(Arrays.copyOf(KeyDerivationCache.deriveKey(transactions.get(0).getHash(), salt),
+                KeyDerivationCache.DEFAULT_PREFIX_SIZE), key);
+        assertSame(key, sut.getKey(transactions.get(0).getHash(), salt.clone()));
+        assertEquals(1, sut.getHitCount());
+        assertEquals(1, sut.getMissCount());
+
+        // Another salt is a miss
+        byte[] otherSalt = new byte[32];
+        otherSalt[0] = 1;
+        sut.getKey(transactions.get(0).getHash(), otherSalt);
+        assertEquals(2, sut.getMissCount());
+
+        // Transaction 0 is least recently used and gets evicted
+        sut.getKey(transactions.get(1).getHash(), salt);
+        sut.getKey(transactions.get(2).getHash(), salt);
+        assertEquals(2, sut.size());
+        sut.getKey(transactions.get(0).getHash(), otherSalt);
+        assertEquals(5, sut.getMissCount());
+    }
+
+    @Test
+    public void testAlternatingSalts() {
+        List<Transaction> transactions = createTransactions(params, 10);
+        KeyDerivationCache sut = new KeyDerivationCache(20);
+        byte[] otherSalt = new byte[32];
+        otherSalt[0] = 1;
+        for (int round = 0; round < 3; round++) {
+            for (Transaction transaction : transactions) {
+                sut.getKey(transaction.getHash(), salt);
+                sut.getKey(transaction.getHash(), otherSalt);
+            }
+        }
+        // Each salt's keys are derived once and don't evict the other salt's
+        assertEquals(20, sut.getMissCount());
+        assertEquals(40, sut.getHitCount());
+        assertEquals(20, sut.size());
+    }
+
+    @Test
+    public void testLongerKeysThanPrefix() {
+        Transaction transaction = createTransactions(params, 1).get(0);
+        KeyDerivationCache cache = new KeyDerivationCache(100);
+        ByteArrayDataTransactionCoder coder = new ByteArrayDataTransactionCoder(params, salt, 16, 16, cache);
+        assertEquals(new ByteArrayDataTransactionCoder(params, salt, 16, 16).encodeTransaction(transaction),
+                coder.encodeTransaction(transaction));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSharedBetweenCoders() {
+        List<Transaction> transactions = createTransactions(params, 5);
+        KeyDerivationCache cache = new KeyDerivationCache(100);
+        ByteArrayDataTransactionCoder byteArrayCoder = new ByteArrayDataTransactionCoder(params, salt, 8, 16, cache);
+        LongDataTransactionCoder longCoder = new LongDataTransactionCoder(params, salt, cache);
+
+        for (Transaction transaction : transactions) {
+            assertEquals(new ByteArrayDataTransactionCoder(params, salt, 8, 16).encodeTransaction(transaction),
+                    byteArrayCoder.encodeTransaction(transaction));
+            assertEquals(new LongDataTransactionCoder(params, salt).encodeTransaction(transaction),
+                    longCoder.encodeTransaction(transaction));
+            byteArrayCoder.isEncoded(transaction);
+        }
+        assertEquals(5, cache.getMissCount());
+        assertEquals(10, cache.getHitCount());
+    }
+}
@@ -0,0 +1,67 @@
+package se.rosenbaum.bitcoiniblt;
+
+import org.junit.Test;
+import se.rosenbaum.bitcoiniblt.bytearraydata.IBLTUtils;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.data.ByteArrayData;
+import se.rosenbaum.iblt.util.ResidualData;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PeelingDecoderTest {
+    private static final int CELL_COUNT = 30000;
+    private static final int HASH_FUNCTION_COUNT = 3;
+    private Random random = new Random(1);
+
+    private ByteArrayData randomData(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return new ByteArrayData(bytes);
+    }
+
+    private PeelingDecoder<ByteArrayData, ByteArrayData> createDecoder(IBLT<ByteArrayData, ByteArrayData> iblt) {
+        return new PeelingDecoder<ByteArrayData, ByteArrayData>(iblt);
+    }
+
+    @Test
+    public void testSmallDiff() {
+        IBLT<ByteArrayData, ByteArrayData> iblt = new IBLTUtils().createIblt(CELL_COUNT, HASH_FUNCTION_COUNT, 8, 16, 4);
+        Map<ByteArrayData, ByteArrayData> extra = new HashMap<ByteArrayData, ByteArrayData>();
+        Map<ByteArrayData, ByteArrayData> absent = new HashMap<ByteArrayData, ByteArrayData>();
+        for (int i = 0; i < 100; i++) {
+            ByteArrayData key = randomData(8);
+            ByteArrayData value = randomData(16);
+            if (i % 2 == 0) {
+                extra.put(key, value);
+                iblt.insert(key, value);
+            } else {
+                absent.put(key, value);
+                iblt.delete(key, value);
+            }
+        }
+
+        PeelingDecoder<ByteArrayData, ByteArrayData> sut = createDecoder(iblt);
+        ResidualData<ByteArrayData, ByteArrayData> result = sut.listEntries(null);
+        assertEquals(extra, result.getExtraEntries());
+        assertEquals(absent, result.getAbsentEntries());
+        // Each entry is queued once per cell by the initial scan and once per cell when peeled,
+        // far from one sweep of the table per round
+        assertTrue(sut.getCheckedCellCount() <= 2 * 100 * HASH_FUNCTION_COUNT);
+    }
+
+    @Test
+    public void testUndecodable() {
+        IBLT<ByteArrayData, ByteArrayData> iblt = new IBLTUtils().createIblt(CELL_COUNT, HASH_FUNCTION_COUNT, 8, 16, 4);
+        ByteArrayData key = randomData(8);
+        // Two entries with the same key never leave a pure cell
+        iblt.insert(key, randomData(16));
+        iblt.insert(key, randomData(16));
+        assertNull(createDecoder(iblt).listEntries(null));
+    }
+}
@@ -0,0 +1,42 @@
+package se.rosenbaum.bitcoiniblt;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+
+public class SameAsBlockTransactionSorterTest extends CoderTest {
+    private NetworkParameters params = MainNetParams.get();
+
+    @Test
+    public void testSort() {
+        List<Transaction> transactions = createTransactions(params, 30);
+        List<Transaction> blockTransactions = transactions.subList(0, 20);
+        Block block = createMock(Block.class);
+        expect(block.getTransactions()).andReturn(blockTransactions).anyTimes();
+        replayAll();
+
+        // Some block transactions, some others, shuffled
+        List<Transaction> list = new ArrayList<Transaction>(transactions.subList(5, 30));
+        Collections.shuffle(list, new Random(1));
+        List<Transaction> copy = new ArrayList<Transaction>(list);
+
+        SameAsBlockTransactionSorter sut = new SameAsBlockTransactionSorter(block);
+        assertEquals(transactions.subList(5, 20), sut.sort(list));
+        assertEquals(copy, list);
+        // Sorting again uses the index built by the first sort
+        assertEquals(transactions.subList(5, 20), sut.sort(list));
+
+        SameAsBlockTransactionSorter precomputed = new SameAsBlockTransactionSorter(SameAsBlockTransactionSorter.createPositions(block));
+        assertEquals(transactions.subList(5, 20), precomputed.sort(list));
+    }
+}
@@ -1,10 +1,27 @@
 package se.rosenbaum.bitcoiniblt.bytearraydata;
 
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
 import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+import se.rosenbaum.bitcoiniblt.SliceWriter;
 import se.rosenbaum.iblt.data.ByteArrayData;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * User: kalle
@@ -21,6 +38,101 @@ public class ByteArrayDataTransactionCoderTest {
 
     }
 
+    @Test
+    public void testStreamingEncodeSameAsMapEncode() {
+        // Value size 7 makes sure that the last slice needs padding
+        ByteArrayDataTransactionCoder sut = new ByteArrayDataTransactionCoder(MainNetParams.get(), new byte[32], 8, 7);
+        Transaction transaction = createTransaction(MainNetParams.get());
+
+        Map<ByteArrayData, ByteArrayData> expected = sut.encodeTransaction(transaction);
+
+        final Map<ByteArrayData, ByteArrayData> actual = new HashMap<ByteArrayData, ByteArrayData>();
+        int sliceCount = sut.encodeTransaction(transaction, new SliceWriter<ByteArrayData, ByteArrayData>() {
+            public void writeSlice(ByteArrayData key, ByteArrayData value) {
+                // The coder reuses key and value, so we must copy them
+                actual.put(copy(key), copy(value));
+            }
+        });
+
+        assertEquals(expected.size(), sliceCount);
+        assertEquals(expected, actual);
+
+        List<Transaction> decoded = sut.decodeTransactions(actual);
+        assertEquals(1, decoded.size());
+        assertEquals(transaction, decoded.get(0));
+    }
+
+    @Test
+    public void testParallelDecodeTransactions() {
+        ByteArrayDataTransactionCoder sut = new ByteArrayDataTransactionCoder(MainNetParams.get(), new byte[32], 8, 16);
+        Map<ByteArrayData, ByteArrayData> entries = new HashMap<ByteArrayData, ByteArrayData>();
+        Set<Transaction> transactions = new HashSet<Transaction>();
+        for (int i = 0; i < 50; i++) {
+            Transaction transaction = createTransaction(MainNetParams.get());
+            transactions.add(transaction);
+            entries.putAll(sut.encodeTransaction(transaction));
+        }
+        assertEquals(transactions, new HashSet<Transaction>(sut.decodeTransactions(entries)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            ByteArrayDataTransactionCoder parallel = new ByteArrayDataTransactionCoder(MainNetParams.get(), new byte[32], 8, 16, null, executor);
+            assertEquals(transactions, new HashSet<Transaction>(parallel.decodeTransactions(entries)));
+
+            // Zeroing the first slice of a transaction leaves it without inputs, which fails the whole decode
+            for (Map.Entry<ByteArrayData, ByteArrayData> entry : entries.entrySet()) {
+                if (new ByteArrayKeyData(entry.getKey().getValue()).getIndex() == 0) {
+                    entry.setValue(data(new byte[16]));
+                    break;
+                }
+            }
+            assertNull(parallel.decodeTransactions(entries));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDecodeFailsWithoutLastSlice() {
+        ByteArrayDataTransactionCoder sut = new ByteArrayDataTransactionCoder(MainNetParams.get(), new byte[32], 8, 16);
+        List<Map<ByteArrayData, ByteArrayData>> encoded = new ArrayList<Map<ByteArrayData, ByteArrayData>>();
+        for (int i = 0; i < 40; i++) {
+            encoded.add(sut.encodeTransaction(createTransaction(MainNetParams.get())));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            ByteArrayDataTransactionCoder parallel = new ByteArrayDataTransactionCoder(MainNetParams.get(), new byte[32], 8, 16, null, executor);
+            for (Map<ByteArrayData, ByteArrayData> truncated : encoded) {
+                Map<ByteArrayData, ByteArrayData> entries = new HashMap<ByteArrayData, ByteArrayData>();
+                for (Map<ByteArrayData, ByteArrayData> transaction : encoded) {
+                    entries.putAll(transaction);
+                }
+                ByteArrayData lastSlice = null;
+                for (ByteArrayData key : truncated.keySet()) {
+                    if (lastSlice == null || new ByteArrayKeyData(key.getValue()).getIndex() > new ByteArrayKeyData(lastSlice.getValue()).getIndex()) {
+                        lastSlice = key;
+                    }
+                }
+                entries.remove(lastSlice);
+                assertNull(sut.decodeTransactions(entries));
+                assertNull(parallel.decodeTransactions(entries));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    Transaction createTransaction(NetworkParameters params) {
+        Transaction transaction = new Transaction(params);
+        transaction.addInput(new TransactionInput(params, transaction, new byte[] {1, 2, 3}));
+        transaction.addOutput(Coin.COIN, new ECKey());
+        return transaction;
+    }
+
+    ByteArrayData copy(ByteArrayData data) {
+        return data(Arrays.copyOf(data.getValue(), data.getValue().length));
+    }
+
     ByteArrayData data(byte[] val) {
         return new ByteArrayData(val);
     }
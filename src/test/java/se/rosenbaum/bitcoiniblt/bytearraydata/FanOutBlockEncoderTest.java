@@ -0,0 +1,53 @@
+package se.rosenbaum.bitcoiniblt.bytearraydata;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+import se.rosenbaum.bitcoiniblt.BlockCoder;
+import se.rosenbaum.bitcoiniblt.CoderTest;
+import se.rosenbaum.bitcoiniblt.SameAsBlockTransactionSorter;
+import se.rosenbaum.iblt.Cell;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.data.ByteArrayData;
+
+import java.util.List;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FanOutBlockEncoderTest extends CoderTest {
+    private NetworkParameters params = MainNetParams.get();
+    private byte[] salt = new byte[32];
+
+    @Test
+    public void testSameAsBlockCoder() {
+        List<Transaction> transactions = createTransactions(params, 50);
+        Block block = createMock(Block.class);
+        expect(block.getTransactions()).andReturn(transactions).anyTimes();
+        replayAll();
+
+        int[] cellCounts = new int[] {300, 900, 1500};
+        FanOutBlockEncoder sut = new FanOutBlockEncoder(new ByteArrayDataTransactionCoder(params, salt, 8, 16), 3, 8, 16, 4);
+        List<IBLT<ByteArrayData, ByteArrayData>> iblts = sut.encode(block, cellCounts);
+        assertEquals(cellCounts.length, iblts.size());
+
+        for (int i = 0; i < cellCounts.length; i++) {
+            BlockCoder<ByteArrayData, ByteArrayData> blockCoder = new BlockCoder<ByteArrayData, ByteArrayData>(
+                    new IBLTUtils().createIblt(cellCounts[i], 3, 8, 16, 4),
+                    new ByteArrayDataTransactionCoder(params, salt, 8, 16), new SameAsBlockTransactionSorter(block));
+            Cell<ByteArrayData, ByteArrayData>[] expected = blockCoder.encode(block).getCells();
+            Cell<ByteArrayData, ByteArrayData>[] actual = iblts.get(i).getCells();
+            assertEquals(expected.length, actual.length);
+            for (int cell = 0; cell < expected.length; cell++) {
+                assertEquals(expected[cell].getCount(), actual[cell].getCount());
+                assertArrayEquals(expected[cell].getKeySum().getValue(), actual[cell].getKeySum().getValue());
+                assertArrayEquals(expected[cell].getValueSum().getValue(), actual[cell].getValueSum().getValue());
+                assertArrayEquals(expected[cell].getHashKeySum().getValue(), actual[cell].getHashKeySum().getValue());
+            }
+            assertEquals(blockCoder.getEncodedEntriesCount(), sut.getEncodedEntriesCount());
+        }
+    }
+}
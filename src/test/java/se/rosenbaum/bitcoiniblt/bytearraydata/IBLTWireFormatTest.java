@@ -0,0 +1,168 @@
+package se.rosenbaum.bitcoiniblt.bytearraydata;
+
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+import se.rosenbaum.bitcoiniblt.CoderTest;
+import se.rosenbaum.bitcoiniblt.IBLTTransactionMap;
+import se.rosenbaum.iblt.Cell;
+import se.rosenbaum.iblt.IBLT;
+import se.rosenbaum.iblt.data.ByteArrayData;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IBLTWireFormatTest extends CoderTest {
+    private NetworkParameters params = MainNetParams.get();
+    private byte[] salt = new byte[32];
+
+    @Test
+    public void testWriteReadAllFlags() {
+        List<Transaction> transactions = createTransactions(params, 12);
+        IBLT<ByteArrayData, ByteArrayData> heapIblt = createIblt(transactions, false);
+        IBLT<ByteArrayData, ByteArrayData> offHeapIblt = createIblt(transactions, true);
+        int denseSize = 0;
+        for (int flags = 0; flags < 4; flags++) {
+            IBLTWireFormat format = new IBLTWireFormat(flags, 900, 3, 8, 16, 4, salt);
+            byte[] bytes = format.write(heapIblt);
+            assertArrayEquals(bytes, format.write(offHeapIblt));
+            if (flags == 0) {
+                denseSize = bytes.length;
+            } else {
+                assertTrue(bytes.length < denseSize);
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            IBLTWireFormat header = IBLTWireFormat.readHeader(buffer);
+            assertEquals(flags, header.getFlags());
+            assertEquals(900, header.getCellCount());
+            assertEquals(3, header.getHashFunctionCount());
+            assertArrayEquals(salt, header.getSalt());
+            assertCellsEqual(heapIblt, header.readIblt(buffer));
+        }
+    }
+
+    @Test
+    public void testWriteReadIbltWithTrailingBytes() {
+        IBLTWireFormat format = new IBLTWireFormat(0, 900, 3, 8, 16, 4, salt);
+        byte[] bytes = format.write(createIblt(createTransactions(params, 12), false));
+        // Like a message with more data after the IBLT
+        ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length + 100));
+
+        IBLT<ByteArrayData, ByteArrayData> iblt = IBLTWireFormat.readHeader(buffer).readIblt(buffer);
+        assertArrayEquals(bytes, format.write(iblt));
+    }
+
+    @Test
+    public void testDecodeReadIblt() {
+        List<Transaction> transactions = createTransactions(params, 12);
+        IBLTWireFormat format = new IBLTWireFormat(0, 900, 3, 8, 16, 4, salt);
+        ByteBuffer buffer = ByteBuffer.wrap(format.write(createIblt(transactions, false))).asReadOnlyBuffer();
+
+        IBLTWireFormat header = IBLTWireFormat.readHeader(buffer);
+        IBLTTransactionMap<ByteArrayData, ByteArrayData> map = new IBLTTransactionMap<ByteArrayData, ByteArrayData>(
+                header.readIblt(buffer), new ByteArrayDataTransactionCoder(params, header.getSalt(), header.getKeySize(), header.getValueSize()));
+        map.deleteTransactions(transactions.subList(0, 4));
+
+        assertEquals(new HashSet<Transaction>(transactions.subList(4, 10)),
+                new HashSet<Transaction>(map.decodeRemaining().getExtraTransactions()));
+    }
+
+    @Test
+    public void testRejectsHostileHeaders() {
+        byte[] valid = new IBLTWireFormat(0, 900, 3, 8, 16, 4, salt).write(new IBLTUtils().createIblt(900, 3, 8, 16, 4));
+        assertHeaderRejected(Arrays.copyOf(valid, IBLTWireFormat.HEADER_SIZE - 1));
+        // Cell count
+        assertHeaderRejected(withInt(valid, 2, 0));
+        assertHeaderRejected(withInt(valid, 2, -900));
+        // Big enough to overflow cellCount * cellSize
+        assertHeaderRejected(withInt(valid, 2, Integer.MAX_VALUE / 8));
+        // Hash function count, key size, value size and hash sum size
+        for (int offset = 6; offset < 10; offset++) {
+            byte[] bytes = valid.clone();
+            bytes[offset] = 0;
+            assertHeaderRejected(bytes);
+        }
+    }
+
+    @Test
+    public void testRejectsTruncatedCells() {
+        List<Transaction> transactions = createTransactions(params, 12);
+        IBLT<ByteArrayData, ByteArrayData> iblt = createIblt(transactions, false);
+        for (int flags = 0; flags < 4; flags++) {
+            byte[] bytes = new IBLTWireFormat(flags, 900, 3, 8, 16, 4, salt).write(iblt);
+            for (int length : new int[] {IBLTWireFormat.HEADER_SIZE + 10, bytes.length - 1}) {
+                ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOf(bytes, length));
+                IBLTWireFormat header = IBLTWireFormat.readHeader(buffer);
+                try {
+                    header.readIblt(buffer);
+                    fail("Read truncated IBLT with flags " + flags + " and length " + length);
+                } catch (RuntimeException e) {
+                    assertTrue(e.getMessage(), e.getMessage().startsWith("Truncated IBLT"));
+                }
+            }
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testRejectsBitmapBeyondLastCell() {
+        // 899 cells leave the highest bit of the last bitmap byte unused
+        byte[] bytes = new IBLTWireFormat(IBLTWireFormat.FLAG_SKIP_EMPTY_CELLS, 899, 3, 8, 16, 4, salt)
+                .write(new IBLTUtils().createIblt(899, 3, 8, 16, 4));
+        bytes[IBLTWireFormat.HEADER_SIZE + 899 / 8] |= (byte) 0x80;
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        IBLTWireFormat.readHeader(buffer).readIblt(buffer);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testWriteRejectsMismatchingCellSizes() {
+        new IBLTWireFormat(IBLTWireFormat.FLAG_SKIP_EMPTY_CELLS, 900, 3, 8, 16, 4, salt)
+                .write(new IBLTUtils().createIblt(900, 3, 8, 12, 4));
+    }
+
+    private byte[] withInt(byte[] bytes, int offset, int value) {
+        byte[] result = bytes.clone();
+        ByteBuffer.wrap(result).putInt(offset, value);
+        return result;
+    }
+
+    private void assertHeaderRejected(byte[] bytes) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            IBLTWireFormat.readHeader(buffer).readIblt(buffer);
+            fail("Accepted header " + Arrays.toString(Arrays.copyOf(bytes, 10)));
+        } catch (RuntimeException e) {
+            // Only our own exceptions, not BufferUnderflowException or IllegalArgumentException from the buffers
+            assertEquals(RuntimeException.class, e.getClass());
+        }
+    }
+
+    private IBLT<ByteArrayData, ByteArrayData> createIblt(List<Transaction> transactions, boolean offHeap) {
+        IBLTTransactionMap<ByteArrayData, ByteArrayData> map = new IBLTTransactionMap<ByteArrayData, ByteArrayData>(
+                new IBLTUtils().createIblt(900, 3, 8, 16, 4, offHeap), new ByteArrayDataTransactionCoder(params, salt, 8, 16));
+        map.putTransactions(transactions.subList(0, 10));
+        // Some negative counts too
+        map.deleteTransactions(transactions.subList(10, 12));
+        return map.getIBLT();
+    }
+
+    private void assertCellsEqual(IBLT<ByteArrayData, ByteArrayData> expected, IBLT<ByteArrayData, ByteArrayData> actual) {
+        Cell<ByteArrayData, ByteArrayData>[] expectedCells = expected.getCells();
+        Cell<ByteArrayData, ByteArrayData>[] actualCells = actual.getCells();
+        assertEquals(expectedCells.length, actualCells.length);
+        for (int i = 0; i < expectedCells.length; i++) {
+            assertEquals(expectedCells[i].getCount(), actualCells[i].getCount());
+            assertArrayEquals(expectedCells[i].getKeySum().getValue(), actualCells[i].getKeySum().getValue());
+            assertArrayEquals(expectedCells[i].getValueSum().getValue(), actualCells[i].getValueSum().getValue());
+            assertArrayEquals(expectedCells[i].getHashKeySum().getValue(), actualCells[i].getHashKeySum().getValue());
+        }
+    }
+}
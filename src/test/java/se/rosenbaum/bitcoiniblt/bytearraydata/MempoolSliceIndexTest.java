@@ -0,0 +1,67 @@
+package se.rosenbaum.bitcoiniblt.bytearraydata;
+
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+import se.rosenbaum.bitcoiniblt.CoderTest;
+import se.rosenbaum.iblt.data.ByteArrayData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MempoolSliceIndexTest extends CoderTest {
+    private NetworkParameters params = MainNetParams.get();
+
+    @Test
+    public void testShortKeys() {
+        testAddGetRemove(8);
+    }
+
+    @Test
+    public void testKeysLongerThanTruncatedPrefix() {
+        testAddGetRemove(16);
+    }
+
+    private void testAddGetRemove(int keySize) {
+        ByteArrayDataTransactionCoder sut = new ByteArrayDataTransactionCoder(params, new byte[32], keySize, 9);
+        List<Transaction> transactions = createTransactions(params, 200);
+        List<Map<ByteArrayData, ByteArrayData>> expectedSlices = new ArrayList<Map<ByteArrayData, ByteArrayData>>();
+        for (Transaction transaction : transactions) {
+            expectedSlices.add(sut.encodeTransaction(transaction));
+        }
+        Map<ByteArrayData, Map<ByteArrayData, ByteArrayData>> encoded = sut.getEncodedTransactions();
+        assertEquals(200, encoded.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            assertTrue(sut.isEncoded(transactions.get(i)));
+            assertEquals(expectedSlices.get(i), encoded.get(new ByteArrayData(sut.getKeyBytes(transactions.get(i)))));
+        }
+
+        for (int i = 0; i < transactions.size(); i += 2) {
+            sut.removeEncoded(transactions.get(i));
+        }
+        assertEquals(100, encoded.size());
+        for (int i = 0; i < transactions.size(); i++) {
+            ByteArrayData key = new ByteArrayData(sut.getKeyBytes(transactions.get(i)));
+            if (i % 2 == 0) {
+                assertFalse(sut.isEncoded(transactions.get(i)));
+                assertNull(encoded.get(key));
+            } else {
+                assertEquals(expectedSlices.get(i), encoded.get(key));
+            }
+        }
+
+        int iterated = 0;
+        for (Map.Entry<ByteArrayData, Map<ByteArrayData, ByteArrayData>> entry : encoded.entrySet()) {
+            assertEquals(encoded.get(entry.getKey()), entry.getValue());
+            iterated++;
+        }
+        assertEquals(100, iterated);
+    }
+}
@@ -0,0 +1,82 @@
+package se.rosenbaum.bitcoiniblt.bytearraydata;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.junit.Test;
+import se.rosenbaum.bitcoiniblt.BlockCoder;
+import se.rosenbaum.bitcoiniblt.CoderTest;
+import se.rosenbaum.bitcoiniblt.MempoolIBLT;
+import se.rosenbaum.bitcoiniblt.ResidualTransactions;
+import se.rosenbaum.bitcoiniblt.SameAsBlockTransactionSorter;
+import se.rosenbaum.bitcoiniblt.TransactionSorter;
+import se.rosenbaum.iblt.data.ByteArrayData;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingIBLTDecoderTest extends CoderTest {
+    private NetworkParameters params = MainNetParams.get();
+    private byte[] salt = new byte[32];
+
+    @Test
+    public void testDecodeInChunks() {
+        ByteArrayDataIBLTFactory factory = new ByteArrayDataIBLTFactory(900, 3, 8, 16, 4);
+        List<Transaction> transactions = createTransactions(params, 60);
+        List<Transaction> blockTransactions = transactions.subList(0, 50);
+
+        Block block = createMock(Block.class);
+        expect(block.getTransactions()).andReturn(blockTransactions).anyTimes();
+        Block header = createMock(Block.class);
+        Capture<Transaction> capture = new Capture<Transaction>(CaptureType.ALL);
+        header.addTransaction(EasyMock.capture(capture));
+        expectLastCall().anyTimes();
+        replayAll();
+
+        TransactionSorter sorter = new SameAsBlockTransactionSorter(block);
+        BlockCoder<ByteArrayData, ByteArrayData> sender = new BlockCoder<ByteArrayData, ByteArrayData>(factory.createIblt(),
+                new ByteArrayDataTransactionCoder(params, salt, 8, 16), sorter);
+        IBLTWireFormat format = new IBLTWireFormat(0, 900, 3, 8, 16, 4, salt);
+        ByteBuffer sent = ByteBuffer.wrap(format.write(sender.encode(block)));
+
+        MempoolIBLT<ByteArrayData, ByteArrayData> mempool = new MempoolIBLT<ByteArrayData, ByteArrayData>(factory,
+                new ByteArrayDataTransactionCoder(params, salt, 8, 16));
+        for (Transaction transaction : transactions.subList(2, 60)) {
+            mempool.addTransaction(transaction);
+        }
+
+        StreamingIBLTDecoder sut = new StreamingIBLTDecoder(IBLTWireFormat.readHeader(sent), mempool);
+        int chunkSize = 37; // Not a multiple of the cell size
+        while (sent.hasRemaining()) {
+            ByteBuffer chunk = sent.slice();
+            chunk.limit(Math.min(chunkSize, chunk.remaining()));
+            sent.position(sent.position() + chunk.limit());
+            sut.receive(chunk);
+            if (sut.getReceivedCellCount() == 600) {
+                assertTrue(sut.getPeeledEntryCount() > 0);
+            }
+        }
+        assertEquals(900, sut.getReceivedCellCount());
+
+        ResidualTransactions residual = sut.finish();
+        assertNotNull(residual);
+        assertEquals(new HashSet<Transaction>(transactions.subList(0, 2)), new HashSet<Transaction>(residual.getExtraTransactions()));
+        assertEquals(new HashSet<Transaction>(transactions.subList(50, 60)), new HashSet<Transaction>(residual.getAbsentTransactions()));
+
+        BlockCoder<ByteArrayData, ByteArrayData> receiver = new BlockCoder<ByteArrayData, ByteArrayData>(factory.createIblt(),
+                mempool.getTransactionCoder(), sorter);
+        assertNotNull(receiver.decode(header, mempool.getTransactions(), residual));
+        assertEquals(blockTransactions, capture.getValues());
+    }
+}
@@ -0,0 +1,82 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import org.tukaani.xz.XZInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The compression of a corpus file, detected from its first bytes rather than its name.
+ */
+public enum CorpusCompression {
+    NONE(new byte[0]),
+    XZ(new byte[]{(byte) 0xfd, '7', 'z', 'X', 'Z', 0}),
+    GZIP(new byte[]{0x1f, (byte) 0x8b}),
+    ZSTD(new byte[]{0x28, (byte) 0xb5, 0x2f, (byte) 0xfd});
+
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int READ_AHEAD = 4;
+    // Bigger xz blocks are decompressed as a stream instead
+    private static final long MAX_PARALLEL_BLOCK_SIZE = 1 << 27;
+
+    private byte[] magic;
+
+    private CorpusCompression(byte[] magic) {
+        this.magic = magic;
+    }
+
+    public static CorpusCompression detect(File file) throws IOException {
+        byte[] header = new byte[6];
+        InputStream in = new FileInputStream(file);
+        int length = 0;
+        try {
+            int read;
+            while (length < header.length && (read = in.read(header, length, header.length - length)) != -1) {
+                length += read;
+            }
+        } finally {
+            in.close();
+        }
+        return detect(Arrays.copyOf(header, length));
+    }
+
+    static CorpusCompression detect(byte[] header) {
+        for (CorpusCompression compression : values()) {
+            if (compression != NONE && header.length >= compression.magic.length
+                    && Arrays.equals(compression.magic, Arrays.copyOf(header, compression.magic.length))) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Opens file for reading its uncompressed records. Decompression runs on executor, ahead of
+     * the reader.
+     */
+    public static InputStream open(File file, ExecutorService executor) throws IOException {
+        CorpusCompression compression = detect(file);
+        switch (compression) {
+            case NONE:
+                return new BufferedInputStream(new FileInputStream(file), CHUNK_SIZE);
+            case XZ:
+                if (ParallelXZInputStream.isParallelizable(file, MAX_PARALLEL_BLOCK_SIZE)) {
+                    return new ParallelXZInputStream(file, executor, READ_AHEAD);
+                }
+                return new ReadAheadInputStream(new XZInputStream(new BufferedInputStream(new FileInputStream(file), CHUNK_SIZE)),
+                        executor, CHUNK_SIZE, READ_AHEAD);
+            case GZIP:
+                return new ReadAheadInputStream(new GZIPInputStream(new FileInputStream(file), CHUNK_SIZE),
+                        executor, CHUNK_SIZE, READ_AHEAD);
+            default:
+                throw new RuntimeException(compression + " compressed corpus files are not supported, decompress "
+                        + file + " first");
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CorpusCompressionTest {
+    private static final int RECORD_COUNT = 5000;
+    private ExecutorService executor;
+    private File directory;
+    private byte[] uncompressed;
+
+    @Before
+    public void setup() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        directory = File.createTempFile("corpus", null);
+        directory.delete();
+        directory.mkdirs();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int blockNumber = RecordInputStream.MIN_WARM_BLOCK_HEIGHT;
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            if (i % 100 == 0) {
+                out.write(MappedCorpusFileTest.record(i, Type.COINBASE, ++blockNumber, i));
+            } else {
+                out.write(MappedCorpusFileTest.record(i, Type.KNOWN, blockNumber, i));
+            }
+        }
+        uncompressed = out.toByteArray();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private File writeXZ(String name, int recordsPerBlock) throws IOException {
+        File file = new File(directory, name);
+        XZOutputStream out = new XZOutputStream(new FileOutputStream(file), new LZMA2Options());
+        for (int offset = 0; offset < uncompressed.length; offset += recordsPerBlock * MappedCorpusFile.RECORD_SIZE) {
+            out.write(uncompressed, offset, Math.min(recordsPerBlock * MappedCorpusFile.RECORD_SIZE, uncompressed.length - offset));
+            out.endBlock();
+        }
+        out.close();
+        return file;
+    }
+
+    private File write(String name, byte[] bytes, boolean gzip) throws IOException {
+        File file = new File(directory, name);
+        OutputStream out = new FileOutputStream(file);
+        if (gzip) {
+            out = new GZIPOutputStream(out);
+        }
+        out.write(bytes);
+        out.close();
+        return file;
+    }
+
+    private byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[777];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testDetect() throws IOException {
+        assertEquals(CorpusCompression.NONE, CorpusCompression.detect(write("plain", uncompressed, false)));
+        assertEquals(CorpusCompression.GZIP, CorpusCompression.detect(write("gzip", uncompressed, true)));
+        assertEquals(CorpusCompression.XZ, CorpusCompression.detect(writeXZ("xz", RECORD_COUNT)));
+        assertEquals(CorpusCompression.ZSTD, CorpusCompression.detect(new byte[]{0x28, (byte) 0xb5, 0x2f, (byte) 0xfd, 0}));
+        assertEquals(CorpusCompression.NONE, CorpusCompression.detect(write("empty", new byte[0], false)));
+    }
+
+    @Test
+    public void testParallelXZ() throws IOException {
+        File file = writeXZ("au", 333);
+        assertTrue(ParallelXZInputStream.isParallelizable(file, 1 << 20));
+        InputStream in = CorpusCompression.open(file, executor);
+        assertTrue(in instanceof ParallelXZInputStream);
+        assertArrayEquals(uncompressed, readAll(in));
+    }
+
+    @Test
+    public void testSingleBlockXZ() throws IOException {
+        File file = writeXZ("au", RECORD_COUNT);
+        assertFalse(ParallelXZInputStream.isParallelizable(file, 1 << 20));
+        assertArrayEquals(uncompressed, readAll(CorpusCompression.open(file, executor)));
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        assertArrayEquals(uncompressed, readAll(CorpusCompression.open(write("au", uncompressed, true), executor)));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testZstdNotSupported() throws IOException {
+        CorpusCompression.open(write("au", new byte[]{0x28, (byte) 0xb5, 0x2f, (byte) 0xfd, 0}, false), executor);
+    }
+
+    @Test
+    public void testCorpusDataReadsCompressedFile() throws IOException {
+        writeXZ("au.xz", 1000);
+        write("sf", uncompressed, false);
+        CorpusData corpusData = new CorpusData(directory);
+        RecordCursor compressed = corpusData.getRecordCursor(CorpusData.Node.AU);
+        RecordCursor mapped = corpusData.getRecordCursor(CorpusData.Node.SF);
+        assertTrue(mapped instanceof MappedCorpusFile.Cursor);
+        int count = 0;
+        while (mapped.next()) {
+            assertTrue(compressed.next());
+            assertEquals(mapped.getTimestamp(), compressed.getTimestamp());
+            assertEquals(mapped.getTypeNumber(), compressed.getTypeNumber());
+            assertEquals(mapped.getBlockNumber(), compressed.getBlockNumber());
+            assertEquals(mapped.getTxid(), compressed.getTxid());
+            count++;
+        }
+        assertFalse(compressed.next());
+        assertEquals(RECORD_COUNT, count);
+        compressed.close();
+    }
+}
@@ -1,12 +1,20 @@
 package se.rosenbaum.bitcoiniblt.corpus;
 
-import org.bitcoinj.core.Sha256Hash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class CorpusData {
     private File corpusDirectory;
@@ -20,10 +28,15 @@ public class CorpusData {
     double extrasPerTxRate = 0;
     int lowestBlock = -1;
     int highestBlock;
-    Set<Integer> orphans;
-    Set<Integer> blocks;
-    Set<Sha256Hash> transactions = new HashSet<Sha256Hash>();
+    IntHashSet orphans;
+    IntHashSet blocks;
+    TxidHashSet transactions = new TxidHashSet();
     public static final String HIGHEST_BLOCK_HASH = "000000000000000011defeab02396f6982807ec911a9294a0c8411d0c5f2f5a3";
+    private static final Logger logger = LoggerFactory.getLogger(CorpusData.class);
+    private ConcurrentMap<Node, MappedCorpusFile> mappedFiles = new ConcurrentHashMap<Node, MappedCorpusFile>();
+    private Map<Node, NodeStatistics> nodeStatistics = new EnumMap<Node, NodeStatistics>(Node.class);
+    private ExecutorService executor;
+
     public CorpusData(File corpusDirectory) {
         this.corpusDirectory = corpusDirectory;
     }
@@ -38,93 +51,127 @@ public class CorpusData {
     }
 
 
+    /**
+     * The corpus file of node. It may be compressed, in which case its name may also end in
+     * .xz, .gz or .zst.
+     */
+    public File getFile(Node node) {
+        for (String suffix : new String[] {"", ".xz", ".gz", ".zst"}) {
+            File file = new File(corpusDirectory, node.fileName + suffix);
+            if (file.exists()) {
+                return file;
+            }
+        }
+        throw new RuntimeException("No corpus file for " + node + " in " + corpusDirectory);
+    }
+
+    /**
+     * The uncompressed file of node mapped into memory. Each file is mapped and indexed once,
+     * unless two threads happen to ask for it at the same time.
+     */
+    public MappedCorpusFile getMappedFile(Node node) throws IOException {
+        MappedCorpusFile mappedFile = mappedFiles.get(node);
+        if (mappedFile == null) {
+            mappedFile = new MappedCorpusFile(getFile(node));
+            MappedCorpusFile existing = mappedFiles.putIfAbsent(node, mappedFile);
+            if (existing != null) {
+                mappedFile = existing;
+            }
+        }
+        return mappedFile;
+    }
+
     public RecordInputStream getRecordInputStream(Node node) throws IOException {
-        FileInputStream inputStream = new FileInputStream(new File(corpusDirectory, node.fileName));
-//        XZCompressorInputStream decompressor = new XZCompressorInputStream(inputStream);
-        RecordInputStream recordInputStream = new RecordInputStream(inputStream);
-        return recordInputStream;
+        return new RecordInputStream(CorpusCompression.open(getFile(node), getExecutor()));
+    }
+
+    /**
+     * Reads uncompressed files in place and decompresses compressed ones in the background.
+     */
+    public RecordCursor getRecordCursor(Node node) throws IOException {
+        if (mappedFiles.containsKey(node) || CorpusCompression.detect(getFile(node)) == CorpusCompression.NONE) {
+            return getMappedFile(node).cursor();
+        }
+        return getRecordInputStream(node).cursor();
+    }
+
+    /**
+     * Runs the node scans and decompression. Its threads are daemons, so it is never shut down.
+     */
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "corpus");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
     }
     public interface RecordHandler {
         void handle(Record record);
     }
 
     public void getStats(Node node, RecordHandler handler) throws IOException {
-        Record record;
-
-        RecordInputStream recordInputStream = getRecordInputStream(node);
-        record = recordInputStream.readRecord();
-        while (record != null) {
-            handler.handle(record);
-            record = recordInputStream.readRecord();
+        RecordCursor cursor = getRecordCursor(node);
+        while (cursor.next()) {
+            handler.handle(cursor.toRecord());
         }
-        recordInputStream.close();
+        cursor.close();
     }
 
+    /**
+     * Scans the files of all nodes at the same time. The transactions, blocks and timespan are
+     * those seen by AU, while the extras are counted over all nodes.
+     */
     public void calculateStatistics() throws IOException {
-        Record record;
-        Record lastRecord = null;
-
-        Set<Integer> foundBlocks = new HashSet<Integer>();
-        Set<Integer> deadBlocks = new HashSet<Integer>();
-        RecordInputStream recordInputStream = getRecordInputStream(Node.AU);
-        record = recordInputStream.readRecord();
-        while (record != null) {
-            if (timespan == 0) {
-                timespan = record.timestamp;
-            }
-            if (!deadBlocks.contains(record.blockNumber)) {
-                if (record.type == Type.UNKNOWN) {
-                    extraCount++;
-                    txCount++;
-                    transactions.add(new Sha256Hash(record.txid));
-                } else if (record.type == Type.KNOWN) {
-                    txCount++;
-                    transactions.add(new Sha256Hash(record.txid));
-                } else if (record.type == Type.COINBASE) {
-                    if (!foundBlocks.contains(record.blockNumber)) {
-                        foundBlocks.add(record.blockNumber);
-                        blockCount++;
-                        this.highestBlock = record.blockNumber;
-                        if (lowestBlock == -1) {
-                            lowestBlock = record.blockNumber;
-                        }
-                    } else {
-                        deadBlocks.add(record.blockNumber);
-                    }
+        Map<Node, Future<NodeStatistics>> futures = new EnumMap<Node, Future<NodeStatistics>>(Node.class);
+        for (final Node node : Node.values()) {
+            futures.put(node, getExecutor().submit(new Callable<NodeStatistics>() {
+                public NodeStatistics call() throws IOException {
+                    return NodeStatistics.scan(node, getRecordCursor(node), node == Node.AU);
                 }
-            }
-            lastRecord = record;
-            record = recordInputStream.readRecord();
+            }));
         }
-        recordInputStream.close();
-        this.orphans = deadBlocks;
-        this.blocks = foundBlocks;
-        timespan = lastRecord.timestamp - timespan;
-        txRate = (double)txCount / timespan;
-
-        for (CorpusData.Node node : new Node[] {Node.SF, Node.SF_RN, Node.SG}) {
-            foundBlocks = new HashSet<Integer>();
-            deadBlocks = new HashSet<Integer>();
-            recordInputStream = getRecordInputStream(node);
-            record = recordInputStream.readRecord();
-            while (record != null) {
-                if (!deadBlocks.contains(record.blockNumber)) {
-                    if (record.type == Type.UNKNOWN) {
-                        extraCount++;
-                    } else if (record.type == Type.COINBASE) {
-                        if (!foundBlocks.contains(record.blockNumber)) {
-                            foundBlocks.add(record.blockNumber);
-                        } else {
-                            deadBlocks.add(record.blockNumber);
-                        }
-                    }
+        extraCount = 0;
+        for (Node node : Node.values()) {
+            NodeStatistics stats;
+            try {
+                stats = futures.get(node).get();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
                 }
-                record = recordInputStream.readRecord();
+                throw new RuntimeException(e.getCause());
             }
-            recordInputStream.close();
+            logger.info("{}", stats);
+            nodeStatistics.put(node, stats);
+            extraCount += stats.extraCount;
         }
 
+        NodeStatistics au = nodeStatistics.get(Node.AU);
+        txCount = au.txCount;
+        blockCount = au.blockCount;
+        lowestBlock = au.lowestBlock;
+        highestBlock = au.highestBlock;
+        orphans = au.deadBlocks;
+        blocks = au.foundBlocks;
+        transactions = au.transactions;
+        timespan = au.getTimespan();
+        txRate = (double)txCount / timespan;
+
         averageExtrasPerBlock = (double)extraCount / (blockCount * Node.values().length);
         extrasPerTxRate = averageExtrasPerBlock / txRate;
     }
+
+    /**
+     * @return the statistics of node from the last {@link #calculateStatistics()}.
+     */
+    public NodeStatistics getNodeStatistics(Node node) {
+        return nodeStatistics.get(node);
+    }
 }
@@ -0,0 +1,87 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CorpusDataTest {
+    private static final int WARM = RecordInputStream.MIN_WARM_BLOCK_HEIGHT;
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = File.createTempFile("corpus", null);
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private void write(CorpusData.Node node, byte[]... records) throws IOException {
+        FileOutputStream out = new FileOutputStream(new File(directory, node.fileName));
+        for (byte[] record : records) {
+            out.write(record);
+        }
+        out.close();
+    }
+
+    private byte[] r(long timestamp, Type type, int blockNumber, int txidSeed) {
+        return MappedCorpusFileTest.record(timestamp, type, blockNumber, txidSeed);
+    }
+
+    @Test
+    public void testCalculateStatistics() throws IOException {
+        write(CorpusData.Node.AU,
+                r(90, Type.COINBASE, WARM - 1, 1),
+                r(100, Type.COINBASE, WARM, 2),
+                r(101, Type.UNKNOWN, WARM, 3),
+                r(102, Type.KNOWN, WARM, 4),
+                r(103, Type.INCOMING_TX, 0, 5),
+                r(110, Type.COINBASE, WARM + 1, 6),
+                r(111, Type.KNOWN, WARM + 1, 7),
+                // A second coinbase at the same height makes it dead from here on
+                r(120, Type.COINBASE, WARM + 1, 8),
+                r(121, Type.UNKNOWN, WARM + 1, 9),
+                r(130, Type.COINBASE, WARM + 2, 10),
+                r(131, Type.UNKNOWN, WARM + 2, 11));
+        write(CorpusData.Node.SF,
+                r(100, Type.COINBASE, WARM, 2),
+                r(101, Type.UNKNOWN, WARM, 3),
+                r(102, Type.UNKNOWN, WARM, 4));
+        write(CorpusData.Node.SF_RN,
+                r(100, Type.COINBASE, WARM, 2));
+        write(CorpusData.Node.SG,
+                r(100, Type.COINBASE, WARM, 2),
+                r(101, Type.UNKNOWN, WARM, 3));
+        CorpusData sut = new CorpusData(directory);
+        sut.calculateStatistics();
+
+        assertEquals(3, sut.blockCount);
+        assertEquals(WARM, sut.lowestBlock);
+        assertEquals(WARM + 2, sut.highestBlock);
+        assertEquals(4, sut.txCount);
+        assertEquals(4, sut.transactions.size());
+        assertEquals(2 + 2 + 0 + 1, sut.extraCount);
+        assertEquals(31, sut.timespan);
+        assertTrue(sut.orphans.contains(WARM + 1));
+        assertFalse(sut.orphans.contains(WARM));
+        assertEquals(3, sut.blocks.size());
+        assertEquals(5.0 / 12, sut.averageExtrasPerBlock, 1e-9);
+        assertEquals(9, sut.getNodeStatistics(CorpusData.Node.AU).getRecordCount());
+        assertEquals(2, sut.getNodeStatistics(CorpusData.Node.SF).getExtraCount());
+    }
+}
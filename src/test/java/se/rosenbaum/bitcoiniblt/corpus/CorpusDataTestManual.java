@@ -13,7 +13,7 @@ import se.rosenbaum.bitcoiniblt.printer.IBLTSizeVsFailureProbabilityPrinter;
 import se.rosenbaum.bitcoiniblt.printer.ValueSizeCellCountPrinter;
 import se.rosenbaum.bitcoiniblt.util.AggregateResultStats;
 import se.rosenbaum.bitcoiniblt.util.BlockStatsResult;
-import se.rosenbaum.bitcoiniblt.util.Interval;
+import se.rosenbaum.bitcoiniblt.util.CellCountSearch;
 import se.rosenbaum.bitcoiniblt.util.TestConfig;
 import se.rosenbaum.bitcoiniblt.util.TransactionSets;
 
@@ -74,31 +74,10 @@ public class CorpusDataTestManual extends BlockStatsClientCoderTest implements T
 
 		CorpusDataTestConfig testConfig = new CorpusDataTestConfig(extras, extras, 100002);
 
-		Interval interval = new Interval(0, testConfig.getCellCount());
-		while (true)
-		{
-			AggregateResultStats result = testFailureProbability(printer, testConfig, sampleCount);
-
-			if (result.getFailureProbability() > 0.02 && result.getFailureProbability() < 0.1)
-			{
-				printer.addResult(testConfig, result);
-			}
-
-			if (result.getFailureProbability() < 0.05)
-			{
-				interval.setHigh(testConfig.getCellCount());
-			}
-			else
-			{
-				interval.setLow(testConfig.getCellCount());
-			}
-			testConfig = new CorpusDataTestConfig(extras, extras, interval.nextValue(testConfig));
-
-			if (!interval.isInsideInterval(testConfig.getCellCount()))
-			{
-				break;
-			}
-		}
+		CellCountSearch search = createCellCountSearch(testConfig, printer);
+		search.setMaxSamplesPerProbe(sampleCount);
+		search.findCellCount(0.05);
+		search.printCurve(printer);
 
 		printer.finish();
 	}
@@ -160,36 +139,13 @@ public class CorpusDataTestManual extends BlockStatsClientCoderTest implements T
 			FailureProbabilityPrinter failureProbabilityPrinter = new CellCountVSFailureProbabilityPrinter(tempDirectory);
 			configGenerator.setValueSize(category[i]);
 
-			Interval interval = new Interval(0, configGenerator.getCellCount());
-			AggregateResultStats closestResult = null;
-			TestConfigGenerator closestTestConfig = null;
-			while (true)
-			{
-				AggregateResultStats result = testFailureProbabilityForConfigGenerator(failureProbabilityPrinter, configGenerator);
-				failureProbabilityPrinter.addResult(configGenerator, result);
-				if (result.getFailureProbability() <= 0.05)
-				{
-					if (result.getFailureProbability() == 0.05)
-					{
-						interval.setLow(configGenerator.getCellCount());
-					}
-					interval.setHigh(configGenerator.getCellCount());
-					closestResult = result;
-					closestTestConfig = configGenerator;
-				}
-				else
-				{
-					interval.setLow(configGenerator.getCellCount());
-				}
-				configGenerator = configGenerator.cloneGenerator();
-				configGenerator.setCellCount(interval.nextValue(configGenerator));
-
-				if (!interval.isInsideInterval(configGenerator.getCellCount()))
-				{
-					configGenerator.setCellCount(interval.getHigh() * 2);
-					break;
-				}
-			}
+			TestFileSampler sampler = new TestFileSampler(failureProbabilityPrinter);
+			CellCountSearch search = new CellCountSearch(configGenerator, sampler);
+			int foundCellCount = search.findCellCount(0.05);
+			search.printCurve(failureProbabilityPrinter);
+			AggregateResultStats closestResult = search.getStats(foundCellCount);
+			TestConfigGenerator closestTestConfig = sampler.getGenerator(foundCellCount);
+			configGenerator.setCellCount(foundCellCount * 2);
 			failureProbabilityPrinter.finish();
 			valueSizeCellCountPrinter.addResult(closestTestConfig, closestResult);
 		}
@@ -217,36 +173,12 @@ public class CorpusDataTestManual extends BlockStatsClientCoderTest implements T
 	protected TestConfigGenerator calculateSizeFromTargetProbability(FailureProbabilityPrinter printer, File testFile,
 			TestConfigGenerator configGenerator, int factor, double targetProbability) throws Exception
 	{
-		Interval interval = new Interval(0, configGenerator.getCellCount());
-		AggregateResultStats closestResult = null;
-		TestConfigGenerator closestTestConfig = null;
-		while (true)
-		{
-			AggregateResultStats result = testFailureProbabilityForConfigGenerator(printer, configGenerator);
-			printer.addResult(configGenerator, result);
-			if (result.getFailureProbability() <= targetProbability)
-			{
-				if (result.getFailureProbability() == targetProbability)
-				{
-					interval.setLow(configGenerator.getCellCount());
-				}
-				interval.setHigh(configGenerator.getCellCount());
-				closestResult = result;
-				closestTestConfig = configGenerator;
-			}
-			else
-			{
-				interval.setLow(configGenerator.getCellCount());
-			}
-			configGenerator = configGenerator.cloneGenerator();
-			configGenerator.setCellCount(interval.nextValue(configGenerator));
-
-			if (!interval.isInsideInterval(configGenerator.getCellCount()))
-			{
-				configGenerator.setCellCount(interval.getHigh());
-				break;
-			}
-		}
+		TestFileSampler sampler = new TestFileSampler(printer);
+		CellCountSearch search = new CellCountSearch(configGenerator, sampler);
+		int foundCellCount = search.findCellCount(targetProbability);
+		search.printCurve(printer);
+		AggregateResultStats closestResult = search.getStats(foundCellCount);
+		TestConfigGenerator closestTestConfig = sampler.getGenerator(foundCellCount);
 		if (factor == -1)
 		{
 			printTestResultFile(closestTestConfig, closestResult, testFile, targetProbability);
@@ -486,6 +418,58 @@ public class CorpusDataTestManual extends BlockStatsClientCoderTest implements T
 		}
 	}
 
+	/**
+	 * Samples each cell count from its own copy of a test file generator, so every cell count is tested on the
+	 * same samples. A cell count runs out of samples at the end of the file.
+	 */
+	private class TestFileSampler implements CellCountSearch.Sampler
+	{
+		private Map<Integer, TestConfigGenerator> generators = new HashMap<Integer, TestConfigGenerator>();
+		private FailureProbabilityPrinter printer;
+
+		public TestFileSampler(FailureProbabilityPrinter printer)
+		{
+			this.printer = printer;
+		}
+
+		public AggregateResultStats sample(TestConfig config, int sampleCount) throws IOException
+		{
+			TestConfigGenerator generator = generators.get(config.getCellCount());
+			DefaultTestListener listener = new DefaultTestListener(printer);
+			try
+			{
+				if (generator == null)
+				{
+					generator = ((TestConfigGenerator) config).cloneGenerator();
+					generators.put(config.getCellCount(), generator);
+				}
+				for (int i = 0; i < sampleCount; i++)
+				{
+					TestConfig testConfig = generator.createNextTestConfig();
+					if (testConfig == null)
+					{
+						break;
+					}
+					listener.testPerformed(testConfig, testBlockStats(testConfig));
+				}
+			}
+			catch (IOException e)
+			{
+				throw e;
+			}
+			catch (Exception e)
+			{
+				throw new RuntimeException(e);
+			}
+			return listener.getStats();
+		}
+
+		public TestConfigGenerator getGenerator(int cellCount)
+		{
+			return generators.get(cellCount);
+		}
+	}
+
 	protected AggregateResultStats testFailureProbabilityForConfigGenerator(FailureProbabilityPrinter printer, TestConfigGenerator configGenerator)
 			throws Exception {
 		DefaultTestListener listener = new DefaultTestListener(printer);
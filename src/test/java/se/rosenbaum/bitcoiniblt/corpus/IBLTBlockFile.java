@@ -0,0 +1,198 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A binary version of the text file read by {@link IBLTBlockStream}. Txids are stored as 32
+ * bytes, sorted, and an offset table at the end of the file lets blocks be read in any order.
+ * <p/>
+ * Layout, big endian:
+ * <pre>
+ * magic
+ * for each block: height, overhead, block txid count, block txids,
+ *                 mempool count, for each mempool: name length, name, txid count, txids
+ * for each block: block offset, height
+ * offset table position, block count, magic
+ * </pre>
+ * The first mempool of a block is the sender's, the rest are the receivers'.
+ */
+public class IBLTBlockFile {
+    static final byte[] MAGIC = {'I', 'B', 'L', 'T', 'B', 'L', 'K', '1'};
+    private static final int FOOTER_SIZE = 8 + 4 + 8;
+    private static final int TABLE_ENTRY_SIZE = 8 + 4;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long[] offsets;
+    private int[] heights;
+
+    public static class Entry {
+        int height;
+        int overhead;
+        SortedTxids blockTransactions;
+        List<IBLTBlockStream.TransactionSet> mempools;
+
+        public int getHeight() {
+            return height;
+        }
+    }
+
+    public IBLTBlockFile(File inputFile) throws IOException {
+        file = new RandomAccessFile(inputFile, "r");
+        channel = file.getChannel();
+        ByteBuffer footer = read(channel.size() - FOOTER_SIZE, FOOTER_SIZE);
+        long tableOffset = footer.getLong();
+        int blockCount = footer.getInt();
+        byte[] magic = new byte[MAGIC.length];
+        footer.get(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            file.close();
+            throw new RuntimeException(inputFile + " is not a complete IBLT block file");
+        }
+        ByteBuffer table = read(tableOffset, blockCount * TABLE_ENTRY_SIZE);
+        offsets = new long[blockCount + 1];
+        heights = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            offsets[i] = table.getLong();
+            heights[i] = table.getInt();
+        }
+        offsets[blockCount] = tableOffset;
+    }
+
+    public static boolean isBlockFile(File inputFile) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        InputStream in = new FileInputStream(inputFile);
+        try {
+            int length = 0;
+            int read;
+            while (length < magic.length && (read = in.read(magic, length, magic.length - length)) != -1) {
+                length += read;
+            }
+        } finally {
+            in.close();
+        }
+        return Arrays.equals(MAGIC, magic);
+    }
+
+    /**
+     * Converts the text file from Rusty's bitcoin-iblt to the binary format.
+     */
+    public static void convert(File textFile, File binaryFile) throws IOException {
+        IBLTBlockStream blockStream = new IBLTBlockStream(textFile, null);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(binaryFile), 1 << 20));
+        try {
+            out.write(MAGIC);
+            long position = MAGIC.length;
+            List<Long> offsets = new ArrayList<Long>();
+            List<Integer> heights = new ArrayList<Integer>();
+            ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+            List<IBLTBlockStream.IBLTBlockTransfer> transfers;
+            while ((transfers = blockStream.getNextBlockTransfers()) != null) {
+                IBLTBlockStream.IBLTBlock ibltBlock = transfers.get(0).ibltBlock;
+                blockBytes.reset();
+                writeBlock(new DataOutputStream(blockBytes), ibltBlock, transfers);
+                offsets.add(position);
+                heights.add(ibltBlock.getHeight());
+                blockBytes.writeTo(out);
+                position += blockBytes.size();
+            }
+            for (int i = 0; i < offsets.size(); i++) {
+                out.writeLong(offsets.get(i));
+                out.writeInt(heights.get(i));
+            }
+            out.writeLong(position);
+            out.writeInt(offsets.size());
+            out.write(MAGIC);
+        } finally {
+            out.close();
+            blockStream.close();
+        }
+    }
+
+    private static void writeBlock(DataOutputStream out, IBLTBlockStream.IBLTBlock ibltBlock,
+                                   List<IBLTBlockStream.IBLTBlockTransfer> transfers) throws IOException {
+        out.writeInt(ibltBlock.getHeight());
+        out.writeInt(ibltBlock.overhead);
+        writeTxids(out, ibltBlock.ibltData.getSortedTransactions());
+        out.writeInt(1 + transfers.size());
+        writeMempool(out, ibltBlock.senderMempool);
+        for (IBLTBlockStream.IBLTBlockTransfer transfer : transfers) {
+            writeMempool(out, transfer.receiverTxGuessData);
+        }
+        out.flush();
+    }
+
+    private static void writeMempool(DataOutputStream out, IBLTBlockStream.TransactionSet mempool) throws IOException {
+        byte[] name = mempool.getNodeName().getBytes("UTF-8");
+        out.writeInt(name.length);
+        out.write(name);
+        writeTxids(out, mempool.getSortedTransactions());
+    }
+
+    private static void writeTxids(DataOutputStream out, SortedTxids txids) throws IOException {
+        out.writeInt(txids.size());
+        txids.writeTo(out);
+    }
+
+    public int getBlockCount() {
+        return heights.length;
+    }
+
+    /**
+     * @return the index of the first block with a height of at least height, or the block count
+     * if there is none.
+     */
+    public int findBlock(int height) {
+        for (int i = 0; i < heights.length; i++) {
+            if (heights[i] >= height) {
+                return i;
+            }
+        }
+        return heights.length;
+    }
+
+    public Entry readBlock(int index) throws IOException {
+        ByteBuffer buffer = read(offsets[index], (int) (offsets[index + 1] - offsets[index]));
+        Entry entry = new Entry();
+        entry.height = buffer.getInt();
+        entry.overhead = buffer.getInt();
+        entry.blockTransactions = SortedTxids.readSorted(buffer, buffer.getInt());
+        int mempoolCount = buffer.getInt();
+        entry.mempools = new ArrayList<IBLTBlockStream.TransactionSet>(mempoolCount);
+        for (int i = 0; i < mempoolCount; i++) {
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            SortedTxids txids = SortedTxids.readSorted(buffer, buffer.getInt());
+            entry.mempools.add(new IBLTBlockStream.TransactionSet(new String(name, "UTF-8"), txids));
+        }
+        return entry;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new IOException("Unexpected end of file at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+}
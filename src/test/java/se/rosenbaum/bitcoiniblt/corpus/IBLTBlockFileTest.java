@@ -0,0 +1,119 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IBLTBlockFileTest {
+    private static final int BLOCK_COUNT = 5;
+    private Random random = new Random(1);
+    private List<Sha256Hash> pool = new ArrayList<Sha256Hash>();
+    private File textFile;
+    private File binaryFile;
+
+    @Before
+    public void setup() throws IOException {
+        for (int i = 0; i < 300; i++) {
+            byte[] txid = new byte[32];
+            random.nextBytes(txid);
+            pool.add(new Sha256Hash(txid));
+        }
+        textFile = File.createTempFile("iblt", ".txt");
+        binaryFile = File.createTempFile("iblt", ".bin");
+        Writer out = new FileWriter(textFile);
+        try {
+            for (int i = 0; i < BLOCK_COUNT; i++) {
+                out.write("block," + (352000 + i * 2) + "," + (80 + i) + txids(100) + "\n");
+                out.write("mempool,/data/au" + txids(200) + "\n");
+                out.write("mempool,/data/sf" + txids(200) + "\n");
+                out.write("mempool,/data/sg" + txids(200) + "\n");
+                out.write("mempool,/data/uk" + txids(0) + "\n");
+            }
+        } finally {
+            out.close();
+        }
+        IBLTBlockFile.convert(textFile, binaryFile);
+    }
+
+    private String txids(int count) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            line.append(',').append(pool.get(random.nextInt(pool.size())));
+        }
+        return line.toString();
+    }
+
+    @After
+    public void tearDown() {
+        textFile.delete();
+        binaryFile.delete();
+    }
+
+    @Test
+    public void testDetectFormat() throws IOException {
+        assertFalse(IBLTBlockFile.isBlockFile(textFile));
+        assertTrue(IBLTBlockFile.isBlockFile(binaryFile));
+    }
+
+    @Test
+    public void testBinaryMatchesText() throws Exception {
+        IBLTBlockStream text = new IBLTBlockStream(textFile, null);
+        IBLTBlockStream binary = new IBLTBlockStream(binaryFile, null);
+        for (int i = 0; i < BLOCK_COUNT; i++) {
+            List<IBLTBlockStream.IBLTBlockTransfer> textTransfers = text.getNextBlockTransfers();
+            List<IBLTBlockStream.IBLTBlockTransfer> binaryTransfers = binary.getNextBlockTransfers();
+            assertEquals(3, binaryTransfers.size());
+            for (int j = 0; j < 3; j++) {
+                IBLTBlockStream.IBLTBlockTransfer textTransfer = textTransfers.get(j);
+                IBLTBlockStream.IBLTBlockTransfer binaryTransfer = binaryTransfers.get(j);
+                assertEquals(textTransfer.ibltBlock.getHeight(), binaryTransfer.ibltBlock.getHeight());
+                assertEquals(textTransfer.getOverhead(), binaryTransfer.getOverhead());
+                assertEquals(textTransfer.receiverTxGuessData.getNodeName(), binaryTransfer.receiverTxGuessData.getNodeName());
+                assertEquals(textTransfer.ibltBlock.ibltData.transactions, binaryTransfer.ibltBlock.ibltData.transactions);
+                assertEquals(textTransfer.getBlockOnly(), binaryTransfer.getBlockOnly());
+                assertEquals(textTransfer.getMempoolOnly(), binaryTransfer.getMempoolOnly());
+                assertEquals(difference(binaryTransfer.ibltBlock.ibltData.transactions,
+                        binaryTransfer.receiverTxGuessData.transactions), binaryTransfer.getBlockOnly());
+                assertEquals(difference(binaryTransfer.receiverTxGuessData.transactions,
+                        binaryTransfer.ibltBlock.ibltData.transactions), binaryTransfer.getMempoolOnly());
+            }
+        }
+        assertNull(text.getNextBlockTransfers());
+        assertNull(binary.getNextBlockTransfers());
+        text.close();
+        binary.close();
+    }
+
+    private Set<Sha256Hash> difference(Set<Sha256Hash> a, Set<Sha256Hash> b) {
+        Set<Sha256Hash> result = new HashSet<Sha256Hash>(a);
+        result.removeAll(new HashSet<Sha256Hash>(b));
+        return result;
+    }
+
+    @Test
+    public void testFindBlock() throws IOException {
+        IBLTBlockFile blockFile = new IBLTBlockFile(binaryFile);
+        assertEquals(BLOCK_COUNT, blockFile.getBlockCount());
+        assertEquals(0, blockFile.findBlock(0));
+        assertEquals(2, blockFile.findBlock(352003));
+        assertEquals(352004, blockFile.readBlock(2).getHeight());
+        assertEquals(BLOCK_COUNT, blockFile.findBlock(400000));
+        blockFile.close();
+    }
+}
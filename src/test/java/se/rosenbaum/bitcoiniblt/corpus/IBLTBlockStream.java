@@ -7,7 +7,6 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -15,19 +14,31 @@ import java.util.StringTokenizer;
 public class IBLTBlockStream {
     private final TransactionStore transactionStore;
     BufferedReader inputReader;
+    IBLTBlockFile blockFile;
+    int nextBlockIndex = 0;
 
     public static class TransactionSet {
         String nodeName;
+        SortedTxids sortedTransactions;
         Set<Sha256Hash> transactions;
 
         public TransactionSet(String nodeName, Set<Sha256Hash> transactions) {
-            this.transactions = transactions;
+            this(nodeName, SortedTxids.of(transactions));
+        }
+
+        public TransactionSet(String nodeName, SortedTxids sortedTransactions) {
+            this.sortedTransactions = sortedTransactions;
+            this.transactions = sortedTransactions.asSet();
             this.nodeName = nodeName;
         }
 
         public String getNodeName() {
             return nodeName;
         }
+
+        public SortedTxids getSortedTransactions() {
+            return sortedTransactions;
+        }
     }
 
     public static class IBLTBlock {
@@ -58,24 +69,11 @@ public class IBLTBlockStream {
         }
 
         public Set<Sha256Hash> getMempoolOnly() {
-            Set<Sha256Hash> mempoolOnly = new HashSet<Sha256Hash>();
-            Set<Sha256Hash> ibltTxs = ibltBlock.ibltData.transactions;
-            for (Sha256Hash guessTx : receiverTxGuessData.transactions) {
-                if (!ibltTxs.contains(guessTx)) {
-                    mempoolOnly.add(guessTx);
-                }
-            }
-            return mempoolOnly;
+            return receiverTxGuessData.sortedTransactions.minus(ibltBlock.ibltData.sortedTransactions);
         }
 
         public Set<Sha256Hash> getBlockOnly() throws Exception {
-            Set<Sha256Hash> blockOnly = new HashSet<Sha256Hash>();
-            for (Sha256Hash ibltTx : ibltBlock.ibltData.transactions) {
-                if (!receiverTxGuessData.transactions.contains(ibltTx)) {
-                    blockOnly.add(ibltTx);
-                }
-            }
-            return blockOnly;
+            return ibltBlock.ibltData.sortedTransactions.minus(receiverTxGuessData.sortedTransactions);
         }
 
         public int getOverhead() {
@@ -83,12 +81,23 @@ public class IBLTBlockStream {
         }
     }
 
+    /**
+     * @param inputFile either the text file from Rusty's bitcoin-iblt or an {@link IBLTBlockFile}
+     *                  converted from it.
+     */
     public IBLTBlockStream(File inputFile, TransactionStore transactionStore) throws IOException {
         this.transactionStore = transactionStore;
-        inputReader = new BufferedReader(new FileReader(inputFile));
+        if (IBLTBlockFile.isBlockFile(inputFile)) {
+            blockFile = new IBLTBlockFile(inputFile);
+        } else {
+            inputReader = new BufferedReader(new FileReader(inputFile));
+        }
     }
 
     List<IBLTBlockTransfer> getNextBlockTransfers() throws IOException {
+        if (blockFile != null) {
+            return readBlockTransfers();
+        }
         IBLTBlock ibltBlock = readIBLTBlock();
         if (ibltBlock == null) { // End of file
             return null;
@@ -100,6 +109,29 @@ public class IBLTBlockStream {
         return transfers;
     }
 
+    private List<IBLTBlockTransfer> readBlockTransfers() throws IOException {
+        if (nextBlockIndex == blockFile.getBlockCount()) {
+            return null;
+        }
+        IBLTBlockFile.Entry entry = blockFile.readBlock(nextBlockIndex++);
+        TransactionSet senderMempool = entry.mempools.get(0);
+        TransactionSet ibltData = new TransactionSet(senderMempool.getNodeName(), entry.blockTransactions);
+        IBLTBlock ibltBlock = new IBLTBlock(ibltData, senderMempool, entry.height, entry.overhead);
+        List<IBLTBlockTransfer> transfers = new ArrayList<IBLTBlockTransfer>();
+        for (TransactionSet receiverMempool : entry.mempools.subList(1, entry.mempools.size())) {
+            transfers.add(new IBLTBlockTransfer(ibltBlock, receiverMempool));
+        }
+        return transfers;
+    }
+
+    public void close() throws IOException {
+        if (blockFile != null) {
+            blockFile.close();
+        } else {
+            inputReader.close();
+        }
+    }
+
     private IBLTBlock readIBLTBlock() throws IOException {
         String line = inputReader.readLine();
         if (line == null) {
@@ -112,7 +144,7 @@ public class IBLTBlockStream {
         int height = Integer.parseInt(tokenizer.nextToken());
         int overhead = Integer.parseInt(tokenizer.nextToken());
 
-        Set<Sha256Hash> blockTransactions = getTransactionSet(tokenizer);
+        SortedTxids blockTransactions = getTransactionSet(tokenizer);
 
         TransactionSet senderMempool = readMempoolDataLine();
         TransactionSet ibltData = new TransactionSet(senderMempool.getNodeName(), blockTransactions);
@@ -136,16 +168,16 @@ public class IBLTBlockStream {
         }
         String name = tokenizer.nextToken();
         name = name.substring(name.lastIndexOf('/') + 1);
-        Set<Sha256Hash> mempoolTransactions = getTransactionSet(tokenizer);
+        SortedTxids mempoolTransactions = getTransactionSet(tokenizer);
 
         return new TransactionSet(name, mempoolTransactions);
     }
-    private Set<Sha256Hash> getTransactionSet(StringTokenizer tokenizer) {
-        Set<Sha256Hash> transactions = new HashSet<Sha256Hash>();
+    private SortedTxids getTransactionSet(StringTokenizer tokenizer) {
+        SortedTxids.Builder transactions = new SortedTxids.Builder();
         while (tokenizer.hasMoreTokens()) {
-            transactions.add(new Sha256Hash(tokenizer.nextToken()));
+            transactions.addHex(tokenizer.nextToken());
         }
-        return transactions;
+        return transactions.build();
     }
 
 }
@@ -0,0 +1,107 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+/**
+ * A set of ints in a single open addressing array, without boxing.
+ */
+public class IntHashSet {
+    // Marks a free slot. The key 0 itself is kept in containsZero.
+    private static final int FREE = 0;
+
+    private int[] keys;
+    private int size = 0;
+    private boolean containsZero = false;
+
+    public IntHashSet() {
+        this(16);
+    }
+
+    public IntHashSet(int expectedSize) {
+        keys = new int[tableSize(expectedSize)];
+    }
+
+    private static int tableSize(int expectedSize) {
+        int tableSize = 16;
+        while (tableSize < expectedSize * 2) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    private static int mix(int key) {
+        int hash = key * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return true if key was not already in the set.
+     */
+    public boolean add(int key) {
+        if (key == FREE) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        size++;
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+
+    public boolean contains(int key) {
+        if (key == FREE) {
+            return containsZero;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public void addAll(IntHashSet other) {
+        if (other.containsZero) {
+            add(FREE);
+        }
+        for (int key : other.keys) {
+            if (key != FREE) {
+                add(key);
+            }
+        }
+    }
+
+    private void rehash(int tableSize) {
+        int[] oldKeys = keys;
+        keys = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int key : oldKeys) {
+            if (key != FREE) {
+                int slot = mix(key) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
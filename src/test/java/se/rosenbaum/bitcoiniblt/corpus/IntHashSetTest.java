@@ -0,0 +1,43 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntHashSetTest {
+
+    @Test
+    public void testSameAsHashSet() {
+        IntHashSet sut = new IntHashSet();
+        Set<Integer> expected = new HashSet<Integer>();
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            int key = random.nextInt(5000) - 100;
+            assertEquals(expected.add(key), sut.add(key));
+        }
+        assertEquals(expected.size(), sut.size());
+        for (int key = -200; key < 5100; key++) {
+            assertEquals(expected.contains(key), sut.contains(key));
+        }
+    }
+
+    @Test
+    public void testZeroAndAddAll() {
+        IntHashSet sut = new IntHashSet();
+        assertFalse(sut.contains(0));
+        assertTrue(sut.add(0));
+        assertFalse(sut.add(0));
+        IntHashSet other = new IntHashSet();
+        other.add(7);
+        other.add(0);
+        sut.addAll(other);
+        assertEquals(2, sut.size());
+        assertTrue(sut.contains(7));
+    }
+}
@@ -0,0 +1,218 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import org.bitcoinj.core.Sha256Hash;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * An uncompressed corpus file mapped into memory. Records are read in place through a
+ * {@link Cursor} instead of being copied into {@link Record} objects.
+ * <p/>
+ * When the file is opened, the position of every COINBASE record is indexed, so that reading
+ * can start directly at a block height instead of scanning past the warm-up records.
+ */
+public class MappedCorpusFile {
+    static final int RECORD_SIZE = 40;
+    // Files may be bigger than a single mapping can be
+    private static final int RECORDS_PER_SEGMENT = (1 << 30) / RECORD_SIZE;
+
+    private MappedByteBuffer[] segments;
+    private long recordCount;
+    // Block numbers of the COINBASE records in ascending order, and for each the index of the
+    // first COINBASE record with at least that block number
+    private int[] sortedBlockNumbers;
+    private long[] firstRecordIndexes;
+    private int blockCount = 0;
+
+    public MappedCorpusFile(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if (size % RECORD_SIZE != 0) {
+                throw new RuntimeException("Size of " + file + " is " + size + ", not a multiple of " + RECORD_SIZE);
+            }
+            recordCount = size / RECORD_SIZE;
+            segments = new MappedByteBuffer[(int) ((recordCount + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = (long) i * RECORDS_PER_SEGMENT * RECORD_SIZE;
+                long length = Math.min((long) RECORDS_PER_SEGMENT * RECORD_SIZE, size - position);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } finally {
+            // The mappings stay valid after the channel is closed
+            randomAccessFile.close();
+        }
+        buildBlockIndex();
+    }
+
+    private void buildBlockIndex() {
+        long[] blockRecordIndexes = new long[1024];
+        int[] blockNumbers = new int[1024];
+        Cursor cursor = new Cursor(0, 0);
+        while (cursor.next()) {
+            if (cursor.getTypeNumber() != Type.COINBASE.getNumber()) {
+                continue;
+            }
+            if (blockCount == blockNumbers.length) {
+                long[] newBlockRecordIndexes = new long[blockCount * 2];
+                System.arraycopy(blockRecordIndexes, 0, newBlockRecordIndexes, 0, blockCount);
+                blockRecordIndexes = newBlockRecordIndexes;
+                int[] newBlockNumbers = new int[blockCount * 2];
+                System.arraycopy(blockNumbers, 0, newBlockNumbers, 0, blockCount);
+                blockNumbers = newBlockNumbers;
+            }
+            blockRecordIndexes[blockCount] = cursor.getRecordIndex();
+            blockNumbers[blockCount] = cursor.getBlockNumber();
+            blockCount++;
+        }
+
+        // Block numbers are not in file order around forks, so sort them with their position
+        long[] sorted = new long[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            sorted[i] = ((long) blockNumbers[i] << 32) | i;
+        }
+        Arrays.sort(sorted);
+        sortedBlockNumbers = new int[blockCount];
+        firstRecordIndexes = new long[blockCount];
+        long firstRecordIndex = recordCount;
+        for (int i = blockCount - 1; i >= 0; i--) {
+            sortedBlockNumbers[i] = (int) (sorted[i] >>> 32);
+            firstRecordIndex = Math.min(firstRecordIndex, blockRecordIndexes[(int) sorted[i]]);
+            firstRecordIndexes[i] = firstRecordIndex;
+        }
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the number of COINBASE records, orphaned blocks included.
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * @return the index of the first COINBASE record with a block number of at least
+     * blockNumber, or the record count if there is none.
+     */
+    public long findBlock(int blockNumber) {
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedBlockNumbers[middle] < blockNumber) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low == blockCount ? recordCount : firstRecordIndexes[low];
+    }
+
+    /**
+     * A cursor over the same records as {@link RecordInputStream#readRecord()} gives, which
+     * skips the warm-up blocks and the INCOMING_TX records.
+     */
+    public Cursor cursor() {
+        return cursor(RecordInputStream.MIN_WARM_BLOCK_HEIGHT);
+    }
+
+    /**
+     * A cursor over the records of blocks with a block number of at least minBlockNumber.
+     */
+    public Cursor cursor(int minBlockNumber) {
+        return new Cursor(findBlock(minBlockNumber), minBlockNumber);
+    }
+
+    public class Cursor implements RecordCursor {
+        private long nextRecordIndex;
+        private int minBlockNumber;
+        private MappedByteBuffer segment;
+        // For bulk reads, without moving the position of the shared segment
+        private ByteBuffer reader;
+        private int offset;
+        private long recordIndex = -1;
+
+        Cursor(long startRecordIndex, int minBlockNumber) {
+            this.nextRecordIndex = startRecordIndex;
+            this.minBlockNumber = minBlockNumber;
+        }
+
+        public boolean next() {
+            while (nextRecordIndex < recordCount) {
+                recordIndex = nextRecordIndex++;
+                MappedByteBuffer recordSegment = segments[(int) (recordIndex / RECORDS_PER_SEGMENT)];
+                if (recordSegment != segment) {
+                    segment = recordSegment;
+                    reader = segment.duplicate();
+                }
+                offset = (int) (recordIndex % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+                if (getBlockNumber() >= minBlockNumber) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public long getRecordIndex() {
+            return recordIndex;
+        }
+
+        public long getTimestamp() {
+            return segment.getInt(offset) & 0xffffffffL;
+        }
+
+        public int getTypeNumber() {
+            return segment.get(offset + 4) & 0xff;
+        }
+
+        public Type getType() {
+            return Type.of(getTypeNumber());
+        }
+
+        public int getBlockNumber() {
+            // The type is the low byte of the little endian int
+            return segment.getInt(offset + 4) >>> 8;
+        }
+
+        public void copyTxid(byte[] destination, int destinationOffset) {
+            reader.position(offset + 8);
+            reader.get(destination, destinationOffset, 32);
+        }
+
+        public Sha256Hash getTxid() {
+            byte[] txid = new byte[32];
+            copyTxid(txid, 0);
+            return new Sha256Hash(txid);
+        }
+
+        public long getTxidPart(int part) {
+            return segment.getLong(offset + 8 + part * 8);
+        }
+
+        public Record toRecord() {
+            Record record = new Record();
+            record.timestamp = getTimestamp();
+            record.type = getType();
+            record.blockNumber = getBlockNumber();
+            record.txid = new byte[32];
+            copyTxid(record.txid, 0);
+            return record;
+        }
+
+        public void close() {
+            // The mapping is shared with other cursors
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MappedCorpusFileTest {
+    private static final int WARM = RecordInputStream.MIN_WARM_BLOCK_HEIGHT;
+    private File file;
+    private byte[] fileBytes;
+
+    static byte[] record(long timestamp, Type type, int blockNumber, int txidSeed) {
+        byte[] bytes = new byte[MappedCorpusFile.RECORD_SIZE];
+        for (int i = 0; i < 4; i++) {
+            bytes[i] = (byte) (timestamp >>> (8 * i));
+        }
+        bytes[4] = (byte) type.getNumber();
+        for (int i = 0; i < 3; i++) {
+            bytes[5 + i] = (byte) (blockNumber >>> (8 * i));
+        }
+        for (int i = 8; i < bytes.length; i++) {
+            bytes[i] = (byte) (txidSeed + i);
+        }
+        return bytes;
+    }
+
+    @Before
+    public void setup() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(record(4000000000L, Type.COINBASE, WARM - 1, 1));
+        out.write(record(4000000001L, Type.KNOWN, WARM - 1, 2));
+        out.write(record(4000000002L, Type.INCOMING_TX, 0, 3));
+        out.write(record(4000000003L, Type.COINBASE, WARM, 4));
+        out.write(record(4000000004L, Type.UNKNOWN, WARM, 5));
+        out.write(record(4000000005L, Type.MEMPOOL_ONLY, WARM, 6));
+        out.write(record(4000000006L, Type.INCOMING_TX, 0, 7));
+        out.write(record(4000000007L, Type.COINBASE, WARM + 1, 8));
+        out.write(record(4000000008L, Type.KNOWN, WARM + 1, 9));
+        fileBytes = out.toByteArray();
+        file = File.createTempFile("corpus", null);
+        FileOutputStream fileOut = new FileOutputStream(file);
+        fileOut.write(fileBytes);
+        fileOut.close();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testSameRecordsAsRecordInputStream() throws IOException {
+        MappedCorpusFile sut = new MappedCorpusFile(file);
+        assertEquals(9, sut.getRecordCount());
+        assertEquals(3, sut.getBlockCount());
+
+        RecordInputStream in = new RecordInputStream(new ByteArrayInputStream(fileBytes));
+        MappedCorpusFile.Cursor cursor = sut.cursor();
+        int count = 0;
+        Record expected = in.readRecord();
+        while (expected != null) {
+            assertTrue(cursor.next());
+            assertEquals(expected.timestamp, cursor.getTimestamp());
+            assertEquals(expected.type, cursor.getType());
+            assertEquals(expected.blockNumber, cursor.getBlockNumber());
+            assertArrayEquals(expected.txid, cursor.toRecord().txid);
+            expected = in.readRecord();
+            count++;
+        }
+        assertFalse(cursor.next());
+        assertEquals(5, count);
+    }
+
+    @Test
+    public void testSeekToBlock() throws IOException {
+        MappedCorpusFile sut = new MappedCorpusFile(file);
+        assertEquals(0, sut.findBlock(0));
+        assertEquals(3, sut.findBlock(WARM));
+        assertEquals(7, sut.findBlock(WARM + 1));
+        assertEquals(9, sut.findBlock(WARM + 2));
+
+        MappedCorpusFile.Cursor cursor = sut.cursor(WARM + 1);
+        assertTrue(cursor.next());
+        assertEquals(7, cursor.getRecordIndex());
+        assertEquals(Type.COINBASE, cursor.getType());
+        assertEquals(4000000007L, cursor.getTimestamp());
+        assertTrue(cursor.next());
+        assertEquals(Type.KNOWN, cursor.getType());
+        assertFalse(cursor.next());
+        assertFalse(sut.cursor(WARM + 2).next());
+    }
+
+    @Test
+    public void testSeekToBlockAfterFork() throws IOException {
+        // A lower block number after a higher one, as when a fork is resolved
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(record(4000000009L, Type.COINBASE, WARM + 3, 10));
+        out.write(record(4000000010L, Type.COINBASE, WARM + 2, 11));
+        out.close();
+        MappedCorpusFile sut = new MappedCorpusFile(file);
+        assertEquals(5, sut.getBlockCount());
+        assertEquals(3, sut.findBlock(WARM));
+        assertEquals(9, sut.findBlock(WARM + 2));
+        assertEquals(9, sut.findBlock(WARM + 3));
+        assertEquals(11, sut.findBlock(WARM + 4));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testTruncatedFile() throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[3]);
+        out.close();
+        new MappedCorpusFile(file);
+    }
+}
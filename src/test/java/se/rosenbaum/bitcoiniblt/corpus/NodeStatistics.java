@@ -0,0 +1,121 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import java.io.IOException;
+
+/**
+ * What one pass over the records of a node found. Records of a block number that had more
+ * than one COINBASE are ignored from the second COINBASE on.
+ */
+public class NodeStatistics {
+    private static final int UNKNOWN = Type.UNKNOWN.getNumber();
+    private static final int KNOWN = Type.KNOWN.getNumber();
+    private static final int COINBASE = Type.COINBASE.getNumber();
+
+    final CorpusData.Node node;
+    int extraCount = 0;
+    int txCount = 0;
+    int blockCount = 0;
+    int lowestBlock = -1;
+    int highestBlock;
+    long firstTimestamp = -1;
+    long lastTimestamp;
+    long recordCount = 0;
+    long elapsedNanos;
+    IntHashSet foundBlocks = new IntHashSet();
+    IntHashSet deadBlocks = new IntHashSet();
+    TxidHashSet transactions;
+
+    NodeStatistics(CorpusData.Node node) {
+        this.node = node;
+    }
+
+    /**
+     * @param collectTransactions whether to keep the txids of all UNKNOWN and KNOWN records
+     */
+    static NodeStatistics scan(CorpusData.Node node, RecordCursor cursor, boolean collectTransactions) throws IOException {
+        long startTime = System.nanoTime();
+        NodeStatistics stats = new NodeStatistics(node);
+        if (collectTransactions) {
+            stats.transactions = new TxidHashSet(1 << 16);
+        }
+        try {
+            while (cursor.next()) {
+                stats.add(cursor);
+            }
+        } finally {
+            cursor.close();
+        }
+        stats.elapsedNanos = System.nanoTime() - startTime;
+        return stats;
+    }
+
+    private void add(RecordCursor cursor) {
+        recordCount++;
+        lastTimestamp = cursor.getTimestamp();
+        if (firstTimestamp == -1) {
+            firstTimestamp = lastTimestamp;
+        }
+        int blockNumber = cursor.getBlockNumber();
+        if (deadBlocks.contains(blockNumber)) {
+            return;
+        }
+        int type = cursor.getTypeNumber();
+        if (type == UNKNOWN || type == KNOWN) {
+            if (type == UNKNOWN) {
+                extraCount++;
+            }
+            txCount++;
+            if (transactions != null) {
+                transactions.add(cursor.getTxidPart(0), cursor.getTxidPart(1), cursor.getTxidPart(2), cursor.getTxidPart(3));
+            }
+        } else if (type == COINBASE) {
+            if (foundBlocks.add(blockNumber)) {
+                blockCount++;
+                highestBlock = blockNumber;
+                if (lowestBlock == -1) {
+                    lowestBlock = blockNumber;
+                }
+            } else {
+                deadBlocks.add(blockNumber);
+            }
+        }
+    }
+
+    public CorpusData.Node getNode() {
+        return node;
+    }
+
+    public int getExtraCount() {
+        return extraCount;
+    }
+
+    public int getTxCount() {
+        return txCount;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public long getTimespan() {
+        return lastTimestamp - firstTimestamp;
+    }
+
+    public double getRecordsPerSecond() {
+        return recordCount * 1e9 / Math.max(1, elapsedNanos);
+    }
+
+    public double getMegabytesPerSecond() {
+        return getRecordsPerSecond() * MappedCorpusFile.RECORD_SIZE / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d records, %d blocks, %d extras in %d ms (%.0f records/s, %.1f MB/s)", node, recordCount,
+                blockCount, extraCount, elapsedNanos / 1000000, getRecordsPerSecond(), getMegabytesPerSecond());
+    }
+}
@@ -0,0 +1,145 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Decompresses the blocks of an xz file on an executor and returns them in order. Up to
+ * readAhead blocks are decompressed ahead of the reader.
+ * <p/>
+ * Only files with several blocks, like those written by "xz -T", gain from this. Every block
+ * is held in memory while it is read, see {@link #isParallelizable(File, long)}.
+ */
+public class ParallelXZInputStream extends InputStream {
+    private File file;
+    private ExecutorService executor;
+    private int readAhead;
+    private int blockCount;
+    private int nextBlock = 0;
+    private LinkedList<Future<byte[]>> pendingBlocks = new LinkedList<Future<byte[]>>();
+    private byte[] current = new byte[0];
+    private int position = 0;
+
+    public ParallelXZInputStream(File file, ExecutorService executor, int readAhead) throws IOException {
+        this.file = file;
+        this.executor = executor;
+        this.readAhead = readAhead;
+        SeekableXZInputStream in = new SeekableXZInputStream(new SeekableFileInputStream(file));
+        try {
+            blockCount = in.getBlockCount();
+        } finally {
+            in.close();
+        }
+        submitBlocks();
+    }
+
+    /**
+     * @return true if file has more than one block and no block is bigger than maxBlockSize
+     * uncompressed.
+     */
+    public static boolean isParallelizable(File file, long maxBlockSize) throws IOException {
+        SeekableXZInputStream in = new SeekableXZInputStream(new SeekableFileInputStream(file));
+        try {
+            return in.getBlockCount() > 1 && in.getLargestBlockSize() <= maxBlockSize;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void submitBlocks() {
+        while (pendingBlocks.size() < readAhead && nextBlock < blockCount) {
+            final int blockNumber = nextBlock++;
+            pendingBlocks.add(executor.submit(new Callable<byte[]>() {
+                public byte[] call() throws IOException {
+                    return decompressBlock(blockNumber);
+                }
+            }));
+        }
+    }
+
+    private byte[] decompressBlock(int blockNumber) throws IOException {
+        // Each task reads through its own file handle
+        SeekableXZInputStream in = new SeekableXZInputStream(new SeekableFileInputStream(file));
+        try {
+            in.seekToBlock(blockNumber);
+            byte[] block = new byte[(int) in.getBlockSize(blockNumber)];
+            int length = 0;
+            while (length < block.length) {
+                int read = in.read(block, length, block.length - length);
+                if (read == -1) {
+                    throw new IOException("Block " + blockNumber + " of " + file + " ended after " + length + " of "
+                            + block.length + " bytes");
+                }
+                length += read;
+            }
+            return block;
+        } finally {
+            in.close();
+        }
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (pendingBlocks.isEmpty()) {
+            return false;
+        }
+        try {
+            current = pendingBlocks.removeFirst().get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+        position = 0;
+        submitBlocks();
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (position == current.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (position == current.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+        for (Future<byte[]> pendingBlock : pendingBlocks) {
+            pendingBlock.cancel(true);
+        }
+        pendingBlocks.clear();
+        nextBlock = blockCount;
+        current = new byte[0];
+        position = 0;
+    }
+}
@@ -0,0 +1,119 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads another stream, typically a decompressor, on a background thread and keeps up to
+ * readAhead chunks ready for the reader. The background task occupies one thread of the
+ * executor until the stream is read to the end or closed.
+ */
+public class ReadAheadInputStream extends InputStream {
+    private static final byte[] END = new byte[0];
+
+    private BlockingQueue<byte[]> chunks;
+    private Future<Object> producer;
+    private volatile IOException failure;
+    private byte[] current = new byte[0];
+    private int position = 0;
+
+    public ReadAheadInputStream(final InputStream in, ExecutorService executor, final int chunkSize, int readAhead) {
+        chunks = new ArrayBlockingQueue<byte[]>(readAhead);
+        producer = executor.submit(new Callable<Object>() {
+            public Object call() throws InterruptedException {
+                try {
+                    while (true) {
+                        byte[] chunk = readChunk(in, chunkSize);
+                        if (chunk == null) {
+                            break;
+                        }
+                        chunks.put(chunk);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        // Nothing more to read anyway
+                    }
+                }
+                chunks.put(END);
+                return null;
+            }
+        });
+    }
+
+    private static byte[] readChunk(InputStream in, int chunkSize) throws IOException {
+        byte[] chunk = new byte[chunkSize];
+        int length = 0;
+        while (length < chunkSize) {
+            int read = in.read(chunk, length, chunkSize - length);
+            if (read == -1) {
+                break;
+            }
+            length += read;
+        }
+        if (length == 0) {
+            return null;
+        }
+        if (length < chunkSize) {
+            byte[] lastChunk = new byte[length];
+            System.arraycopy(chunk, 0, lastChunk, 0, length);
+            return lastChunk;
+        }
+        return chunk;
+    }
+
+    private boolean nextChunk() throws IOException {
+        if (current == END) {
+            return false;
+        }
+        try {
+            current = chunks.take();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        position = 0;
+        if (current == END) {
+            if (failure != null) {
+                throw failure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == current.length && !nextChunk()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (position == current.length && !nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+        producer.cancel(true);
+        current = END;
+    }
+}
@@ -36,9 +36,9 @@ class Record {
     Type type;
     int blockNumber;
     byte[] txid;
-    SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
     public String toString() {
+        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
         String result = dateFormat.format(new Date(timestamp*1000)) + " " + type + " " + blockNumber + " " + Utils.HEX.encode(txid);
         return result;
     }
@@ -0,0 +1,36 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import org.bitcoinj.core.Sha256Hash;
+
+import java.io.IOException;
+
+/**
+ * A view of one corpus record at a time. Call {@link #next()} before reading the first record.
+ */
+public interface RecordCursor {
+    /**
+     * @return false when there are no more records.
+     */
+    boolean next() throws IOException;
+
+    long getTimestamp();
+
+    int getTypeNumber();
+
+    int getBlockNumber();
+
+    Sha256Hash getTxid();
+
+    /**
+     * @param part 0 to 3
+     * @return bytes part * 8 to part * 8 + 7 of the txid as a little endian long
+     */
+    long getTxidPart(int part);
+
+    /**
+     * @return a copy of the current record.
+     */
+    Record toRecord();
+
+    void close() throws IOException;
+}
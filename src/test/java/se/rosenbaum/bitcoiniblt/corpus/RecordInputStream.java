@@ -1,6 +1,7 @@
 package se.rosenbaum.bitcoiniblt.corpus;
 
 import com.google.common.io.LittleEndianDataInputStream;
+import org.bitcoinj.core.Sha256Hash;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
@@ -42,8 +43,16 @@ public class RecordInputStream {
 
      */
     private Record readRecordInternal() throws IOException {
-        int read = in.read(recordBytes);
-        if (read == -1) {
+        // Decompressing streams may return less than asked for
+        int read = 0;
+        while (read < recordBytes.length) {
+            int count = in.read(recordBytes, read, recordBytes.length - read);
+            if (count == -1) {
+                break;
+            }
+            read += count;
+        }
+        if (read == 0) {
             return null;
         }
         if (read != recordBytes.length) {
@@ -67,6 +76,48 @@ public class RecordInputStream {
         return record;
     }
 
+    /**
+     * A cursor over the records of {@link #readRecord()}. Closing it closes this stream.
+     */
+    public RecordCursor cursor() {
+        return new RecordCursor() {
+            private Record record;
+
+            public boolean next() throws IOException {
+                record = readRecord();
+                return record != null;
+            }
+
+            public long getTimestamp() {
+                return record.timestamp;
+            }
+
+            public int getTypeNumber() {
+                return record.type.getNumber();
+            }
+
+            public int getBlockNumber() {
+                return record.blockNumber;
+            }
+
+            public Sha256Hash getTxid() {
+                return new Sha256Hash(record.txid);
+            }
+
+            public long getTxidPart(int part) {
+                return TxidHashSet.part(record.txid, part);
+            }
+
+            public Record toRecord() {
+                return record;
+            }
+
+            public void close() throws IOException {
+                RecordInputStream.this.close();
+            }
+        };
+    }
+
     long readUnsignedInt(byte[] bytes, int offset, int length) {
         long s = 0L;
         for (int i = offset + length - 1; i >= offset; i--) {
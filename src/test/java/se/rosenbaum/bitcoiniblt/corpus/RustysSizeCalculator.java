@@ -4,7 +4,6 @@ import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
 import se.rosenbaum.bitcoiniblt.util.TestConfig;
 
-import java.util.Set;
 /*
 This is rusty's results:
 INITIAL_TXS             EXTRA_FACTOR            Size            Number Correct (of 2112) probability
@@ -56,16 +55,14 @@ public class RustysSizeCalculator implements SizeCalculator {
         unknowns = 0;
         unknownBytes = 0;
 
-        Set<Sha256Hash> blockTransactions = currentTransfer.ibltBlock.ibltData.transactions;
-        Set<Sha256Hash> senderMempoolTransactions = currentTransfer.ibltBlock.senderMempool.transactions;
-        for (Sha256Hash blockTransaction : blockTransactions) {
-            if (!senderMempoolTransactions.contains(blockTransaction)) {
-                Transaction transaction = transactionStore.getTransaction(blockTransaction);
-                int bytes = transaction.getOptimalEncodingMessageSize();
-                slices += sliceCountForBytes(bytes, config.getValueSize());
-                unknowns++;
-                unknownBytes += bytes;
-            }
+        SortedTxids blockTransactions = currentTransfer.ibltBlock.ibltData.getSortedTransactions();
+        SortedTxids senderMempoolTransactions = currentTransfer.ibltBlock.senderMempool.getSortedTransactions();
+        for (Sha256Hash blockTransaction : blockTransactions.minus(senderMempoolTransactions)) {
+            Transaction transaction = transactionStore.getTransaction(blockTransaction);
+            int bytes = transaction.getOptimalEncodingMessageSize();
+            slices += sliceCountForBytes(bytes, config.getValueSize());
+            unknowns++;
+            unknownBytes += bytes;
         }
         return slices;
     }
@@ -0,0 +1,698 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blocks and transactions stored in a few large append-only segment files instead of one file
+ * each. A memory mapped hash index maps every hash to the segment, offset and length of its
+ * record, so a lookup is a probe in the index and a single positional read.
+ * <p/>
+ * Writes are kept in memory and appended in batches, see {@link #flush()}. Removed records stay
+ * in their segments until {@link #compact()} copies the live records to new segments.
+ * <p/>
+ * A segment record is the 32 byte hash, a kind byte, the payload length and the payload, so the
+ * index is rebuilt from the segments if it is missing. It is also rebuilt if the store was not
+ * closed or flushed after the index was last changed, since the mapped index may then have been
+ * written back only in part. Records removed since the last flush are back after a rebuild.
+ * <p/>
+ * A batch that was not completely written when the process died leaves a torn record at the end
+ * of the last segment. When the store is opened, the last segment is cut back to the end of the
+ * last indexed record, or of the last complete record if the index is rebuilt, so that new
+ * batches are appended right after the complete records.
+ * <p/>
+ * get reads the payload outside of the lock, so readers don't wait for each other. Don't call
+ * {@link #compact()} or {@link #close()} while other threads may read.
+ */
+public class SegmentStore implements TransactionStore {
+    public static final int TRANSACTION = 1;
+    public static final int BLOCK = 2;
+
+    private static final byte[] INDEX_MAGIC = {'I', 'B', 'L', 'T', 'I', 'D', 'X', '2'};
+    private static final String INDEX_FILE_NAME = "index";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String COMPACT_DIRECTORY_NAME = "compact";
+    private static final String BACKUP_DIRECTORY_NAME = "backup";
+    // Created in a directory once all its files are in place
+    private static final String COMPLETE_FILE_NAME = "complete";
+    // Magic, slot count, entry count, live bytes, segment count and end of the last segment
+    private static final int INDEX_HEADER_SIZE = 8 + 4 + 4 + 8 + 4 + 8;
+    // Hash, offset, kind in the high byte and segment number in the rest, payload length
+    private static final int SLOT_SIZE = 32 + 8 + 4 + 4;
+    private static final int RECORD_HEADER_SIZE = 32 + 1 + 4;
+    private static final int MIN_SLOT_COUNT = 1 << 12;
+    // The whole index must fit in one mapping
+    private static final int MAX_SLOT_COUNT = 1 << 25;
+
+    private File directory;
+    private NetworkParameters params;
+    private long maxSegmentSize = 1L << 30;
+    private int batchSize = 8 << 20;
+
+    private List<RandomAccessFile> segments = new ArrayList<RandomAccessFile>();
+    private long currentSegmentSize;
+    private RandomAccessFile indexFile;
+    private MappedByteBuffer index;
+    private int slotCount;
+    private int entryCount;
+    private long liveBytes;
+    // True if the index was changed since it was last forced to disk
+    private boolean dirty = false;
+    private Map<Sha256Hash, PendingRecord> pending = new LinkedHashMap<Sha256Hash, PendingRecord>();
+    private int pendingBytes = 0;
+
+    private static class PendingRecord {
+        int kind;
+        byte[] data;
+
+        private PendingRecord(int kind, byte[] data) {
+            this.kind = kind;
+            this.data = data;
+        }
+    }
+
+    private interface RecordVisitor {
+        void visit(byte[] hash, int kind, long offset, int length, byte[] payload) throws IOException;
+    }
+
+    public SegmentStore(File directory, NetworkParameters params) throws IOException {
+        this.directory = directory;
+        this.params = params;
+        directory.mkdirs();
+        open();
+    }
+
+    private void open() throws IOException {
+        finishCompaction();
+        File segmentFile;
+        while ((segmentFile = segmentFile(segments.size())).exists()) {
+            segments.add(new RandomAccessFile(segmentFile, "rw"));
+        }
+        File file = new File(directory, INDEX_FILE_NAME);
+        if (file.exists()) {
+            // An entry count of -1 marks the index as being changed, see markDirty()
+            if (mapIndex(file) && entryCount >= 0 && truncateToIndexedEnd()) {
+                return;
+            }
+            indexFile.close();
+        }
+        createIndex(file, MIN_SLOT_COUNT);
+        markDirty();
+        long end = 0;
+        for (int segment = 0; segment < segments.size(); segment++) {
+            final int segmentNumber = segment;
+            end = scanSegment(segment, false, new RecordVisitor() {
+                public void visit(byte[] hash, int kind, long offset, int length, byte[] payload) {
+                    // A later record of the same hash was written after the earlier one was removed
+                    insert(toKey(hash), kind, segmentNumber, offset, length);
+                }
+            });
+        }
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).setLength(end);
+        }
+        currentSegmentSize = end;
+        sync();
+    }
+
+    /**
+     * Cuts the segments back to where they ended when the index was last synced, which drops
+     * records that were written but never indexed.
+     *
+     * @return false if segments are shorter than the index says, so the index must be rebuilt.
+     */
+    private boolean truncateToIndexedEnd() throws IOException {
+        int segmentCount = index.getInt(24);
+        long segmentEnd = index.getLong(28);
+        if (segments.size() < segmentCount || (segmentCount > 0 && segments.get(segmentCount - 1).length() < segmentEnd)) {
+            return false;
+        }
+        while (segments.size() > segmentCount) {
+            segments.remove(segments.size() - 1).close();
+            if (!segmentFile(segments.size()).delete()) {
+                throw new RuntimeException("Could not delete " + segmentFile(segments.size()));
+            }
+        }
+        if (segmentCount > 0) {
+            segments.get(segmentCount - 1).setLength(segmentEnd);
+        }
+        currentSegmentSize = segmentEnd;
+        return true;
+    }
+
+    private File segmentFile(int segment) {
+        return new File(directory, SEGMENT_PREFIX + String.format("%05d", segment));
+    }
+
+    /**
+     * @return false if the index is of an earlier version, and must be rebuilt.
+     */
+    private boolean mapIndex(File file) throws IOException {
+        indexFile = new RandomAccessFile(file, "rw");
+        index = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, indexFile.length());
+        byte[] magic = new byte[INDEX_MAGIC.length];
+        index.get(magic);
+        if (!Arrays.equals(INDEX_MAGIC, magic)) {
+            if (Arrays.equals(Arrays.copyOf(INDEX_MAGIC, 7), Arrays.copyOf(magic, 7))) {
+                return false;
+            }
+            throw new RuntimeException(file + " is not a segment store index");
+        }
+        slotCount = index.getInt(8);
+        entryCount = index.getInt(12);
+        liveBytes = index.getLong(16);
+        if (indexFile.length() != INDEX_HEADER_SIZE + (long) slotCount * SLOT_SIZE) {
+            throw new RuntimeException("Size of " + file + " does not match its slot count " + slotCount);
+        }
+        return true;
+    }
+
+    private void createIndex(File file, int newSlotCount) throws IOException {
+        indexFile = new RandomAccessFile(file, "rw");
+        indexFile.setLength(0);
+        indexFile.setLength(INDEX_HEADER_SIZE + (long) newSlotCount * SLOT_SIZE);
+        index = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, indexFile.length());
+        index.put(INDEX_MAGIC);
+        slotCount = newSlotCount;
+        index.putInt(8, slotCount);
+        entryCount = 0;
+        liveBytes = 0;
+    }
+
+    private void writeHeader() {
+        index.putInt(12, dirty ? -1 : entryCount);
+        index.putLong(16, liveBytes);
+        index.putInt(24, segments.size());
+        index.putLong(28, currentSegmentSize);
+    }
+
+    /**
+     * Marks the index on disk as being changed before changing it, so that it is rebuilt if the
+     * changes don't all make it to disk.
+     */
+    private void markDirty() {
+        if (!dirty) {
+            dirty = true;
+            writeHeader();
+            index.force();
+        }
+    }
+
+    private void sync() {
+        dirty = false;
+        writeHeader();
+        index.force();
+    }
+
+    private static long[] toKey(byte[] hash) {
+        long[] key = new long[4];
+        ByteBuffer.wrap(hash).asLongBuffer().get(key);
+        return key;
+    }
+
+    private static int slotPosition(int slot) {
+        return INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private int homeSlot(long[] key) {
+        // Block hashes start with zeros, so all of the hash is mixed in
+        long hash = key[0] ^ key[1] ^ key[2] ^ key[3];
+        return (int) (hash ^ (hash >>> 32)) & (slotCount - 1);
+    }
+
+    private int homeSlotOf(int slot) {
+        int position = slotPosition(slot);
+        return homeSlot(new long[]{index.getLong(position), index.getLong(position + 8),
+                index.getLong(position + 16), index.getLong(position + 24)});
+    }
+
+    private boolean isEmpty(int slot) {
+        return index.getInt(slotPosition(slot) + 40) == 0;
+    }
+
+    /**
+     * @return the slot holding key, or the empty slot where it would be inserted.
+     */
+    private int findSlot(long[] key) {
+        int slot = homeSlot(key);
+        while (true) {
+            int position = slotPosition(slot);
+            if (index.getInt(position + 40) == 0 || (index.getLong(position) == key[0]
+                    && index.getLong(position + 8) == key[1] && index.getLong(position + 16) == key[2]
+                    && index.getLong(position + 24) == key[3])) {
+                return slot;
+            }
+            slot = (slot + 1) & (slotCount - 1);
+        }
+    }
+
+    private void insert(long[] key, int kind, int segment, long offset, int length) {
+        if ((entryCount + 1) * 10L > slotCount * 7L) {
+            resizeIndex(slotCount * 2);
+        }
+        int slot = findSlot(key);
+        int position = slotPosition(slot);
+        if (isEmpty(slot)) {
+            entryCount++;
+        } else {
+            liveBytes -= RECORD_HEADER_SIZE + index.getInt(position + 44);
+        }
+        for (int i = 0; i < 4; i++) {
+            index.putLong(position + i * 8, key[i]);
+        }
+        index.putLong(position + 32, offset);
+        index.putInt(position + 40, kind << 24 | segment);
+        index.putInt(position + 44, length);
+        liveBytes += RECORD_HEADER_SIZE + length;
+    }
+
+    private void resizeIndex(int newSlotCount) {
+        if (newSlotCount > MAX_SLOT_COUNT) {
+            throw new RuntimeException("The index of " + directory + " is full");
+        }
+        try {
+            MappedByteBuffer oldIndex = index;
+            RandomAccessFile oldIndexFile = indexFile;
+            int oldSlotCount = slotCount;
+            int oldEntryCount = entryCount;
+            long oldLiveBytes = liveBytes;
+            File file = new File(directory, INDEX_FILE_NAME);
+            File newFile = new File(directory, INDEX_FILE_NAME + ".new");
+            createIndex(newFile, newSlotCount);
+            byte[] slotBytes = new byte[SLOT_SIZE];
+            for (int slot = 0; slot < oldSlotCount; slot++) {
+                int oldPosition = slotPosition(slot);
+                if (oldIndex.getInt(oldPosition + 40) == 0) {
+                    continue;
+                }
+                oldIndex.position(oldPosition);
+                oldIndex.get(slotBytes);
+                index.position(slotPosition(findSlot(toKey(Arrays.copyOf(slotBytes, 32)))));
+                index.put(slotBytes);
+            }
+            entryCount = oldEntryCount;
+            liveBytes = oldLiveBytes;
+            writeHeader();
+            index.force();
+            oldIndexFile.close();
+            if (!newFile.renameTo(file)) {
+                throw new RuntimeException("Could not replace " + file + " with " + newFile);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Visits the records of segment up to the first one that is not complete.
+     *
+     * @return the end of the last complete record.
+     */
+    private long scanSegment(int segment, boolean readPayload, RecordVisitor visitor) throws IOException {
+        long size = segments.get(segment).length();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile(segment)), 1 << 20));
+        try {
+            byte[] hash = new byte[32];
+            long offset = 0;
+            while (offset + RECORD_HEADER_SIZE <= size) {
+                in.readFully(hash);
+                int kind = in.readByte();
+                int length = in.readInt();
+                if ((kind != TRANSACTION && kind != BLOCK) || length < 0 || offset + RECORD_HEADER_SIZE + length > size) {
+                    // The end of a batch that was never completely written
+                    break;
+                }
+                byte[] payload = null;
+                if (readPayload) {
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } else {
+                    skipFully(in, length);
+                }
+                visitor.visit(hash, kind, offset, length, payload);
+                offset += RECORD_HEADER_SIZE + length;
+            }
+            return offset;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+            count -= skipped;
+        }
+    }
+
+    public void setMaxSegmentSize(long maxSegmentSize) {
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public synchronized boolean contains(Sha256Hash hash) {
+        return pending.containsKey(hash) || !isEmpty(findSlot(toKey(hash.getBytes())));
+    }
+
+    /**
+     * @return the payload stored for hash, or null if there is none of the given kind.
+     */
+    public byte[] get(Sha256Hash hash, int kind) throws IOException {
+        FileChannel channel;
+        long offset;
+        ByteBuffer payload;
+        synchronized (this) {
+            PendingRecord pendingRecord = pending.get(hash);
+            if (pendingRecord != null) {
+                return pendingRecord.kind == kind ? pendingRecord.data : null;
+            }
+            int position = slotPosition(findSlot(toKey(hash.getBytes())));
+            int kindAndSegment = index.getInt(position + 40);
+            if (kindAndSegment >>> 24 != kind) {
+                return null;
+            }
+            channel = segments.get(kindAndSegment & 0xffffff).getChannel();
+            offset = index.getLong(position + 32) + RECORD_HEADER_SIZE;
+            payload = ByteBuffer.allocate(index.getInt(position + 44));
+        }
+        // Segments are append only, so the record stays where it is while we read it
+        while (payload.hasRemaining()) {
+            if (channel.read(payload, offset + payload.position()) == -1) {
+                throw new IOException("Record of " + hash + " is past the end of its segment");
+            }
+        }
+        return payload.array();
+    }
+
+    /**
+     * Adds a record unless one for hash is already stored. It is written to disk when the batch
+     * is full or the store is flushed.
+     *
+     * @return true if the record was added.
+     */
+    public synchronized boolean put(Sha256Hash hash, int kind, byte[] data) throws IOException {
+        if (contains(hash)) {
+            return false;
+        }
+        pending.put(hash, new PendingRecord(kind, data));
+        pendingBytes += RECORD_HEADER_SIZE + data.length;
+        if (pendingBytes >= batchSize) {
+            flush();
+        }
+        return true;
+    }
+
+    public synchronized boolean remove(Sha256Hash hash) {
+        if (pending.remove(hash) != null) {
+            return true;
+        }
+        int slot = findSlot(toKey(hash.getBytes()));
+        if (isEmpty(slot)) {
+            return false;
+        }
+        markDirty();
+        entryCount--;
+        liveBytes -= RECORD_HEADER_SIZE + index.getInt(slotPosition(slot) + 44);
+        // Shift later entries of the probe sequence back, so that no lookup stops at the hole
+        int mask = slotCount - 1;
+        int hole = slot;
+        byte[] slotBytes = new byte[SLOT_SIZE];
+        for (int next = (hole + 1) & mask; !isEmpty(next); next = (next + 1) & mask) {
+            if (((next - homeSlotOf(next)) & mask) >= ((next - hole) & mask)) {
+                index.position(slotPosition(next));
+                index.get(slotBytes);
+                index.position(slotPosition(hole));
+                index.put(slotBytes);
+                hole = next;
+            }
+        }
+        index.position(slotPosition(hole));
+        index.put(new byte[SLOT_SIZE]);
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Appends the pending records to the current segment, or to a new one if it is full, and
+     * adds them to the index. Both are forced to disk, along with any earlier removals.
+     */
+    public synchronized void flush() throws IOException {
+        if (pending.isEmpty()) {
+            if (dirty) {
+                sync();
+            }
+            return;
+        }
+        if (segments.isEmpty() || (currentSegmentSize > 0 && currentSegmentSize + pendingBytes > maxSegmentSize)) {
+            segments.add(new RandomAccessFile(segmentFile(segments.size()), "rw"));
+            currentSegmentSize = 0;
+        }
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(pendingBytes);
+        DataOutputStream out = new DataOutputStream(batch);
+        for (Map.Entry<Sha256Hash, PendingRecord> entry : pending.entrySet()) {
+            out.write(entry.getKey().getBytes());
+            out.writeByte(entry.getValue().kind);
+            out.writeInt(entry.getValue().data.length);
+            out.write(entry.getValue().data);
+        }
+        FileChannel channel = segments.get(segments.size() - 1).getChannel();
+        ByteBuffer bytes = ByteBuffer.wrap(batch.toByteArray());
+        while (bytes.hasRemaining()) {
+            channel.write(bytes, currentSegmentSize + bytes.position());
+        }
+        channel.force(false);
+
+        // The index is only updated once the records are on disk
+        markDirty();
+        int segment = segments.size() - 1;
+        long offset = currentSegmentSize;
+        for (Map.Entry<Sha256Hash, PendingRecord> entry : pending.entrySet()) {
+            int length = entry.getValue().data.length;
+            insert(toKey(entry.getKey().getBytes()), entry.getValue().kind, segment, offset, length);
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        currentSegmentSize = offset;
+        sync();
+        pending.clear();
+        pendingBytes = 0;
+    }
+
+    /**
+     * Copies the live records to new segments, dropping removed records and records that were
+     * written but never indexed.
+     * <p/>
+     * The new store is built in a subdirectory and marked complete. Then the old files are moved
+     * to a backup directory, which is marked complete too, and the new files take their place.
+     * If this is interrupted, {@link #finishCompaction()} continues from where it stopped the
+     * next time the store is opened.
+     */
+    public synchronized void compact() throws IOException {
+        flush();
+        File compactDirectory = new File(directory, COMPACT_DIRECTORY_NAME);
+        deleteFiles(compactDirectory);
+        new File(compactDirectory, COMPLETE_FILE_NAME).delete();
+        final SegmentStore compacted = new SegmentStore(compactDirectory, params);
+        compacted.setMaxSegmentSize(maxSegmentSize);
+        compacted.setBatchSize(batchSize);
+        for (int segment = 0; segment < segments.size(); segment++) {
+            final int segmentNumber = segment;
+            scanSegment(segment, true, new RecordVisitor() {
+                public void visit(byte[] hash, int kind, long offset, int length, byte[] payload) throws IOException {
+                    int position = slotPosition(findSlot(toKey(hash)));
+                    if (index.getInt(position + 40) == (kind << 24 | segmentNumber) && index.getLong(position + 32) == offset) {
+                        compacted.put(new Sha256Hash(hash.clone()), kind, payload);
+                    }
+                }
+            });
+        }
+        compacted.close();
+        markComplete(compactDirectory);
+        closeFiles();
+        segments.clear();
+        open();
+    }
+
+    /**
+     * Completes or rolls back a compaction that was interrupted, depending on how far it got.
+     */
+    private void finishCompaction() throws IOException {
+        File compactDirectory = new File(directory, COMPACT_DIRECTORY_NAME);
+        File backupDirectory = new File(directory, BACKUP_DIRECTORY_NAME);
+        if (!new File(compactDirectory, COMPLETE_FILE_NAME).exists()) {
+            // The old files were never touched
+            deleteFiles(compactDirectory);
+            compactDirectory.delete();
+            deleteFiles(backupDirectory);
+            new File(backupDirectory, COMPLETE_FILE_NAME).delete();
+            backupDirectory.delete();
+            return;
+        }
+        if (!new File(backupDirectory, COMPLETE_FILE_NAME).exists()) {
+            // No new file has been moved in yet, so the files left are old ones
+            backupDirectory.mkdirs();
+            moveFiles(directory, backupDirectory);
+            markComplete(backupDirectory);
+        }
+        moveFiles(compactDirectory, directory);
+        new File(compactDirectory, COMPLETE_FILE_NAME).delete();
+        compactDirectory.delete();
+        deleteFiles(backupDirectory);
+        new File(backupDirectory, COMPLETE_FILE_NAME).delete();
+        backupDirectory.delete();
+    }
+
+    private static void markComplete(File storeDirectory) throws IOException {
+        File file = new File(storeDirectory, COMPLETE_FILE_NAME);
+        if (!file.exists() && !file.createNewFile()) {
+            throw new RuntimeException("Could not create " + file);
+        }
+    }
+
+    private static void moveFiles(File source, File target) {
+        File[] files = source.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (isStoreFile(file)) {
+                File targetFile = new File(target, file.getName());
+                if (!file.renameTo(targetFile)) {
+                    throw new RuntimeException("Could not move " + file + " to " + targetFile);
+                }
+            }
+        }
+    }
+
+    private static boolean isStoreFile(File file) {
+        return file.isFile() && (file.getName().startsWith(SEGMENT_PREFIX) || file.getName().startsWith(INDEX_FILE_NAME));
+    }
+
+    private static void deleteFiles(File storeDirectory) {
+        File[] files = storeDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (isStoreFile(file)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Imports a directory with one file per record, named by the hash in hex, as written by
+     * earlier versions of {@link se.rosenbaum.bitcoiniblt.ClientCoderTest}.
+     *
+     * @return the number of records that were not already stored.
+     */
+    public synchronized int importDirectory(File sourceDirectory, int kind) throws IOException {
+        String[] names = sourceDirectory.list();
+        if (names == null) {
+            return 0;
+        }
+        int imported = 0;
+        for (String name : names) {
+            Sha256Hash hash;
+            try {
+                hash = new Sha256Hash(name);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            File file = new File(sourceDirectory, name);
+            byte[] data = new byte[(int) file.length()];
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                in.readFully(data);
+            } finally {
+                in.close();
+            }
+            if (put(hash, kind, data)) {
+                imported++;
+            }
+        }
+        flush();
+        return imported;
+    }
+
+    public Transaction getTransaction(Sha256Hash hash) throws IOException {
+        byte[] data = get(hash, TRANSACTION);
+        return data == null ? null : new Transaction(params, data);
+    }
+
+    public Block getBlock(Sha256Hash hash) throws IOException {
+        byte[] data = get(hash, BLOCK);
+        return data == null ? null : new Block(params, data);
+    }
+
+    public void putTransaction(Transaction transaction) throws IOException {
+        put(transaction.getHash(), TRANSACTION, transaction.bitcoinSerialize());
+    }
+
+    /**
+     * Stores block and each of its transactions.
+     */
+    public void putBlock(Block block) throws IOException {
+        put(block.getHash(), BLOCK, block.bitcoinSerialize());
+        for (Transaction transaction : block.getTransactions()) {
+            putTransaction(transaction);
+        }
+    }
+
+    public synchronized int getEntryCount() {
+        return entryCount + pending.size();
+    }
+
+    public synchronized long getLiveBytes() {
+        return liveBytes + pendingBytes;
+    }
+
+    /**
+     * @return the bytes in segments that {@link #compact()} would free.
+     */
+    public synchronized long getGarbageBytes() throws IOException {
+        long segmentBytes = 0;
+        for (RandomAccessFile segment : segments) {
+            segmentBytes += segment.length();
+        }
+        return segmentBytes - liveBytes;
+    }
+
+    private void closeFiles() throws IOException {
+        sync();
+        indexFile.close();
+        for (RandomAccessFile segment : segments) {
+            segment.close();
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        flush();
+        closeFiles();
+    }
+}
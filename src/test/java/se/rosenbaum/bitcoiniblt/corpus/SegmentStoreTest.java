@@ -0,0 +1,304 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se.rosenbaum.bitcoiniblt.util.SyntheticTransactionGenerator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentStoreTest {
+    private Random random = new Random(1);
+    private File directory;
+    private SegmentStore sut;
+
+    @Before
+    public void setup() throws IOException {
+        directory = File.createTempFile("store", null);
+        directory.delete();
+        sut = openStore();
+    }
+
+    private SegmentStore openStore() throws IOException {
+        SegmentStore store = new SegmentStore(directory, MainNetParams.get());
+        store.setBatchSize(10000);
+        store.setMaxSegmentSize(50000);
+        return store;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sut.close();
+        delete(directory);
+    }
+
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private Sha256Hash randomHash() {
+        byte[] hash = new byte[32];
+        random.nextBytes(hash);
+        return new Sha256Hash(hash);
+    }
+
+    private byte[] randomData() {
+        byte[] data = new byte[random.nextInt(500)];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private List<Sha256Hash> putRandom(int count, List<byte[]> data) throws IOException {
+        List<Sha256Hash> hashes = new ArrayList<Sha256Hash>();
+        for (int i = 0; i < count; i++) {
+            hashes.add(randomHash());
+            data.add(randomData());
+            assertTrue(sut.put(hashes.get(i), SegmentStore.TRANSACTION, data.get(data.size() - 1)));
+        }
+        return hashes;
+    }
+
+    private void assertStored(List<Sha256Hash> hashes, List<byte[]> data) throws IOException {
+        for (int i = 0; i < hashes.size(); i++) {
+            assertArrayEquals(data.get(i), sut.get(hashes.get(i), SegmentStore.TRANSACTION));
+        }
+    }
+
+    @Test
+    public void testPutAndGetAcrossSegments() throws IOException {
+        List<byte[]> data = new ArrayList<byte[]>();
+        // Enough to grow the index and fill several segments
+        List<Sha256Hash> hashes = putRandom(5000, data);
+        assertStored(hashes, data);
+        assertFalse(sut.put(hashes.get(0), SegmentStore.TRANSACTION, new byte[1]));
+        assertNull(sut.get(hashes.get(0), SegmentStore.BLOCK));
+        assertNull(sut.get(randomHash(), SegmentStore.TRANSACTION));
+        assertEquals(5000, sut.getEntryCount());
+
+        sut.close();
+        sut = openStore();
+        assertEquals(5000, sut.getEntryCount());
+        assertStored(hashes, data);
+        assertEquals(0, sut.getGarbageBytes());
+    }
+
+    @Test
+    public void testRemoveAndCompact() throws IOException {
+        List<byte[]> data = new ArrayList<byte[]>();
+        List<Sha256Hash> hashes = putRandom(1000, data);
+        sut.flush();
+        for (int i = 0; i < 500; i++) {
+            assertTrue(sut.remove(hashes.get(i)));
+            assertFalse(sut.contains(hashes.get(i)));
+        }
+        assertFalse(sut.remove(hashes.get(0)));
+        assertStored(hashes.subList(500, 1000), data.subList(500, 1000));
+        assertTrue(sut.getGarbageBytes() > 0);
+
+        long liveBytes = sut.getLiveBytes();
+        sut.compact();
+        assertEquals(0, sut.getGarbageBytes());
+        assertEquals(liveBytes, sut.getLiveBytes());
+        assertEquals(500, sut.getEntryCount());
+        assertStored(hashes.subList(500, 1000), data.subList(500, 1000));
+        assertNull(sut.get(hashes.get(0), SegmentStore.TRANSACTION));
+    }
+
+    @Test
+    public void testRebuildIndex() throws IOException {
+        List<byte[]> data = new ArrayList<byte[]>();
+        List<Sha256Hash> hashes = putRandom(1000, data);
+        sut.close();
+        assertTrue(new File(directory, "index").delete());
+        sut = openStore();
+        assertEquals(1000, sut.getEntryCount());
+        assertStored(hashes, data);
+    }
+
+    @Test
+    public void testRebuildIndexChangedSinceFlush() throws IOException {
+        List<byte[]> data = new ArrayList<byte[]>();
+        List<Sha256Hash> hashes = putRandom(1000, data);
+        sut.flush();
+        assertTrue(sut.remove(hashes.get(0)));
+        // What would be on disk if the process died now
+        File crashed = new File(directory, "crashed");
+        copyStoreFiles(directory, crashed);
+
+        SegmentStore recovered = new SegmentStore(crashed, MainNetParams.get());
+        try {
+            // The removal was not flushed
+            assertEquals(1000, recovered.getEntryCount());
+            for (int i = 0; i < hashes.size(); i++) {
+                assertArrayEquals(data.get(i), recovered.get(hashes.get(i), SegmentStore.TRANSACTION));
+            }
+        } finally {
+            recovered.close();
+        }
+    }
+
+    @Test
+    public void testTornRecordAtEndOfSegment() throws IOException {
+        List<byte[]> data = new ArrayList<byte[]>();
+        List<Sha256Hash> hashes = putRandom(5, data);
+        sut.close();
+        appendTornRecord();
+        sut = openStore();
+        hashes.addAll(putRandom(5, data));
+        sut.close();
+        sut = openStore();
+        assertEquals(10, sut.getEntryCount());
+        assertStored(hashes, data);
+
+        // Torn again, and the index is rebuilt
+        sut.close();
+        appendTornRecord();
+        assertTrue(new File(directory, "index").delete());
+        sut = openStore();
+        hashes.addAll(putRandom(5, data));
+        sut.close();
+        assertTrue(new File(directory, "index").delete());
+        sut = openStore();
+        assertEquals(15, sut.getEntryCount());
+        assertStored(hashes, data);
+
+        sut.compact();
+        assertEquals(15, sut.getEntryCount());
+        assertEquals(0, sut.getGarbageBytes());
+        assertStored(hashes, data);
+    }
+
+    /**
+     * The first 47 bytes of a 137 byte record, as left by a batch that was not completely written.
+     */
+    private void appendTornRecord() throws IOException {
+        byte[] record = new byte[47];
+        random.nextBytes(record);
+        record[32] = SegmentStore.TRANSACTION;
+        record[33] = 0;
+        record[34] = 0;
+        record[35] = 0;
+        record[36] = 100;
+        OutputStream out = new FileOutputStream(new File(directory, "segment-00000"), true);
+        try {
+            out.write(record);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testInterruptedCompaction() throws IOException {
+        List<byte[]> data = new ArrayList<byte[]>();
+        List<Sha256Hash> hashes = putRandom(1000, data);
+        for (int i = 0; i < 500; i++) {
+            sut.remove(hashes.get(i));
+        }
+        sut.close();
+        List<Sha256Hash> liveHashes = hashes.subList(500, 1000);
+        List<byte[]> liveData = data.subList(500, 1000);
+        File compactDirectory = new File(directory, "compact");
+        File backupDirectory = new File(directory, "backup");
+
+        // Interrupted while building the new store, the old one is used
+        compactDirectory.mkdirs();
+        new FileOutputStream(new File(compactDirectory, "segment-00000")).close();
+        sut = openStore();
+        assertEquals(500, sut.getEntryCount());
+        assertStored(liveHashes, liveData);
+        assertFalse(compactDirectory.exists());
+        sut.close();
+
+        // Interrupted while moving the old files out, the new store is used
+        SegmentStore compacted = new SegmentStore(compactDirectory, MainNetParams.get());
+        for (int i = 0; i < liveHashes.size(); i++) {
+            compacted.put(liveHashes.get(i), SegmentStore.TRANSACTION, liveData.get(i));
+        }
+        compacted.close();
+        new File(compactDirectory, "complete").createNewFile();
+        backupDirectory.mkdirs();
+        assertTrue(new File(directory, "segment-00000").renameTo(new File(backupDirectory, "segment-00000")));
+        sut = openStore();
+        assertEquals(0, sut.getGarbageBytes());
+        assertStored(liveHashes, liveData);
+        assertFalse(compactDirectory.exists());
+        assertFalse(backupDirectory.exists());
+        sut.close();
+
+        // Interrupted while moving the new files in
+        compactDirectory.mkdirs();
+        backupDirectory.mkdirs();
+        new File(compactDirectory, "complete").createNewFile();
+        new File(backupDirectory, "complete").createNewFile();
+        assertTrue(new File(directory, "index").renameTo(new File(compactDirectory, "index")));
+        sut = openStore();
+        assertEquals(500, sut.getEntryCount());
+        assertStored(liveHashes, liveData);
+        assertFalse(compactDirectory.exists());
+        assertFalse(backupDirectory.exists());
+    }
+
+    private void copyStoreFiles(File source, File target) throws IOException {
+        target.mkdirs();
+        for (File file : source.listFiles()) {
+            if (!file.isFile()) {
+                continue;
+            }
+            InputStream in = new FileInputStream(file);
+            OutputStream out = new FileOutputStream(new File(target, file.getName()));
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+                out.close();
+            }
+        }
+    }
+
+    @Test
+    public void testImportDirectory() throws IOException {
+        SyntheticTransactionGenerator generator = new SyntheticTransactionGenerator(MainNetParams.get(), 1);
+        List<Transaction> transactions = generator.createTransactions(20);
+        File transactionDirectory = new File(directory, "transactions");
+        transactionDirectory.mkdirs();
+        for (Transaction transaction : transactions) {
+            OutputStream out = new FileOutputStream(new File(transactionDirectory, transaction.getHashAsString()));
+            transaction.bitcoinSerialize(out);
+            out.close();
+        }
+        new File(transactionDirectory, "notatxid").createNewFile();
+
+        assertEquals(20, sut.importDirectory(transactionDirectory, SegmentStore.TRANSACTION));
+        assertEquals(0, sut.importDirectory(transactionDirectory, SegmentStore.TRANSACTION));
+        for (Transaction transaction : transactions) {
+            assertEquals(transaction, sut.getTransaction(transaction.getHash()));
+        }
+    }
+}
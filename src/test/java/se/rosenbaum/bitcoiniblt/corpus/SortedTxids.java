@@ -0,0 +1,242 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import org.bitcoinj.core.Sha256Hash;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A sorted, duplicate free array of transaction ids. Each id is kept as four big endian longs,
+ * so ids compare as unsigned longs in the same order as their bytes. Differences between two
+ * sets are computed by walking both arrays once.
+ */
+public class SortedTxids {
+    private static final int LONGS_PER_TXID = 4;
+
+    private long[] parts;
+    private int size;
+
+    private SortedTxids(long[] parts, int size) {
+        this.parts = parts;
+        this.size = size;
+    }
+
+    // Sorts parts in place and drops duplicate ids
+    private static SortedTxids sortAndWrap(long[] parts, int size) {
+        sort(parts, 0, size - 1);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || compare(parts, unique - 1, parts, i) != 0) {
+                System.arraycopy(parts, i * LONGS_PER_TXID, parts, unique * LONGS_PER_TXID, LONGS_PER_TXID);
+                unique++;
+            }
+        }
+        return new SortedTxids(parts, unique);
+    }
+
+    public static SortedTxids of(Iterable<Sha256Hash> txids) {
+        Builder builder = new Builder();
+        for (Sha256Hash txid : txids) {
+            builder.add(txid);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads count ids of 32 bytes each, which must already be sorted and unique.
+     */
+    static SortedTxids readSorted(ByteBuffer buffer, int count) {
+        long[] parts = new long[count * LONGS_PER_TXID];
+        buffer.asLongBuffer().get(parts);
+        buffer.position(buffer.position() + count * 32);
+        return new SortedTxids(parts, count);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        for (int i = 0; i < size * LONGS_PER_TXID; i++) {
+            out.writeLong(parts[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Sha256Hash get(int index) {
+        ByteBuffer bytes = ByteBuffer.allocate(32);
+        for (int j = 0; j < LONGS_PER_TXID; j++) {
+            bytes.putLong(parts[index * LONGS_PER_TXID + j]);
+        }
+        return new Sha256Hash(bytes.array());
+    }
+
+    public boolean contains(Sha256Hash txid) {
+        long[] key = new long[LONGS_PER_TXID];
+        ByteBuffer.wrap(txid.getBytes()).asLongBuffer().get(key);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(parts, middle, key, 0);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the ids of this set that are not in other, in sorted order.
+     */
+    public Set<Sha256Hash> minus(SortedTxids other) {
+        Set<Sha256Hash> result = new LinkedHashSet<Sha256Hash>();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && compare(other.parts, j, parts, i) < 0) {
+                j++;
+            }
+            if (j == other.size || compare(other.parts, j, parts, i) != 0) {
+                result.add(get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A read only view of the ids, in sorted order.
+     */
+    public Set<Sha256Hash> asSet() {
+        return new AbstractSet<Sha256Hash>() {
+            @Override
+            public Iterator<Sha256Hash> iterator() {
+                return new Iterator<Sha256Hash>() {
+                    int next = 0;
+
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    public Sha256Hash next() {
+                        if (next == size) {
+                            throw new NoSuchElementException();
+                        }
+                        return get(next++);
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Sha256Hash && SortedTxids.this.contains((Sha256Hash) o);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Collects ids in any order. Hex ids are parsed straight into longs, without going through
+     * {@link Sha256Hash}.
+     */
+    public static class Builder {
+        private long[] parts = new long[64 * LONGS_PER_TXID];
+        private int size = 0;
+
+        private int next() {
+            if ((size + 1) * LONGS_PER_TXID > parts.length) {
+                long[] newParts = new long[parts.length * 2];
+                System.arraycopy(parts, 0, newParts, 0, parts.length);
+                parts = newParts;
+            }
+            return size++ * LONGS_PER_TXID;
+        }
+
+        public Builder add(Sha256Hash txid) {
+            int offset = next();
+            ByteBuffer.wrap(txid.getBytes()).asLongBuffer().get(parts, offset, LONGS_PER_TXID);
+            return this;
+        }
+
+        public Builder addHex(String hex) {
+            if (hex.length() != LONGS_PER_TXID * 16) {
+                throw new RuntimeException("Invalid txid: " + hex);
+            }
+            int offset = next();
+            for (int j = 0; j < LONGS_PER_TXID; j++) {
+                long part = 0;
+                for (int i = j * 16; i < j * 16 + 16; i++) {
+                    int digit = Character.digit(hex.charAt(i), 16);
+                    if (digit < 0) {
+                        throw new RuntimeException("Invalid txid: " + hex);
+                    }
+                    part = (part << 4) | digit;
+                }
+                parts[offset + j] = part;
+            }
+            return this;
+        }
+
+        public SortedTxids build() {
+            SortedTxids result = sortAndWrap(parts, size);
+            parts = null;
+            return result;
+        }
+    }
+
+    private static int compare(long[] parts, int index, long[] otherParts, int otherIndex) {
+        for (int j = 0; j < LONGS_PER_TXID; j++) {
+            long a = parts[index * LONGS_PER_TXID + j] ^ Long.MIN_VALUE;
+            long b = otherParts[otherIndex * LONGS_PER_TXID + j] ^ Long.MIN_VALUE;
+            if (a != b) {
+                return a < b ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    private static void swap(long[] parts, int i, int j) {
+        for (int k = 0; k < LONGS_PER_TXID; k++) {
+            long tmp = parts[i * LONGS_PER_TXID + k];
+            parts[i * LONGS_PER_TXID + k] = parts[j * LONGS_PER_TXID + k];
+            parts[j * LONGS_PER_TXID + k] = tmp;
+        }
+    }
+
+    private static void sort(long[] parts, int from, int to) {
+        while (from < to) {
+            // Ids are hashes, so the middle element is as good a pivot as any
+            swap(parts, (from + to) >>> 1, to);
+            int store = from;
+            for (int i = from; i < to; i++) {
+                if (compare(parts, i, parts, to) < 0) {
+                    swap(parts, i, store++);
+                }
+            }
+            swap(parts, store, to);
+            if (store - from < to - store) {
+                sort(parts, from, store - 1);
+                from = store + 1;
+            } else {
+                sort(parts, store + 1, to);
+                to = store - 1;
+            }
+        }
+    }
+}
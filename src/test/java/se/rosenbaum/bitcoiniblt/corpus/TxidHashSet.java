@@ -0,0 +1,134 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import org.bitcoinj.core.Sha256Hash;
+
+/**
+ * A set of 32 byte transaction ids kept as four longs each in one open addressing array.
+ * Each slot takes 32 bytes and the table is kept between half and three quarters full, so an
+ * entry costs 32 bytes divided by the load factor, 43 to 64 bytes. Measured with compressed
+ * oops on 1 to 2 million random ids, that is 43 to 60 bytes per entry against about 105 for a
+ * HashSet of Sha256Hash, so roughly half the heap.
+ * <p/>
+ * The ids are given as the four little endian longs of their bytes, see
+ * {@link RecordCursor#getTxidPart(int)}. The all zero id can not be stored.
+ */
+public class TxidHashSet {
+    private long[] keys;
+    private int capacity;
+    private int size = 0;
+
+    public TxidHashSet() {
+        this(16);
+    }
+
+    public TxidHashSet(int expectedSize) {
+        capacity = 16;
+        while (isFull(expectedSize, capacity)) {
+            capacity += capacity / 2;
+        }
+        keys = new long[capacity * 4];
+    }
+
+    private static boolean isFull(int size, int capacity) {
+        // Linear probing over 32 byte slots stays fast up to a load factor of about 0.8
+        return size * 4L > capacity * 3L;
+    }
+
+    static long part(byte[] txid, int part) {
+        long result = 0;
+        for (int i = part * 8 + 7; i >= part * 8; i--) {
+            result = (result << 8) | (txid[i] & 0xff);
+        }
+        return result;
+    }
+
+    private static boolean isFree(long[] keys, int slot) {
+        int i = slot * 4;
+        return keys[i] == 0 && keys[i + 1] == 0 && keys[i + 2] == 0 && keys[i + 3] == 0;
+    }
+
+    private int firstSlot(long part0) {
+        // The ids are hashes already, so their bits are mixed enough. Scaling instead of masking
+        // lets the capacity be any size, not only a power of two.
+        return (int) (((part0 >>> 32) * capacity) >>> 32);
+    }
+
+    private int nextSlot(int slot) {
+        return slot + 1 == capacity ? 0 : slot + 1;
+    }
+
+    /**
+     * @return true if the id was not already in the set.
+     */
+    public boolean add(long part0, long part1, long part2, long part3) {
+        if (part0 == 0 && part1 == 0 && part2 == 0 && part3 == 0) {
+            throw new RuntimeException("The all zero id can not be stored");
+        }
+        int slot = firstSlot(part0);
+        while (!isFree(keys, slot)) {
+            int i = slot * 4;
+            if (keys[i] == part0 && keys[i + 1] == part1 && keys[i + 2] == part2 && keys[i + 3] == part3) {
+                return false;
+            }
+            slot = nextSlot(slot);
+        }
+        put(keys, slot, part0, part1, part2, part3);
+        size++;
+        if (isFull(size, capacity)) {
+            rehash();
+        }
+        return true;
+    }
+
+    public boolean add(Sha256Hash txid) {
+        byte[] bytes = txid.getBytes();
+        return add(part(bytes, 0), part(bytes, 1), part(bytes, 2), part(bytes, 3));
+    }
+
+    public boolean contains(long part0, long part1, long part2, long part3) {
+        int slot = firstSlot(part0);
+        while (!isFree(keys, slot)) {
+            int i = slot * 4;
+            if (keys[i] == part0 && keys[i + 1] == part1 && keys[i + 2] == part2 && keys[i + 3] == part3) {
+                return true;
+            }
+            slot = nextSlot(slot);
+        }
+        return false;
+    }
+
+    public boolean contains(Sha256Hash txid) {
+        byte[] bytes = txid.getBytes();
+        return contains(part(bytes, 0), part(bytes, 1), part(bytes, 2), part(bytes, 3));
+    }
+
+    private static void put(long[] keys, int slot, long part0, long part1, long part2, long part3) {
+        int i = slot * 4;
+        keys[i] = part0;
+        keys[i + 1] = part1;
+        keys[i + 2] = part2;
+        keys[i + 3] = part3;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int oldCapacity = capacity;
+        // Growing by half instead of doubling keeps the load factor between 0.5 and 0.75
+        capacity += capacity / 2;
+        keys = new long[capacity * 4];
+        for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            if (!isFree(oldKeys, oldSlot)) {
+                int i = oldSlot * 4;
+                int slot = firstSlot(oldKeys[i]);
+                while (!isFree(keys, slot)) {
+                    slot = nextSlot(slot);
+                }
+                put(keys, slot, oldKeys[i], oldKeys[i + 1], oldKeys[i + 2], oldKeys[i + 3]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,52 @@
+package se.rosenbaum.bitcoiniblt.corpus;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TxidHashSetTest {
+
+    private Sha256Hash randomTxid(Random random) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return new Sha256Hash(bytes);
+    }
+
+    @Test
+    public void testAddAndContains() {
+        TxidHashSet sut = new TxidHashSet();
+        Random random = new Random(1);
+        List<Sha256Hash> added = new ArrayList<Sha256Hash>();
+        for (int i = 0; i < 5000; i++) {
+            Sha256Hash txid = randomTxid(random);
+            assertTrue(sut.add(txid));
+            added.add(txid);
+        }
+        for (Sha256Hash txid : added) {
+            assertFalse(sut.add(txid));
+            assertTrue(sut.contains(txid));
+        }
+        assertEquals(5000, sut.size());
+        assertFalse(sut.contains(randomTxid(random)));
+    }
+
+    @Test
+    public void testPartsAreLittleEndian() {
+        byte[] bytes = new byte[32];
+        bytes[8] = 1;
+        bytes[31] = (byte) 0x80;
+        assertEquals(0, TxidHashSet.part(bytes, 0));
+        assertEquals(1, TxidHashSet.part(bytes, 1));
+        assertEquals(Long.MIN_VALUE, TxidHashSet.part(bytes, 3));
+        TxidHashSet sut = new TxidHashSet();
+        sut.add(0, 1, 0, Long.MIN_VALUE);
+        assertTrue(sut.contains(new Sha256Hash(bytes)));
+    }
+}
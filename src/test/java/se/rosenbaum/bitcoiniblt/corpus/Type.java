@@ -13,6 +13,10 @@ enum Type {
         this.number = number;
     }
 
+    int getNumber() {
+        return number;
+    }
+
     static Type of(int number) {
         for (Type type : Type.values()) {
             if (type.number == number) {
@@ -0,0 +1,88 @@
+package se.rosenbaum.bitcoiniblt.longdata;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentLongIBLTTest {
+    private static final int THREAD_COUNT = 4;
+
+    @Test
+    public void testSameAsSerial() throws Exception {
+        final long[] keys = new long[20000];
+        final long[] values = new long[keys.length];
+        Random random = new Random(1);
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+            values[i] = random.nextLong();
+        }
+
+        LongIBLT serial = new LongIBLT(3000, 3);
+        for (int i = 0; i < keys.length; i++) {
+            if (i % 3 == 0) {
+                serial.delete(keys[i], values[i]);
+            } else {
+                serial.insert(keys[i], values[i]);
+            }
+        }
+
+        final ConcurrentLongIBLT sut = new ConcurrentLongIBLT(3000, 3);
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int thread = 0; thread < THREAD_COUNT; thread++) {
+                final int first = thread;
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() {
+                        for (int i = first; i < keys.length; i += THREAD_COUNT) {
+                            if (i % 3 == 0) {
+                                sut.delete(keys[i], values[i]);
+                            } else {
+                                sut.insert(keys[i], values[i]);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Identical cells cancel out completely
+        LongIBLT difference = sut.toLongIBLT();
+        difference.add(serial, -1);
+        LongEntries extraEntries = new LongEntries();
+        LongEntries absentEntries = new LongEntries();
+        assertTrue(difference.listEntries(extraEntries, absentEntries));
+        assertEquals(0, extraEntries.size());
+        assertEquals(0, absentEntries.size());
+    }
+
+    @Test
+    public void testListEntries() {
+        ConcurrentLongIBLT sut = new ConcurrentLongIBLT(300, 3);
+        sut.insert(1, 10);
+        sut.insert(2, 20);
+        sut.delete(3, 30);
+        LongEntries extraEntries = new LongEntries();
+        LongEntries absentEntries = new LongEntries();
+        assertTrue(sut.toLongIBLT().listEntries(extraEntries, absentEntries));
+        assertEquals(2, extraEntries.size());
+        assertEquals(1, absentEntries.size());
+        assertEquals(3, absentEntries.getKey(0));
+        assertEquals(30, absentEntries.getValue(0));
+    }
+}
@@ -0,0 +1,68 @@
+package se.rosenbaum.bitcoiniblt.longdata;
+
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+import se.rosenbaum.bitcoiniblt.CoderTest;
+import se.rosenbaum.iblt.data.LongData;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class PrimitiveLongTransactionCoderTest extends CoderTest {
+    private NetworkParameters params = MainNetParams.get();
+    private byte[] salt = new byte[32];
+
+    @Test
+    public void testSameEntriesAsLongDataTransactionCoder() {
+        Transaction transaction = createTransactions(params, 1).get(0);
+        PrimitiveLongTransactionCoder sut = new PrimitiveLongTransactionCoder(params, salt);
+        LongIBLT iblt = new LongIBLT(300, 3);
+        int slices = sut.insertTransaction(transaction, iblt);
+
+        LongEntries extraEntries = new LongEntries();
+        assertTrue(iblt.listEntries(extraEntries, new LongEntries()));
+
+        Map<LongData, LongData> expected = new LongDataTransactionCoder(params, salt).encodeTransaction(transaction);
+        assertEquals(expected.size(), slices);
+        Map<LongData, LongData> actual = new HashMap<LongData, LongData>();
+        for (int i = 0; i < extraEntries.size(); i++) {
+            actual.put(new LongData(extraEntries.getKey(i)), new LongData(extraEntries.getValue(i)));
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testDecodeDifferences() {
+        List<Transaction> transactions = createTransactions(params, 40);
+        PrimitiveLongTransactionCoder sut = new PrimitiveLongTransactionCoder(params, salt);
+
+        LongIBLT sent = new LongIBLT(3000, 3);
+        for (Transaction transaction : transactions.subList(0, 30)) {
+            sut.insertTransaction(transaction, sent);
+        }
+        LongIBLT mempool = new LongIBLT(3000, 3);
+        for (Transaction transaction : transactions.subList(3, 40)) {
+            sut.insertTransaction(transaction, mempool);
+        }
+        sent.add(mempool, -1);
+
+        LongEntries extraEntries = new LongEntries();
+        LongEntries absentEntries = new LongEntries();
+        assertTrue(sent.listEntries(extraEntries, absentEntries));
+
+        List<Transaction> extra = sut.decodeTransactions(extraEntries);
+        List<Transaction> absent = sut.decodeTransactions(absentEntries);
+        assertNotNull(extra);
+        assertNotNull(absent);
+        assertEquals(new HashSet<Transaction>(transactions.subList(0, 3)), new HashSet<Transaction>(extra));
+        assertEquals(new HashSet<Transaction>(transactions.subList(30, 40)), new HashSet<Transaction>(absent));
+    }
+}
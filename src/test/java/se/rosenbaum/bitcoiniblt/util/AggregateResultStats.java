@@ -1,5 +1,8 @@
 package se.rosenbaum.bitcoiniblt.util;
 
+/**
+ * Sums up samples. Samples may be added from several threads at once.
+ */
 public class AggregateResultStats extends BlockStatsResult {
     private int successes = 0;
     private int failures = 0;
@@ -7,7 +10,10 @@ public class AggregateResultStats extends BlockStatsResult {
     private long totalEncodingTime = 0;
     private long totalDecodingTime = 0;
 
-    public void addSample(BlockStatsResult result) {
+    /**
+     * @return the number of samples, including this one
+     */
+    public synchronized int addSample(BlockStatsResult result) {
         if (result.isSuccess()) {
             successes++;
         } else {
@@ -16,56 +22,115 @@ public class AggregateResultStats extends BlockStatsResult {
         totalResidualKeyCount += result.getResidualKeysCount();
         totalEncodingTime += result.getEncodingTime();
         totalDecodingTime += result.getDecodingTime();
+        return successes + failures;
+    }
+
+    public void addAll(AggregateResultStats other) {
+        int otherSuccesses;
+        int otherFailures;
+        int otherResidualKeyCount;
+        long otherEncodingTime;
+        long otherDecodingTime;
+        synchronized (other) {
+            otherSuccesses = other.successes;
+            otherFailures = other.failures;
+            otherResidualKeyCount = other.totalResidualKeyCount;
+            otherEncodingTime = other.totalEncodingTime;
+            otherDecodingTime = other.totalDecodingTime;
+        }
+        synchronized (this) {
+            successes += otherSuccesses;
+            failures += otherFailures;
+            totalResidualKeyCount += otherResidualKeyCount;
+            totalEncodingTime += otherEncodingTime;
+            totalDecodingTime += otherDecodingTime;
+        }
+    }
+
+    public synchronized int getSampleCount() {
+        return successes + failures;
+    }
+
+    /**
+     * Lower bound of the Wilson score interval for the failure probability, where z is the
+     * standard normal quantile of the wanted confidence, for example 1.96 for 95%.
+     */
+    public synchronized double getWilsonLowerBound(double z) {
+        return wilsonBound(z, -1);
+    }
+
+    public synchronized double getWilsonUpperBound(double z) {
+        return wilsonBound(z, 1);
+    }
+
+    /**
+     * @return true if the whole Wilson score interval is strictly above or below probability
+     */
+    public synchronized boolean isOnOneSideOf(double probability, double z) {
+        return wilsonBound(z, 1) < probability || wilsonBound(z, -1) > probability;
+    }
+
+    private double wilsonBound(double z, int sign) {
+        int n = successes + failures;
+        if (n == 0) {
+            return sign < 0 ? 0 : 1;
+        }
+        double p = (double) failures / n;
+        double zz = z * z;
+        double center = p + zz / (2 * n);
+        double spread = z * Math.sqrt(p * (1 - p) / n + zz / (4.0 * n * n));
+        double bound = (center + sign * spread) / (1 + zz / n);
+        return Math.max(0, Math.min(1, bound));
     }
 
-    public int getSuccesses() {
+    public synchronized int getSuccesses() {
         return successes;
     }
 
-    public int getFailures() {
+    public synchronized int getFailures() {
         return failures;
     }
 
-    public double getFailureProbability() {
+    public synchronized double getFailureProbability() {
         if (failures + successes == 0) {
             return Double.MAX_VALUE;
         }
         return (double)getFailures() / (double)(successes + failures);
     }
 
-    public long getTotalEncodingTime() {
+    public synchronized long getTotalEncodingTime() {
         return totalEncodingTime;
     }
 
-    public long getTotalDecodingTime() {
+    public synchronized long getTotalDecodingTime() {
         return totalDecodingTime;
     }
 
-    public int getTotalResidualKeyCount() {
+    public synchronized int getTotalResidualKeyCount() {
         return totalResidualKeyCount;
     }
 
-    public void setSuccesses(int successes) {
+    public synchronized void setSuccesses(int successes) {
         this.successes = successes;
     }
 
     @Override
-    public long getDecodingTime() {
+    public synchronized long getDecodingTime() {
         return getTotalDecodingTime() / (failures+successes);
     }
 
     @Override
-    public long getEncodingTime() {
+    public synchronized long getEncodingTime() {
         return getTotalEncodingTime() / (failures+successes);
     }
 
     @Override
-    public int getResidualKeysCount() {
+    public synchronized int getResidualKeysCount() {
         return getTotalResidualKeyCount() / (failures+successes);
     }
 
     @Override
-    public int getTotalKeysCount() {
+    public synchronized int getTotalKeysCount() {
         return super.getTotalKeysCount() / (failures+successes);
     }
 
@@ -74,19 +139,19 @@ public class AggregateResultStats extends BlockStatsResult {
         return true;
     }
 
-    public void setFailures(int failures) {
+    public synchronized void setFailures(int failures) {
         this.failures = failures;
     }
 
-    public void setTotalResidualKeyCount(int totalResidualKeyCount) {
+    public synchronized void setTotalResidualKeyCount(int totalResidualKeyCount) {
         this.totalResidualKeyCount = totalResidualKeyCount;
     }
 
-    public void setTotalEncodingTime(long totalEncodingTime) {
+    public synchronized void setTotalEncodingTime(long totalEncodingTime) {
         this.totalEncodingTime = totalEncodingTime;
     }
 
-    public void setTotalDecodingTime(long totalDecodingTime) {
+    public synchronized void setTotalDecodingTime(long totalDecodingTime) {
         this.totalDecodingTime = totalDecodingTime;
     }
 }
@@ -0,0 +1,66 @@
+package se.rosenbaum.bitcoiniblt.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AggregateResultStatsTest {
+
+    private AggregateResultStats createStats(int failures, int successes) {
+        AggregateResultStats stats = new AggregateResultStats();
+        stats.setFailures(failures);
+        stats.setSuccesses(successes);
+        return stats;
+    }
+
+    @Test
+    public void testWilsonInterval() {
+        AggregateResultStats stats = createStats(10, 90);
+        // Known values for 10 of 100 at 95%
+        assertEquals(0.0552, stats.getWilsonLowerBound(1.96), 0.0001);
+        assertEquals(0.1744, stats.getWilsonUpperBound(1.96), 0.0001);
+        assertTrue(stats.isOnOneSideOf(0.05, 1.96));
+        assertFalse(stats.isOnOneSideOf(0.1, 1.96));
+    }
+
+    @Test
+    public void testWilsonIntervalNoFailures() {
+        AggregateResultStats stats = createStats(0, 200);
+        assertEquals(0, stats.getWilsonLowerBound(2.576), 0);
+        assertTrue(stats.getWilsonUpperBound(2.576) < 0.05);
+        assertTrue(createStats(0, 0).getWilsonUpperBound(2.576) == 1);
+    }
+
+    @Test
+    public void testConcurrentAddSample() throws InterruptedException {
+        final AggregateResultStats stats = new AggregateResultStats();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        BlockStatsResult result = new BlockStatsResult();
+                        result.setSuccess(j % 10 != 0);
+                        result.setEncodingTime(1);
+                        stats.addSample(result);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, stats.getSampleCount());
+        assertEquals(4000, stats.getFailures());
+        assertEquals(40000, stats.getTotalEncodingTime());
+    }
+}
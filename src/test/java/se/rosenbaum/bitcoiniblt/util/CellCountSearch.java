@@ -0,0 +1,169 @@
+package se.rosenbaum.bitcoiniblt.util;
+
+import se.rosenbaum.bitcoiniblt.printer.FailureProbabilityPrinter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Finds the smallest cell count whose failure probability is at most a target, by bisection
+ * over cell counts.
+ * <p/>
+ * Each probe runs a sequential probability ratio test. Samples are taken in batches until the
+ * failure probability is clearly below target * (1 - indifference) or above
+ * target * (1 + indifference), so clear cases finish after a batch or two and only cell
+ * counts close to the answer need many samples. Everything sampled is kept per cell count, so
+ * searches for several targets with the same search reuse earlier samples, and all probes
+ * together make up the failure curve.
+ * <p/>
+ * The cell count of the TestConfig is changed during the search.
+ */
+public class CellCountSearch {
+    public interface Sampler {
+        /**
+         * @return at most sampleCount samples of config, or none if the sampler has run out of samples
+         */
+        AggregateResultStats sample(TestConfig config, int sampleCount) throws IOException;
+    }
+
+    private TestConfig config;
+    private Sampler sampler;
+    private int batchSize = 100;
+    private int maxSamplesPerProbe = 10000;
+    private double indifference = 0.3;
+    private double alpha = 0.01;
+    private double beta = 0.01;
+    private int maxCellCount = 1 << 24;
+    private SortedMap<Integer, AggregateResultStats> probes = new TreeMap<Integer, AggregateResultStats>();
+
+    public CellCountSearch(TestConfig config, Sampler sampler) {
+        this.config = config;
+        this.sampler = sampler;
+    }
+
+    /**
+     * Starts at the cell count of the config, and doubles it until the failure probability is
+     * low enough.
+     *
+     * @return the smallest probed cell count, a multiple of the hash function count, with a
+     * failure probability of at most targetFailureProbability.
+     */
+    public int findCellCount(double targetFailureProbability) throws IOException {
+        if (targetFailureProbability <= 0 || targetFailureProbability >= 1) {
+            throw new RuntimeException("Target failure probability must be between 0 and 1, but was " + targetFailureProbability);
+        }
+        int hashFunctionCount = config.getHashFunctionCount();
+        int high = Math.max(hashFunctionCount, config.getCellCount() - config.getCellCount() % hashFunctionCount);
+        int low = 0;
+        while (!isBelow(high, targetFailureProbability)) {
+            low = high;
+            high *= 2;
+            if (high > maxCellCount) {
+                throw new RuntimeException("No cell count up to " + maxCellCount + " has failure probability "
+                        + targetFailureProbability);
+            }
+        }
+        Interval interval = new Interval(low, high);
+        config.setCellCount(interval.nextValue(config));
+        while (interval.isInsideInterval(config.getCellCount())) {
+            if (isBelow(config.getCellCount(), targetFailureProbability)) {
+                interval.setHigh(config.getCellCount());
+            } else {
+                interval.setLow(config.getCellCount());
+            }
+            config.setCellCount(interval.nextValue(config));
+        }
+        config.setCellCount(interval.getHigh());
+        return interval.getHigh();
+    }
+
+    /**
+     * Samples cellCount until the sequential test decides, or until maxSamplesPerProbe is
+     * reached or the sampler returns no samples, in which case the point estimate decides.
+     */
+    boolean isBelow(int cellCount, double targetFailureProbability) throws IOException {
+        AggregateResultStats stats = probes.get(cellCount);
+        if (stats == null) {
+            stats = new AggregateResultStats();
+            probes.put(cellCount, stats);
+        }
+        double lowP = targetFailureProbability * (1 - indifference);
+        double highP = Math.min(targetFailureProbability * (1 + indifference), 1 - (1 - targetFailureProbability) * indifference);
+        double acceptHigh = Math.log((1 - beta) / alpha);
+        double acceptLow = Math.log(beta / (1 - alpha));
+        while (true) {
+            int failures = stats.getFailures();
+            int successes = stats.getSuccesses();
+            // Log likelihood ratio of highP over lowP
+            double llr = failures * Math.log(highP / lowP) + successes * Math.log((1 - highP) / (1 - lowP));
+            if (llr >= acceptHigh) {
+                return false;
+            }
+            if (llr <= acceptLow) {
+                return true;
+            }
+            if (failures + successes >= maxSamplesPerProbe) {
+                return stats.getFailureProbability() <= targetFailureProbability;
+            }
+            config.setCellCount(cellCount);
+            AggregateResultStats batch = sampler.sample(config, Math.min(batchSize, maxSamplesPerProbe - failures - successes));
+            if (batch.getSampleCount() == 0) {
+                return stats.getFailureProbability() <= targetFailureProbability;
+            }
+            stats.addAll(batch);
+        }
+    }
+
+    /**
+     * @return the samples of every probed cell count, in cell count order. The map must not be modified.
+     */
+    public SortedMap<Integer, AggregateResultStats> getProbes() {
+        return probes;
+    }
+
+    public AggregateResultStats getStats(int cellCount) {
+        return probes.get(cellCount);
+    }
+
+    /**
+     * Adds every probed cell count to printer, in cell count order.
+     */
+    public void printCurve(FailureProbabilityPrinter printer) {
+        int cellCount = config.getCellCount();
+        for (Map.Entry<Integer, AggregateResultStats> entry : probes.entrySet()) {
+            config.setCellCount(entry.getKey());
+            printer.addResult(config, entry.getValue());
+        }
+        config.setCellCount(cellCount);
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setMaxSamplesPerProbe(int maxSamplesPerProbe) {
+        this.maxSamplesPerProbe = maxSamplesPerProbe;
+    }
+
+    /**
+     * @param indifference relative distance from the target within which the test may decide either way
+     */
+    public void setIndifference(double indifference) {
+        this.indifference = indifference;
+    }
+
+    /**
+     * @param alpha probability of deciding that a cell count fails too often when it does not
+     * @param beta probability of deciding that a cell count is good enough when it is not
+     */
+    public void setErrorProbabilities(double alpha, double beta) {
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    public void setMaxCellCount(int maxCellCount) {
+        this.maxCellCount = maxCellCount;
+    }
+}
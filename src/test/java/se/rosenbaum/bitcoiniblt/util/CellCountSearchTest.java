@@ -0,0 +1,100 @@
+package se.rosenbaum.bitcoiniblt.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CellCountSearchTest {
+    private TestConfig config;
+    private CountingSampler sampler;
+    private CellCountSearch sut;
+
+    /**
+     * Fails with probability exp(-cellCount / 100), so 5% failures at about 300 cells.
+     */
+    private static class CountingSampler implements CellCountSearch.Sampler {
+        Random random = new Random(1);
+        int sampleCount = 0;
+
+        public AggregateResultStats sample(TestConfig config, int sampleCount) {
+            this.sampleCount += sampleCount;
+            AggregateResultStats stats = new AggregateResultStats();
+            double failureProbability = Math.exp(-config.getCellCount() / 100.0);
+            for (int i = 0; i < sampleCount; i++) {
+                BlockStatsResult result = new BlockStatsResult();
+                result.setSuccess(random.nextDouble() >= failureProbability);
+                stats.addSample(result);
+            }
+            return stats;
+        }
+    }
+
+    @Before
+    public void setup() {
+        config = new TestConfig(0, 0, 0, 3, 8, 64, 4, 30) {
+            @Override
+            public TransactionSets createTransactionSets() {
+                return null;
+            }
+        };
+        sampler = new CountingSampler();
+        sut = new CellCountSearch(config, sampler);
+    }
+
+    @Test
+    public void testFindCellCount() throws IOException {
+        int cellCount = sut.findCellCount(0.05);
+        assertEquals(0, cellCount % 3);
+        // Within the indifference zone of 3.5% to 6.5%
+        assertTrue("cellCount " + cellCount, cellCount >= 270 && cellCount <= 340);
+        assertEquals(cellCount, config.getCellCount());
+        assertTrue(sut.getProbes().containsKey(cellCount));
+        // Far from the answer a single batch is enough
+        assertEquals(100, sut.getStats(30).getSampleCount());
+    }
+
+    @Test
+    public void testReusesSamples() throws IOException {
+        sut.findCellCount(0.05);
+        int samples = sampler.sampleCount;
+        config.setCellCount(30);
+        sut.findCellCount(0.05);
+        assertTrue(sampler.sampleCount - samples < samples / 2);
+    }
+
+    @Test
+    public void testMaxSamplesPerProbe() throws IOException {
+        sut.setMaxSamplesPerProbe(150);
+        sut.findCellCount(0.01);
+        for (AggregateResultStats stats : sut.getProbes().values()) {
+            assertTrue(stats.getSampleCount() <= 150);
+        }
+    }
+
+    @Test
+    public void testSamplerRunsOut() throws IOException {
+        // Like a test file with 150 samples that is read once per cell count
+        sut = new CellCountSearch(config, new CellCountSearch.Sampler() {
+            Map<Integer, Integer> used = new HashMap<Integer, Integer>();
+
+            public AggregateResultStats sample(TestConfig config, int sampleCount) {
+                int count = used.containsKey(config.getCellCount()) ? used.get(config.getCellCount()) : 0;
+                int newCount = Math.min(150, count + sampleCount);
+                used.put(config.getCellCount(), newCount);
+                return sampler.sample(config, newCount - count);
+            }
+        });
+        int cellCount = sut.findCellCount(0.01);
+        assertTrue("cellCount " + cellCount, cellCount >= 300 && cellCount <= 600);
+        for (AggregateResultStats stats : sut.getProbes().values()) {
+            assertTrue(stats.getSampleCount() <= 150);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package se.rosenbaum.bitcoiniblt.util;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Message;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps blocks or transactions in memory within a budget of bytes. A message costs its
+ * serialized size, so the heap used is a few times the budget.
+ * <p/>
+ * Messages are evicted in CLOCK order. A hand sweeps the cached messages, sparing and clearing
+ * those used since it last passed, and evicts unused ones until a new message fits. A big
+ * message thereby pushes out as many small ones as it needs room for.
+ * <p/>
+ * The contents can be saved to a snapshot file and loaded in bulk at startup.
+ */
+public class MessageCache<T extends Message> {
+    public interface Parser<T> {
+        T parse(byte[] payload);
+    }
+
+    private static class Entry<T> {
+        Sha256Hash hash;
+        T message;
+        int size;
+        boolean referenced;
+
+        Entry(Sha256Hash hash, T message, int size, boolean referenced) {
+            this.hash = hash;
+            this.message = message;
+            this.size = size;
+            this.referenced = referenced;
+        }
+    }
+
+    private final long maxBytes;
+    private final Parser<T> parser;
+    private final Map<Sha256Hash, Entry<T>> entries = new HashMap<Sha256Hash, Entry<T>>();
+    private final List<Entry<T>> clock = new ArrayList<Entry<T>>();
+    private int hand = 0;
+    private long bytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+    private long modificationCount = 0;
+    private long snapshotModificationCount = 0;
+
+    public MessageCache(long maxBytes, Parser<T> parser) {
+        if (maxBytes < 1) {
+            throw new RuntimeException("Max bytes must be at least 1, but was " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.parser = parser;
+    }
+
+    public static MessageCache<Block> forBlocks(final NetworkParameters params, long maxBytes) {
+        return new MessageCache<Block>(maxBytes, new Parser<Block>() {
+            public Block parse(byte[] payload) {
+                return new Block(params, payload);
+            }
+        });
+    }
+
+    /**
+     * @return the cached message, or null.
+     */
+    public synchronized T get(Sha256Hash hash) {
+        Entry<T> entry = entries.get(hash);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        entry.referenced = true;
+        return entry.message;
+    }
+
+    public synchronized void put(T message) {
+        // A new message survives one sweep of the hand
+        add(message.getHash(), message, message.getMessageSize(), true);
+    }
+
+    private void add(Sha256Hash hash, T message, int size, boolean referenced) {
+        if (size > maxBytes || entries.containsKey(hash)) {
+            return;
+        }
+        while (bytes + size > maxBytes) {
+            evict();
+        }
+        Entry<T> entry = new Entry<T>(hash, message, size, referenced);
+        entries.put(hash, entry);
+        clock.add(entry);
+        bytes += size;
+        modificationCount++;
+    }
+
+    private void evict() {
+        while (true) {
+            if (hand >= clock.size()) {
+                hand = 0;
+            }
+            Entry<T> entry = clock.get(hand);
+            if (entry.referenced) {
+                entry.referenced = false;
+                hand++;
+                continue;
+            }
+            Entry<T> last = clock.remove(clock.size() - 1);
+            if (last != entry) {
+                clock.set(hand, last);
+            }
+            entries.remove(entry.hash);
+            bytes -= entry.size;
+            evictionCount++;
+            modificationCount++;
+            return;
+        }
+    }
+
+    /**
+     * Writes every cached message to file, replacing it.
+     */
+    public synchronized void saveSnapshot(File file) throws IOException {
+        File newFile = new File(file.getPath() + ".new");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newFile), 1 << 20));
+        try {
+            for (Entry<T> entry : clock) {
+                byte[] payload = entry.message.bitcoinSerialize();
+                out.write(entry.hash.getBytes());
+                out.writeInt(payload.length);
+                out.write(payload);
+            }
+        } finally {
+            out.close();
+        }
+        if (!newFile.renameTo(file)) {
+            throw new RuntimeException("Could not replace " + file + " with " + newFile);
+        }
+        snapshotModificationCount = modificationCount;
+    }
+
+    /**
+     * Adds the messages of a snapshot until the budget is used up.
+     *
+     * @return the number of messages added.
+     */
+    public synchronized int loadSnapshot(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 20));
+        int loaded = 0;
+        try {
+            byte[] hash = new byte[32];
+            while (true) {
+                try {
+                    in.readFully(hash);
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] payload = new byte[in.readInt()];
+                if (bytes + payload.length > maxBytes) {
+                    break;
+                }
+                in.readFully(payload);
+                Sha256Hash key = new Sha256Hash(hash.clone());
+                if (!entries.containsKey(key)) {
+                    add(key, parser.parse(payload), payload.length, false);
+                    loaded++;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        snapshotModificationCount = modificationCount;
+        return loaded;
+    }
+
+    /**
+     * @return true if messages were added or evicted since the last snapshot was saved or loaded.
+     */
+    public synchronized boolean hasChangedSinceSnapshot() {
+        return modificationCount != snapshotModificationCount;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized double getHitRatio() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d messages, %d of %d bytes, hit ratio %.3f of %d lookups, %d evictions",
+                entries.size(), bytes, maxBytes, getHitRatio(), hitCount + missCount, evictionCount);
+    }
+}
@@ -0,0 +1,99 @@
+package se.rosenbaum.bitcoiniblt.util;
+
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MessageCacheTest {
+    private final NetworkParameters params = MainNetParams.get();
+    private List<Transaction> transactions;
+
+    @Before
+    public void setup() {
+        transactions = new SyntheticTransactionGenerator(params, 1).createTransactions(100);
+    }
+
+    private MessageCache<Transaction> createCache(long maxBytes) {
+        return new MessageCache<Transaction>(maxBytes, new MessageCache.Parser<Transaction>() {
+            public Transaction parse(byte[] payload) {
+                return new Transaction(params, payload);
+            }
+        });
+    }
+
+    private long totalSize(List<Transaction> transactions) {
+        long size = 0;
+        for (Transaction transaction : transactions) {
+            size += transaction.getMessageSize();
+        }
+        return size;
+    }
+
+    @Test
+    public void testStaysWithinBudget() {
+        long maxBytes = totalSize(transactions) / 4;
+        MessageCache<Transaction> sut = createCache(maxBytes);
+        for (Transaction transaction : transactions) {
+            sut.put(transaction);
+            assertTrue(sut.getBytes() <= maxBytes);
+        }
+        assertTrue(sut.getEvictionCount() > 0);
+        assertNotNull(sut.get(transactions.get(99).getHash()));
+        assertNull(sut.get(transactions.get(0).getHash()));
+        assertEquals(0.5, sut.getHitRatio(), 0.0);
+    }
+
+    @Test
+    public void testKeepsUsedMessages() {
+        List<Transaction> first = transactions.subList(0, 10);
+        MessageCache<Transaction> sut = createCache(totalSize(first) + 1000);
+        for (Transaction transaction : first) {
+            sut.put(transaction);
+        }
+        for (Transaction transaction : transactions.subList(10, 100)) {
+            // The hot message is used between every insertion
+            assertNotNull(sut.get(first.get(3).getHash()));
+            sut.put(transaction);
+        }
+        assertNotNull(sut.get(first.get(3).getHash()));
+        assertNull(sut.get(first.get(4).getHash()));
+    }
+
+    @Test
+    public void testSnapshot() throws IOException {
+        MessageCache<Transaction> sut = createCache(1 << 20);
+        for (Transaction transaction : transactions) {
+            sut.put(transaction);
+        }
+        assertTrue(sut.hasChangedSinceSnapshot());
+        File snapshot = File.createTempFile("cache", null);
+        try {
+            sut.saveSnapshot(snapshot);
+            assertFalse(sut.hasChangedSinceSnapshot());
+
+            MessageCache<Transaction> loaded = createCache(1 << 20);
+            assertEquals(100, loaded.loadSnapshot(snapshot));
+            assertEquals(sut.getBytes(), loaded.getBytes());
+            for (Transaction transaction : transactions) {
+                assertEquals(transaction, loaded.get(transaction.getHash()));
+            }
+
+            MessageCache<Transaction> small = createCache(totalSize(transactions.subList(0, 10)));
+            assertEquals(10, small.loadSnapshot(snapshot));
+        } finally {
+            snapshot.delete();
+        }
+    }
+}
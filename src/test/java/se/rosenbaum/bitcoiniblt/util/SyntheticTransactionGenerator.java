@@ -0,0 +1,200 @@
+package se.rosenbaum.bitcoiniblt.util;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.TransactionOutput;
+import se.rosenbaum.bitcoiniblt.corpus.TransactionStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates made up, but structurally valid, transactions and blocks without any network or
+ * block cache. The same seed and settings always give the same transactions in the same order.
+ * <p/>
+ * Input and output counts are geometrically distributed, and spends are either P2PKH or
+ * 2-of-3 multisig P2SH. With the defaults the median size is about 260 bytes and the mean
+ * about 315 bytes, and the one input, two output P2PKH transaction of 226 bytes is the most
+ * common one, as in the blocks TransactionStatsTest measures. The tail of big transactions
+ * is thinner than on mainnet though.
+ * <p/>
+ * Generated transactions are only remembered, so that they can be looked up as a
+ * TransactionStore, after {@link #setRememberTransactions(boolean)}. Otherwise nothing is kept,
+ * so a long failure probability run doesn't fill up the heap.
+ */
+public class SyntheticTransactionGenerator implements TransactionStore {
+    private static final int P2PKH_SCRIPT_SIG_SIZE = 107;
+    private static final int P2SH_MULTISIG_SCRIPT_SIG_SIZE = 253;
+
+    private NetworkParameters params;
+    private Random random;
+    private double meanInputCount = 1.5;
+    private int maxInputCount = 50;
+    private double meanOutputCount = 1.8;
+    private int maxOutputCount = 20;
+    private double p2shFraction = 0.1;
+    // Null unless transactions are remembered
+    private Map<Sha256Hash, Transaction> transactions = null;
+
+    public SyntheticTransactionGenerator(NetworkParameters params, long seed) {
+        this.params = params;
+        this.random = new Random(seed);
+    }
+
+    public Transaction createTransaction() {
+        Transaction transaction = new Transaction(params);
+        int inputCount = geometric(meanInputCount, maxInputCount);
+        for (int i = 0; i < inputCount; i++) {
+            TransactionOutPoint outpoint = new TransactionOutPoint(params, random.nextInt(4), new Sha256Hash(randomBytes(32)));
+            boolean p2sh = random.nextDouble() < p2shFraction;
+            byte[] scriptSig = p2sh ? p2shMultisigScriptSig() : p2pkhScriptSig();
+            transaction.addInput(new TransactionInput(params, transaction, scriptSig, outpoint));
+        }
+        int outputCount = geometric(meanOutputCount, maxOutputCount);
+        for (int i = 0; i < outputCount; i++) {
+            boolean p2sh = random.nextDouble() < p2shFraction;
+            byte[] script = p2sh ? p2shScriptPubKey() : p2pkhScriptPubKey();
+            Coin value = Coin.valueOf(1 + (long) (random.nextDouble() * Coin.COIN.getValue()));
+            transaction.addOutput(new TransactionOutput(params, transaction, value, script));
+        }
+        remember(transaction);
+        return transaction;
+    }
+
+    public List<Transaction> createTransactions(int count) {
+        List<Transaction> result = new ArrayList<Transaction>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(createTransaction());
+        }
+        return result;
+    }
+
+    public Transaction createCoinbase() {
+        Transaction coinbase = new Transaction(params);
+        coinbase.addInput(new TransactionInput(params, coinbase, randomBytes(4 + random.nextInt(60))));
+        coinbase.addOutput(new TransactionOutput(params, coinbase, Coin.valueOf(25, 0), p2pkhScriptPubKey()));
+        remember(coinbase);
+        return coinbase;
+    }
+
+    /**
+     * A block with a coinbase followed by transactionCount - 1 generated transactions. The
+     * header is a copy of the genesis block header; it is not a valid block in any chain.
+     */
+    public Block createBlock(int transactionCount) {
+        Block block = params.getGenesisBlock().cloneAsHeader();
+        block.addTransaction(createCoinbase());
+        for (int i = 1; i < transactionCount; i++) {
+            block.addTransaction(createTransaction());
+        }
+        return block;
+    }
+
+    private void remember(Transaction transaction) {
+        if (transactions != null) {
+            transactions.put(transaction.getHash(), transaction);
+        }
+    }
+
+    /**
+     * @return a transaction generated while transactions were remembered, or null.
+     */
+    public Transaction getTransaction(Sha256Hash hash) {
+        if (transactions == null) {
+            throw new RuntimeException("Transactions are not remembered, see setRememberTransactions");
+        }
+        return transactions.get(hash);
+    }
+
+    /**
+     * Remembers the transactions generated from now on for {@link #getTransaction(Sha256Hash)}, or
+     * forgets all of them.
+     */
+    public void setRememberTransactions(boolean rememberTransactions) {
+        if (!rememberTransactions) {
+            transactions = null;
+        } else if (transactions == null) {
+            transactions = new HashMap<Sha256Hash, Transaction>();
+        }
+    }
+
+    private int geometric(double mean, int max) {
+        // Number of trials until first success, with success probability 1/mean
+        double p = 1 / mean;
+        int count = 1 + (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - p));
+        return Math.min(count, max);
+    }
+
+    private byte[] p2pkhScriptSig() {
+        // <72 byte signature> <33 byte compressed public key>
+        byte[] script = randomBytes(P2PKH_SCRIPT_SIG_SIZE);
+        script[0] = 72;
+        script[73] = 33;
+        return script;
+    }
+
+    private byte[] p2shMultisigScriptSig() {
+        // OP_0 <72 byte signature> <72 byte signature> OP_PUSHDATA1 <105 byte 2-of-3 redeem script>
+        byte[] script = randomBytes(P2SH_MULTISIG_SCRIPT_SIG_SIZE);
+        script[0] = 0;
+        script[1] = 72;
+        script[74] = 72;
+        script[147] = 0x4c;
+        script[148] = 105;
+        return script;
+    }
+
+    private byte[] p2pkhScriptPubKey() {
+        // OP_DUP OP_HASH160 <20 bytes> OP_EQUALVERIFY OP_CHECKSIG
+        byte[] script = randomBytes(25);
+        script[0] = (byte) 0x76;
+        script[1] = (byte) 0xa9;
+        script[2] = 20;
+        script[23] = (byte) 0x88;
+        script[24] = (byte) 0xac;
+        return script;
+    }
+
+    private byte[] p2shScriptPubKey() {
+        // OP_HASH160 <20 bytes> OP_EQUAL
+        byte[] script = randomBytes(23);
+        script[0] = (byte) 0xa9;
+        script[1] = 20;
+        script[22] = (byte) 0x87;
+        return script;
+    }
+
+    private byte[] randomBytes(int count) {
+        byte[] bytes = new byte[count];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    public void setMeanInputCount(double meanInputCount) {
+        this.meanInputCount = meanInputCount;
+    }
+
+    public void setMaxInputCount(int maxInputCount) {
+        this.maxInputCount = maxInputCount;
+    }
+
+    public void setMeanOutputCount(double meanOutputCount) {
+        this.meanOutputCount = meanOutputCount;
+    }
+
+    public void setMaxOutputCount(int maxOutputCount) {
+        this.maxOutputCount = maxOutputCount;
+    }
+
+    public void setP2shFraction(double p2shFraction) {
+        this.p2shFraction = p2shFraction;
+    }
+}
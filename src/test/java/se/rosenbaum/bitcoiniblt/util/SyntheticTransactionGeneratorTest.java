@@ -0,0 +1,68 @@
+package se.rosenbaum.bitcoiniblt.util;
+
+import org.bitcoinj.core.Block;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SyntheticTransactionGeneratorTest {
+    private NetworkParameters params = MainNetParams.get();
+
+    @Test
+    public void testDeterministic() {
+        List<Transaction> transactions = new SyntheticTransactionGenerator(params, 17).createTransactions(20);
+        List<Transaction> again = new SyntheticTransactionGenerator(params, 17).createTransactions(20);
+        assertEquals(transactions, again);
+        assertFalse(transactions.equals(new SyntheticTransactionGenerator(params, 18).createTransactions(20)));
+    }
+
+    @Test
+    public void testValidTransactionsAndSizes() {
+        SyntheticTransactionGenerator sut = new SyntheticTransactionGenerator(params, 1);
+        sut.setRememberTransactions(true);
+        int[] sizes = new int[2000];
+        for (int i = 0; i < sizes.length; i++) {
+            Transaction transaction = sut.createTransaction();
+            transaction.verify();
+            sizes[i] = transaction.bitcoinSerialize().length;
+            assertSame(transaction, sut.getTransaction(transaction.getHash()));
+        }
+        Arrays.sort(sizes);
+        int median = sizes[sizes.length / 2];
+        assertTrue("median " + median, median > 180 && median < 300);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNotRememberedByDefault() {
+        SyntheticTransactionGenerator sut = new SyntheticTransactionGenerator(params, 1);
+        sut.getTransaction(sut.createTransaction().getHash());
+    }
+
+    @Test
+    public void testBlock() {
+        Block block = new SyntheticTransactionGenerator(params, 1).createBlock(10);
+        assertEquals(10, block.getTransactions().size());
+        assertTrue(block.getTransactions().get(0).isCoinBase());
+        assertFalse(block.getTransactions().get(1).isCoinBase());
+    }
+
+    @Test
+    public void testTestConfig() {
+        SyntheticTransactionsTestConfig config = new SyntheticTransactionsTestConfig(new SyntheticTransactionGenerator(params, 1),
+                100, 5, 10, 3, 8, 64, 4, 300);
+        TransactionSets sets = config.createTransactionSets();
+        assertEquals(100, sets.getSendersTransactions().size());
+        assertEquals(105, sets.getReceiversTransactions().size());
+        assertTrue(sets.getSendersTransactions().get(0).isCoinBase());
+        assertEquals(sets.getSendersTransactions().subList(5, 100), sets.getReceiversTransactions().subList(0, 95));
+    }
+}
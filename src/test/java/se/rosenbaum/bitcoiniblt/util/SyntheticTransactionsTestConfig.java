@@ -0,0 +1,43 @@
+package se.rosenbaum.bitcoiniblt.util;
+
+import org.bitcoinj.core.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A TestConfig that draws its transactions from a SyntheticTransactionGenerator, so that
+ * experiments can run offline. Each call to createTransactionSets continues the generator's sequence.
+ */
+public class SyntheticTransactionsTestConfig extends TestConfig {
+    private SyntheticTransactionGenerator generator;
+
+    public SyntheticTransactionsTestConfig(SyntheticTransactionGenerator generator, int txCount, int extraTxCount, int absentTxCount,
+                                           int hashFunctionCount, int keySize, int valueSize, int keyHashSize, int cellCount) {
+        super(txCount, extraTxCount, absentTxCount, hashFunctionCount, keySize, valueSize, keyHashSize, cellCount);
+        this.generator = generator;
+    }
+
+    public SyntheticTransactionsTestConfig(SyntheticTransactionGenerator generator, TestConfig other) {
+        super(other);
+        this.generator = generator;
+    }
+
+    @Override
+    public TransactionSets createTransactionSets() {
+        // Same split as ClientCoderTest: the sender lacks the last absentTxCount
+        // transactions and the receiver lacks the first extraTxCount.
+        List<Transaction> transactions = new ArrayList<Transaction>(getTxCount() + getAbsentTxCount());
+        transactions.add(generator.createCoinbase());
+        transactions.addAll(generator.createTransactions(getTxCount() + getAbsentTxCount() - 1));
+
+        TransactionSets sets = new TransactionSets();
+        sets.setSendersTransactions(new ArrayList<Transaction>(transactions.subList(0, getTxCount())));
+        sets.setReceiversTransactions(new ArrayList<Transaction>(transactions.subList(getExtraTxCount(), transactions.size())));
+        return sets;
+    }
+
+    public SyntheticTransactionGenerator getGenerator() {
+        return generator;
+    }
+}